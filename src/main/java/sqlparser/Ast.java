@@ -1,19 +1,52 @@
 package sqlparser;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.List;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.Value;
 
 public final class Ast {
 
+    /**
+     * Operation on statements. <code>Statement.accept</code> calls the
+     * method that matches the class of the statement.
+     *
+     * @param <R> result of the operation.
+     */
+    public interface StatementVisitor<R> {
+        R visitUse(Use use);
+        R visitSelect(Select select);
+        R visitInsert(Insert insert);
+        R visitDelete(Delete delete);
+    }
+
     public static abstract class Statement {
 
+        /**
+         * Applies a visitor to this statement.
+         *
+         * @param visitor the visitor.
+         * @return result of the method that matches this statement.
+         */
+        public abstract <R> R accept(StatementVisitor<R> visitor);
     }
 
     @Value public static class Use extends Statement {
         String databaseName;
+        @Override
+        public <R> R accept(StatementVisitor<R> visitor) {
+            return visitor.visitUse(this);
+        }
+
         @Override
         public String toString() {
             return String.format("Use(databaseName=%s)", databaseName);
@@ -26,6 +59,25 @@ public final class Ast {
         Optional<Expression> whereCondition;
         Optional<Expression> orderBy;
 
+        public Select(
+            List<Expression> selectList,
+            Optional<TableId> fromTableId,
+            Optional<Expression> whereCondition,
+            Optional<Expression> orderBy
+        ) {
+            // Statements are shared by caches, the list must never change
+            this.selectList =
+                Collections.unmodifiableList(new ArrayList<>(selectList));
+            this.fromTableId = fromTableId;
+            this.whereCondition = whereCondition;
+            this.orderBy = orderBy;
+        }
+
+        @Override
+        public <R> R accept(StatementVisitor<R> visitor) {
+            return visitor.visitSelect(this);
+        }
+
         @Override
         public String toString() {
             return String.format(
@@ -41,23 +93,81 @@ public final class Ast {
     @Value public static class Insert extends Statement {
         TableId intoTable;
         List<String> columnList;
-        List<Expression> values;
+        RowBlock rows;
 
-        @Override
-        public String toString() {
-            return String.format(
-                "Insert(\n  into=%s\n  columns=%s\n  values=%s\n)",
+        public Insert(
+            TableId intoTable,
+            List<String> columnList,
+            RowBlock rows
+        ) {
+            this.intoTable = intoTable;
+            // Statements are shared by caches, the list must never change
+            this.columnList =
+                Collections.unmodifiableList(new ArrayList<>(columnList));
+            this.rows = rows;
+        }
+
+        /** Creates an <code>INSERT</code> of a single row. */
+        public Insert(
+            TableId intoTable,
+            List<String> columnList,
+            List<Expression> values
+        ) {
+            this(
                 intoTable,
                 columnList,
-                values
+                RowBlock.of(Collections.singletonList(values))
             );
         }
+
+        /**
+         * @return values of the only row.
+         * @throws IllegalStateException if the statement inserts several
+         *         rows, use <code>getRows</code> instead.
+         */
+        public List<Expression> getValues() {
+            if (rows.numRows() != 1) {
+                throw new IllegalStateException(
+                    "Insert of " + rows.numRows() + " rows has no single row"
+                );
+            }
+            return rows.row(0);
+        }
+
+        @Override
+        public <R> R accept(StatementVisitor<R> visitor) {
+            return visitor.visitInsert(this);
+        }
+
+        @Override
+        public String toString() {
+            if (rows.numRows() == 1) {
+                return String.format(
+                    "Insert(\n  into=%s\n  columns=%s\n  values=%s\n)",
+                    intoTable,
+                    columnList,
+                    rows.row(0)
+                );
+            } else {
+                return String.format(
+                    "Insert(\n  into=%s\n  columns=%s\n  rows=%s\n)",
+                    intoTable,
+                    columnList,
+                    rows
+                );
+            }
+        }
     }
 
     @Value public static class Delete extends Statement {
         TableId fromTable;
         Expression whereCondition;
 
+        @Override
+        public <R> R accept(StatementVisitor<R> visitor) {
+            return visitor.visitDelete(this);
+        }
+
         @Override
         public String toString() {
             return String.format(
@@ -95,17 +205,137 @@ public final class Ast {
         }
     }
 
-    @Value public static class TableId {
+    /**
+     * Table, optionally qualified by its database.
+     *
+     * The hash is computed once, on construction, like the hashes of the
+     * expressions.
+     */
+    @Value @ToString(exclude = "hash") public static class TableId {
         Optional<String> databaseName;
         String tableName;
+        @Getter(AccessLevel.NONE) int hash;
+
+        public TableId(Optional<String> databaseName, String tableName) {
+            this.databaseName = databaseName;
+            this.tableName = tableName;
+            this.hash =
+                31 * Objects.hashCode(databaseName) +
+                Objects.hashCode(tableName);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            } else if (!(other instanceof TableId)) {
+                return false;
+            }
+            TableId that = (TableId) other;
+            return
+                hash == that.hash &&
+                Objects.equals(tableName, that.tableName) &&
+                Objects.equals(databaseName, that.databaseName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 
+    /**
+     * Operation on expressions. <code>Expression.accept</code> calls the
+     * method that matches the class of the expression.
+     *
+     * @param <R> result of the operation.
+     */
+    public interface ExpressionVisitor<R> {
+        R visitIdentifier(Identifier id);
+        R visitNum(NumConstant num);
+        R visitString(StringConstant str);
+        R visitParameter(Parameter param);
+        R visitFunApp(FunctionApplication funApp);
+        R visitBinOp(BinOp binOp);
+        R visitUnOp(UnOp unOp);
+        R visitIsNullCheck(IsNullCheck inc);
+    }
+
+    /**
+     * Expressions compare structurally. The structural hash of every
+     * expression is computed once, on construction, from the cached
+     * hashes of its subexpressions, so that <code>hashCode</code> is a
+     * field access, and <code>equals</code> rejects most unequal
+     * expressions without descending into them. Equal subexpressions that
+     * are the same instance (see <code>AstInterner</code>) are compared
+     * by reference. Composite expressions are compared without recursion,
+     * so that even the most deeply nested ones can be compared.
+     */
     public static abstract class Expression {
 
+        /** Structural hash. */
+        private final int hash;
+
+        Expression(int hash) {
+            this.hash = hash;
+        }
+
+        /**
+         * Compares the classes and the hashes, the subclasses compare the
+         * fields.
+         */
+        boolean sameShape(Object other) {
+            return
+                other != null &&
+                other.getClass() == getClass() &&
+                ((Expression) other).hash == hash;
+        }
+
+        /**
+         * <code>equals</code> of the composite expressions, compares the
+         * subexpressions with an explicit stack, see <code>Comparison</code>.
+         */
+        final boolean equalsDeeply(Object other) {
+            return
+                this == other ||
+                sameShape(other) &&
+                new Comparison().compare(this, (Expression) other);
+        }
+
+        @Override
+        public final int hashCode() {
+            return hash;
+        }
+
+        /**
+         * Applies a visitor to this expression.
+         *
+         * @param visitor the visitor.
+         * @return result of the method that matches this expression.
+         */
+        public abstract <R> R accept(ExpressionVisitor<R> visitor);
     }
 
-    @Value public static class Identifier extends Expression {
-        String value;
+    @Getter public static final class Identifier extends Expression {
+        private final String value;
+
+        public Identifier(String value) {
+            super(31 + Objects.hashCode(value));
+            this.value = value;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<R> visitor) {
+            return visitor.visitIdentifier(this);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return
+                this == other ||
+                sameShape(other) &&
+                Objects.equals(value, ((Identifier) other).value);
+        }
 
         @Override
         public String toString() {
@@ -113,8 +343,25 @@ public final class Ast {
         }
     }
 
-    @Value public static class NumConstant extends Expression {
-        long value;
+    @Getter public static final class NumConstant extends Expression {
+        private final long value;
+
+        public NumConstant(long value) {
+            super(2 * 31 + Long.hashCode(value));
+            this.value = value;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<R> visitor) {
+            return visitor.visitNum(this);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return
+                this == other ||
+                sameShape(other) && value == ((NumConstant) other).value;
+        }
 
         @Override
         public String toString() {
@@ -122,8 +369,26 @@ public final class Ast {
         }
     }
 
-    @Value public static class StringConstant extends Expression {
-        String value;
+    @Getter public static final class StringConstant extends Expression {
+        private final String value;
+
+        public StringConstant(String value) {
+            super(3 * 31 + Objects.hashCode(value));
+            this.value = value;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<R> visitor) {
+            return visitor.visitString(this);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return
+                this == other ||
+                sameShape(other) &&
+                Objects.equals(value, ((StringConstant) other).value);
+        }
 
         @Override
         public String toString() {
@@ -131,49 +396,507 @@ public final class Ast {
         }
     }
 
-    @Value public static class FunctionApplication extends Expression {
-        String functionId;
-        List<Expression> arguments;
+    /**
+     * Parameter marker <code>?</code> of a prepared statement, see
+     * <code>PreparedTemplate</code>. The markers of a statement are
+     * numbered from zero, in the order of their appearance.
+     */
+    @Getter public static final class Parameter extends Expression {
+        private final int index;
+
+        public Parameter(int index) {
+            super(4 * 31 + index);
+            this.index = index;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<R> visitor) {
+            return visitor.visitParameter(this);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return
+                this == other ||
+                sameShape(other) && index == ((Parameter) other).index;
+        }
 
         @Override
         public String toString() {
-            return String.format(
-                "FunctionApplication(fun=%s, args=%s)",
-                functionId,
-                arguments
-            );
+            return "Param(" + index + ")";
         }
     }
 
-    @Value public static class BinOp extends Expression {
-        String operator;
-        Expression leftOperand;
-        Expression rightOperand;
+    @Getter
+    public static final class FunctionApplication extends Expression {
+        private final String functionId;
+        private final List<Expression> arguments;
+
+        public FunctionApplication(
+            String functionId,
+            List<Expression> arguments
+        ) {
+            super(
+                (5 * 31 + Objects.hashCode(functionId)) * 31 +
+                Objects.hashCode(arguments)
+            );
+            this.functionId = functionId;
+            // The hash is cached, so the arguments must never change
+            this.arguments =
+                Collections.unmodifiableList(new ArrayList<>(arguments));
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<R> visitor) {
+            return visitor.visitFunApp(this);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return equalsDeeply(other);
+        }
 
         @Override
         public String toString() {
-            return String.format(
-                "BinOp(%s,%s,%s)",
-                leftOperand,
-                operator,
-                rightOperand
+            return render(this);
+        }
+    }
+
+    @Getter public static final class BinOp extends Expression {
+        private final Operator operator;
+        private final Expression leftOperand;
+        private final Expression rightOperand;
+
+        public BinOp(
+            Operator operator,
+            Expression leftOperand,
+            Expression rightOperand
+        ) {
+            super(
+                ((6 * 31 + operator.ordinal()) * 31 +
+                Objects.hashCode(leftOperand)) * 31 +
+                Objects.hashCode(rightOperand)
             );
+            this.operator = operator;
+            this.leftOperand = leftOperand;
+            this.rightOperand = rightOperand;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<R> visitor) {
+            return visitor.visitBinOp(this);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return equalsDeeply(other);
+        }
+
+        @Override
+        public String toString() {
+            return render(this);
         }
 
         public static BinaryOperator<Expression>
-        partial(final String operator) {
+        partial(final Operator operator) {
             return (Expression l, Expression r) -> new BinOp(operator, l, r);
         }
     }
 
-    @Value public static class UnOp extends Expression {
-        String operator;
-        Expression operand;
+    @Getter public static final class UnOp extends Expression {
+        private final Operator operator;
+        private final Expression operand;
+
+        public UnOp(Operator operator, Expression operand) {
+            super(
+                (7 * 31 + operator.ordinal()) * 31 +
+                Objects.hashCode(operand)
+            );
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<R> visitor) {
+            return visitor.visitUnOp(this);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return equalsDeeply(other);
+        }
+
+        @Override
+        public String toString() {
+            return render(this);
+        }
+    }
+
+    @Getter public static final class IsNullCheck extends Expression {
+        private final Expression operand;
+        private final boolean not;
+
+        public IsNullCheck(Expression operand, boolean not) {
+            super(
+                (8 * 31 + Objects.hashCode(operand)) * 31 +
+                Boolean.hashCode(not)
+            );
+            this.operand = operand;
+            this.not = not;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<R> visitor) {
+            return visitor.visitIsNullCheck(this);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return equalsDeeply(other);
+        }
+
+        @Override
+        public String toString() {
+            return render(this);
+        }
+    }
+
+    /**
+     * Renders an expression as a string, without recursion, so that even
+     * the most deeply nested expressions can be printed. The composite
+     * expressions delegate their <code>toString</code> to this method.
+     *
+     * The output has the same format as if every node rendered its
+     * children with <code>toString</code>: function applications and binary
+     * operations have their own format, unary operations and null checks
+     * look like the <code>toString</code> generated by Lombok.
+     *
+     * @param root the expression.
+     * @return string representation of the expression.
+     */
+    static String render(Expression root) {
+        return new Renderer().render(root);
+    }
+
+    /**
+     * Visitor behind <code>render</code>. Leaves are appended right away,
+     * composite expressions push their parts.
+     */
+    private static final class Renderer implements ExpressionVisitor<Void> {
+
+        private final StringBuilder bldr = new StringBuilder();
+
+        /**
+         * Parts that are still to be appended: expressions are visited,
+         * everything else is appended as it is. Parts are pushed in
+         * reverse order.
+         */
+        private final ArrayDeque<Object> todo = new ArrayDeque<>();
+
+        String render(Expression root) {
+            todo.push(root);
+            while (!todo.isEmpty()) {
+                Object part = todo.pop();
+                if (part instanceof Expression) {
+                    ((Expression) part).accept(this);
+                } else {
+                    bldr.append(part);
+                }
+            }
+            return bldr.toString();
+        }
+
+        @Override
+        public Void visitIdentifier(Identifier id) {
+            bldr.append(id);
+            return null;
+        }
+
+        @Override
+        public Void visitNum(NumConstant num) {
+            bldr.append(num);
+            return null;
+        }
+
+        @Override
+        public Void visitString(StringConstant str) {
+            bldr.append(str);
+            return null;
+        }
+
+        @Override
+        public Void visitParameter(Parameter param) {
+            bldr.append(param);
+            return null;
+        }
+
+        @Override
+        public Void visitFunApp(FunctionApplication funApp) {
+            bldr.append("FunctionApplication(fun=");
+            bldr.append(funApp.functionId);
+            bldr.append(", args=[");
+            todo.push("])");
+            List<Expression> args = funApp.arguments;
+            for (int i = args.size() - 1; i >= 0; i--) {
+                todo.push(args.get(i));
+                if (i > 0) {
+                    todo.push(", ");
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitBinOp(BinOp binOp) {
+            bldr.append("BinOp(");
+            todo.push(")");
+            todo.push(binOp.rightOperand);
+            todo.push(",");
+            todo.push(binOp.operator);
+            todo.push(",");
+            todo.push(binOp.leftOperand);
+            return null;
+        }
+
+        @Override
+        public Void visitUnOp(UnOp unOp) {
+            bldr.append("Ast.UnOp(operator=");
+            bldr.append(unOp.operator);
+            bldr.append(", operand=");
+            todo.push(")");
+            todo.push(unOp.operand);
+            return null;
+        }
+
+        @Override
+        public Void visitIsNullCheck(IsNullCheck check) {
+            bldr.append("Ast.IsNullCheck(operand=");
+            todo.push(check.not ? ", not=true)" : ", not=false)");
+            todo.push(check.operand);
+            return null;
+        }
     }
 
-    @Value public static class IsNullCheck extends Expression {
-        Expression operand;
-        boolean not;
+    /**
+     * Visitor behind the <code>equals</code> of the composite expressions.
+     * Compares the fields of the visited expression with those of the
+     * other expression of the same shape, and pushes the pairs of
+     * subexpressions, which are compared later.
+     */
+    private static final class Comparison
+        implements ExpressionVisitor<Boolean> {
+
+        /**
+         * Pairs of subexpressions that are still to be compared, the left
+         * one on top of the right one.
+         */
+        private final ArrayDeque<Expression> todo = new ArrayDeque<>();
+
+        /** The expression that the visited expression is compared with. */
+        private Expression other;
+
+        boolean compare(Expression left, Expression right) {
+            push(left, right);
+            while (!todo.isEmpty()) {
+                Expression l = todo.pop();
+                Expression r = todo.pop();
+                if (l == r) {
+                    continue;
+                } else if (!l.sameShape(r)) {
+                    return false;
+                }
+                other = r;
+                if (!l.accept(this)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void push(Expression left, Expression right) {
+            todo.push(right);
+            todo.push(left);
+        }
+
+        @Override
+        public Boolean visitIdentifier(Identifier id) {
+            return id.equals(other);
+        }
+
+        @Override
+        public Boolean visitNum(NumConstant num) {
+            return num.equals(other);
+        }
+
+        @Override
+        public Boolean visitString(StringConstant str) {
+            return str.equals(other);
+        }
+
+        @Override
+        public Boolean visitParameter(Parameter param) {
+            return param.equals(other);
+        }
+
+        @Override
+        public Boolean visitFunApp(FunctionApplication funApp) {
+            FunctionApplication that = (FunctionApplication) other;
+            List<Expression> args = funApp.arguments;
+            if (
+                !Objects.equals(funApp.functionId, that.functionId) ||
+                args.size() != that.arguments.size()
+            ) {
+                return false;
+            }
+            for (int i = args.size() - 1; i >= 0; i--) {
+                push(args.get(i), that.arguments.get(i));
+            }
+            return true;
+        }
+
+        @Override
+        public Boolean visitBinOp(BinOp binOp) {
+            BinOp that = (BinOp) other;
+            if (binOp.operator != that.operator) {
+                return false;
+            }
+            push(binOp.rightOperand, that.rightOperand);
+            push(binOp.leftOperand, that.leftOperand);
+            return true;
+        }
+
+        @Override
+        public Boolean visitUnOp(UnOp unOp) {
+            UnOp that = (UnOp) other;
+            if (unOp.operator != that.operator) {
+                return false;
+            }
+            push(unOp.operand, that.operand);
+            return true;
+        }
+
+        @Override
+        public Boolean visitIsNullCheck(IsNullCheck check) {
+            IsNullCheck that = (IsNullCheck) other;
+            if (check.not != that.not) {
+                return false;
+            }
+            push(check.operand, that.operand);
+            return true;
+        }
+    }
+
+    /** No subexpressions. */
+    private static final Expression[] LEAF = new Expression[0];
+
+    /** Visitor behind <code>children</code>. */
+    private static final ExpressionVisitor<Expression[]> CHILDREN =
+        new ExpressionVisitor<Expression[]>() {
+
+            @Override
+            public Expression[] visitIdentifier(Identifier id) {
+                return LEAF;
+            }
+
+            @Override
+            public Expression[] visitNum(NumConstant num) {
+                return LEAF;
+            }
+
+            @Override
+            public Expression[] visitString(StringConstant str) {
+                return LEAF;
+            }
+
+            @Override
+            public Expression[] visitParameter(Parameter param) {
+                return LEAF;
+            }
+
+            @Override
+            public Expression[] visitFunApp(FunctionApplication funApp) {
+                return funApp.getArguments().toArray(LEAF);
+            }
+
+            @Override
+            public Expression[] visitBinOp(BinOp binOp) {
+                return new Expression[] {
+                    binOp.getLeftOperand(),
+                    binOp.getRightOperand()
+                };
+            }
+
+            @Override
+            public Expression[] visitUnOp(UnOp unOp) {
+                return new Expression[] { unOp.getOperand() };
+            }
+
+            @Override
+            public Expression[] visitIsNullCheck(IsNullCheck inc) {
+                return new Expression[] { inc.getOperand() };
+            }
+        };
+
+    /**
+     * Direct subexpressions of an expression, in a fresh array that the
+     * caller may modify. Leaves share an empty array.
+     */
+    static Expression[] children(Expression e) {
+        return e.accept(CHILDREN);
+    }
+
+    /**
+     * Copies a composite expression with different subexpressions, in the
+     * order of <code>children</code>.
+     */
+    static Expression withChildren(Expression e, final Expression[] cs) {
+        return e.accept(new ExpressionVisitor<Expression>() {
+
+            ///CLOVER:OFF
+            @Override
+            public Expression visitIdentifier(Identifier id) {
+                return id;
+            }
+
+            @Override
+            public Expression visitNum(NumConstant num) {
+                return num;
+            }
+
+            @Override
+            public Expression visitString(StringConstant str) {
+                return str;
+            }
+
+            @Override
+            public Expression visitParameter(Parameter param) {
+                return param;
+            }
+            ///CLOVER:ON
+
+            @Override
+            public Expression visitFunApp(FunctionApplication funApp) {
+                return new FunctionApplication(
+                    funApp.getFunctionId(),
+                    Collections.unmodifiableList(Arrays.asList(cs))
+                );
+            }
+
+            @Override
+            public Expression visitBinOp(BinOp binOp) {
+                return new BinOp(binOp.getOperator(), cs[0], cs[1]);
+            }
+
+            @Override
+            public Expression visitUnOp(UnOp unOp) {
+                return new UnOp(unOp.getOperator(), cs[0]);
+            }
+
+            @Override
+            public Expression visitIsNullCheck(IsNullCheck inc) {
+                return new IsNullCheck(cs[0], inc.isNot());
+            }
+        });
     }
 
     public static <T> T matchExpression(
@@ -181,6 +904,7 @@ public final class Ast {
         Function<Identifier, T> caseIdentifier,
         Function<NumConstant, T> caseNum,
         Function<StringConstant, T> caseString,
+        Function<Parameter, T> caseParameter,
         Function<FunctionApplication, T> caseFunApp,
         Function<BinOp, T> caseBinOp,
         Function<UnOp, T> caseUnOp,
@@ -192,6 +916,8 @@ public final class Ast {
             return caseNum.apply((NumConstant) e);
         } else if (e instanceof StringConstant) {
             return caseString.apply((StringConstant) e);
+        } else if (e instanceof Parameter) {
+            return caseParameter.apply((Parameter) e);
         } else if (e instanceof FunctionApplication) {
             return caseFunApp.apply((FunctionApplication) e);
         } else if (e instanceof BinOp) {
@@ -0,0 +1,751 @@
+package sqlparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static sqlparser.Ast.*;
+
+/**
+ * Versioned binary encoding of statements, meant for on-disk caches of
+ * parse results.
+ *
+ * The encoding starts with the bytes <code>SQLA</code> and the version,
+ * followed by a table of all strings, and by the statements. Integers are
+ * written as varints, seven bits per byte, least significant group
+ * first, numeric literals are zigzag-encoded before. Every string is
+ * stored once, as the length of its UTF-8 bytes and the bytes, and is
+ * referred to by its index in the table.
+ *
+ * Every statement and every node of an expression starts with a tag byte
+ * for its kind. Expressions are written as the number of their nodes,
+ * followed by the nodes in post-order: every node after its operands.
+ * Absent optional expressions have zero nodes. A table is written as the
+ * index of the database plus one, or zero if there is none, and the index
+ * of the table name. The rows of an <code>INSERT</code> are written as
+ * their number and width, followed by the values row by row. Rows without
+ * values are written as a zero byte each, so that every row takes at
+ * least one byte.
+ *
+ * Both directions work without recursion, so that even the most deeply
+ * nested expressions can be encoded and decoded. Decoded statements are
+ * equal to the encoded ones. Equal strings, identifiers and string
+ * literals are shared by all decoded statements.
+ */
+public final class AstCodec {
+
+    /** Hidden constructor. */
+    private AstCodec() { /* nothing to do. */ }
+
+    /** First bytes of every encoding. */
+    private static final byte[] MAGIC = { 'S', 'Q', 'L', 'A' };
+
+    /**
+     * Version of the encoding. Has to be incremented whenever the layout,
+     * the tags or the order of the <code>Operator</code> constants change.
+     */
+    public static final int VERSION = 2;
+
+    // Tags of the statements
+    private static final byte USE = 1;
+    private static final byte SELECT = 2;
+    private static final byte INSERT = 3;
+    private static final byte DELETE = 4;
+
+    // Tags of the expressions
+    private static final byte IDENTIFIER = 16;
+    private static final byte NUMBER = 17;
+    private static final byte STRING = 18;
+    private static final byte PARAMETER = 19;
+    private static final byte FUNCTION = 20;
+    private static final byte BINARY = 21;
+    private static final byte UNARY = 22;
+    private static final byte IS_NULL = 23;
+    private static final byte IS_NOT_NULL = 24;
+
+    /**
+     * Encodes statements.
+     *
+     * @param statements the statements.
+     * @return heap buffer with the encoding, from position zero to limit.
+     */
+    public static ByteBuffer encode(List<Statement> statements) {
+        Encoder encoder = new Encoder();
+        for (Statement s: statements) {
+            s.accept(encoder);
+        }
+        Bytes header = new Bytes();
+        header.bytes(MAGIC, 0, MAGIC.length);
+        header.varint(VERSION);
+        header.varint(encoder.strings.size());
+        for (String s: encoder.strings) {
+            byte[] utf8 = s.getBytes(UTF_8);
+            header.varint(utf8.length);
+            header.bytes(utf8, 0, utf8.length);
+        }
+        header.varint(statements.size());
+        header.bytes(encoder.body.array, 0, encoder.body.size);
+        return ByteBuffer.wrap(header.array, 0, header.size).slice();
+    }
+
+    /**
+     * Encodes statements and writes them to a stream.
+     *
+     * @param statements the statements.
+     * @param out the stream, neither flushed nor closed.
+     * @throws IOException if writing to the stream fails.
+     */
+    public static void write(List<Statement> statements, OutputStream out)
+    throws IOException {
+        ByteBuffer encoded = encode(statements);
+        out.write(
+            encoded.array(),
+            encoded.arrayOffset() + encoded.position(),
+            encoded.remaining()
+        );
+    }
+
+    /**
+     * Decodes statements, reading the buffer from its position on.
+     *
+     * @param in buffer with an encoding.
+     * @return the decoded statements.
+     * @throws IllegalArgumentException if the buffer does not start with
+     *         an encoding of the current version, or if the encoding is
+     *         malformed or truncated.
+     */
+    public static List<Statement> decode(ByteBuffer in) {
+        final Decoder decoder;
+        if (in.hasArray()) {
+            decoder = new Decoder(
+                in.array(),
+                in.arrayOffset() + in.position(),
+                in.arrayOffset() + in.limit()
+            );
+        } else {
+            byte[] copy = new byte[in.remaining()];
+            in.duplicate().get(copy);
+            decoder = new Decoder(copy, 0, copy.length);
+        }
+        int start = decoder.pos;
+        List<Statement> result = decoder.statements();
+        in.position(in.position() + decoder.pos - start);
+        return result;
+    }
+
+    /**
+     * Reads the remainder of a stream and decodes it.
+     *
+     * @param in the stream, not closed.
+     * @return the decoded statements.
+     * @throws IOException if reading from the stream fails.
+     * @throws IllegalArgumentException if the content is not a valid
+     *         encoding of the current version.
+     */
+    public static List<Statement> read(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            content.write(chunk, 0, n);
+        }
+        return decode(ByteBuffer.wrap(content.toByteArray()));
+    }
+
+    /** Growable array of bytes, with varint encoding. */
+    private static final class Bytes {
+
+        byte[] array = new byte[256];
+        int size = 0;
+
+        void ensure(int extra) {
+            if (size + extra > array.length) {
+                array = Arrays.copyOf(
+                    array,
+                    Math.max(2 * array.length, size + extra)
+                );
+            }
+        }
+
+        void tag(byte tag) {
+            ensure(1);
+            array[size++] = tag;
+        }
+
+        void bytes(byte[] src, int offset, int length) {
+            ensure(length);
+            System.arraycopy(src, offset, array, size, length);
+            size += length;
+        }
+
+        /** Writes a non-negative <code>int</code>. */
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                array[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            array[size++] = (byte) value;
+        }
+
+        /** Writes any <code>long</code>, zigzag-encoded. */
+        void zigzag(long value) {
+            ensure(10);
+            long bits = value << 1 ^ value >> 63;
+            while ((bits & ~0x7FL) != 0) {
+                array[size++] = (byte) (bits & 0x7F | 0x80);
+                bits >>>= 7;
+            }
+            array[size++] = (byte) bits;
+        }
+    }
+
+    /**
+     * Writes statements and expressions into the body, collects the
+     * strings into the table.
+     */
+    private static final class Encoder
+    implements StatementVisitor<Void>, ExpressionVisitor<Void> {
+
+        /** Encoded statements. */
+        final Bytes body = new Bytes();
+
+        /** Strings in the order of their first appearance. */
+        final List<String> strings = new ArrayList<>();
+
+        /** Indices of the strings. */
+        private final HashMap<String, Integer> indices = new HashMap<>();
+
+        /** @return index of a string, adds new strings to the table. */
+        private int index(String s) {
+            Integer index = indices.get(s);
+            if (index == null) {
+                index = strings.size();
+                indices.put(s, index);
+                strings.add(s);
+            }
+            return index;
+        }
+
+        private void string(String s) {
+            body.varint(index(s));
+        }
+
+        private void tableId(TableId t) {
+            Optional<String> database = t.getDatabaseName();
+            body.varint(database.isPresent() ? index(database.get()) + 1 : 0);
+            string(t.getTableName());
+        }
+
+        /**
+         * Writes the number of nodes and the nodes in post-order. The
+         * nodes are collected in reversed post-order first: a parent
+         * before its children, the children from right to left.
+         */
+        private void expression(Expression root) {
+            ArrayList<Expression> order = new ArrayList<>();
+            ArrayList<Expression> todo = new ArrayList<>();
+            todo.add(root);
+            while (!todo.isEmpty()) {
+                Expression e = todo.remove(todo.size() - 1);
+                order.add(e);
+                todo.addAll(Arrays.asList(children(e)));
+            }
+            body.varint(order.size());
+            for (int i = order.size() - 1; i >= 0; i--) {
+                order.get(i).accept(this);
+            }
+        }
+
+        private void optionalExpression(Optional<Expression> e) {
+            if (e.isPresent()) {
+                expression(e.get());
+            } else {
+                body.varint(0);
+            }
+        }
+
+        @Override
+        public Void visitUse(Use use) {
+            body.tag(USE);
+            string(use.getDatabaseName());
+            return null;
+        }
+
+        @Override
+        public Void visitSelect(Select select) {
+            body.tag(SELECT);
+            body.varint(select.getSelectList().size());
+            for (Expression e: select.getSelectList()) {
+                expression(e);
+            }
+            if (select.getFromTableId().isPresent()) {
+                body.varint(1);
+                tableId(select.getFromTableId().get());
+            } else {
+                body.varint(0);
+            }
+            optionalExpression(select.getWhereCondition());
+            optionalExpression(select.getOrderBy());
+            return null;
+        }
+
+        @Override
+        public Void visitInsert(Insert insert) {
+            body.tag(INSERT);
+            tableId(insert.getIntoTable());
+            body.varint(insert.getColumnList().size());
+            for (String column: insert.getColumnList()) {
+                string(column);
+            }
+            RowBlock rows = insert.getRows();
+            body.varint(rows.numRows());
+            body.varint(rows.width());
+            for (int r = 0; r < rows.numRows(); r++) {
+                if (rows.width() == 0) {
+                    body.varint(0);
+                }
+                for (int c = 0; c < rows.width(); c++) {
+                    expression(rows.get(r, c));
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitDelete(Delete delete) {
+            body.tag(DELETE);
+            tableId(delete.getFromTable());
+            expression(delete.getWhereCondition());
+            return null;
+        }
+
+        // Single nodes, without their operands
+
+        @Override
+        public Void visitIdentifier(Identifier id) {
+            body.tag(IDENTIFIER);
+            string(id.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visitNum(NumConstant num) {
+            body.tag(NUMBER);
+            body.zigzag(num.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visitString(StringConstant str) {
+            body.tag(STRING);
+            string(str.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visitParameter(Parameter param) {
+            body.tag(PARAMETER);
+            body.varint(param.getIndex());
+            return null;
+        }
+
+        @Override
+        public Void visitFunApp(FunctionApplication funApp) {
+            body.tag(FUNCTION);
+            string(funApp.getFunctionId());
+            body.varint(funApp.getArguments().size());
+            return null;
+        }
+
+        @Override
+        public Void visitBinOp(BinOp binOp) {
+            body.tag(BINARY);
+            body.varint(binOp.getOperator().ordinal());
+            return null;
+        }
+
+        @Override
+        public Void visitUnOp(UnOp unOp) {
+            body.tag(UNARY);
+            body.varint(unOp.getOperator().ordinal());
+            return null;
+        }
+
+        @Override
+        public Void visitIsNullCheck(IsNullCheck inc) {
+            body.tag(inc.isNot() ? IS_NOT_NULL : IS_NULL);
+            return null;
+        }
+    }
+
+    /** Reads statements from a buffer. */
+    private static final class Decoder {
+
+        /**
+         * The encoding is read from the array directly, which is cheaper
+         * than reading it through the buffer, especially before the code
+         * is compiled.
+         */
+        private final byte[] bytes;
+
+        /** Index of the next byte. */
+        int pos;
+
+        /** Index after the last byte. */
+        private final int limit;
+
+        /** The string table. */
+        private String[] strings;
+
+        /**
+         * Identifiers and string literals by the index of their string,
+         * created on first use, and shared by all their occurrences, like
+         * the nodes of the <code>AstInterner</code>.
+         */
+        private Identifier[] identifiers;
+        private StringConstant[] stringConstants;
+
+        /** Operands of the nodes that are still to be decoded. */
+        private Expression[] stack = new Expression[16];
+
+        Decoder(byte[] bytes, int pos, int limit) {
+            this.bytes = bytes;
+            this.pos = pos;
+            this.limit = limit;
+        }
+
+        List<Statement> statements() {
+            for (byte b: MAGIC) {
+                if (next() != b) {
+                    throw new IllegalArgumentException(
+                        "Not an encoding of statements"
+                    );
+                }
+            }
+            int version = varint();
+            if (version != VERSION) {
+                throw new IllegalArgumentException(
+                    "Expected version " + VERSION + ", but got " + version
+                );
+            }
+            strings = new String[count()];
+            identifiers = new Identifier[strings.length];
+            stringConstants = new StringConstant[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                int length = varint();
+                if (length > limit - pos) {
+                    throw truncated();
+                }
+                strings[i] = new String(bytes, pos, length, UTF_8);
+                pos += length;
+            }
+            int numStatements = count();
+            List<Statement> result = new ArrayList<>(numStatements);
+            for (int i = 0; i < numStatements; i++) {
+                result.add(statement());
+            }
+            return result;
+        }
+
+        private Statement statement() {
+            byte tag = next();
+            switch (tag) {
+                case USE:
+                    return new Use(string());
+                case SELECT:
+                    int k = count();
+                    List<Expression> selectList = new ArrayList<>(k);
+                    for (int i = 0; i < k; i++) {
+                        selectList.add(expression());
+                    }
+                    Optional<TableId> from =
+                        varint() == 0
+                        ? Optional.empty()
+                        : Optional.of(tableId());
+                    Optional<Expression> where =
+                        Optional.ofNullable(expression());
+                    Optional<Expression> orderBy =
+                        Optional.ofNullable(expression());
+                    return new Select(selectList, from, where, orderBy);
+                case INSERT:
+                    TableId into = tableId();
+                    int numColumns = count();
+                    List<String> columns = new ArrayList<>(numColumns);
+                    for (int i = 0; i < numColumns; i++) {
+                        columns.add(string());
+                    }
+                    return new Insert(into, columns, rows());
+                case DELETE:
+                    TableId table = tableId();
+                    Expression condition = expression();
+                    if (condition == null) {
+                        throw new IllegalArgumentException(
+                            "Missing condition of DELETE"
+                        );
+                    }
+                    return new Delete(table, condition);
+                default:
+                    throw new IllegalArgumentException(
+                        "Unknown statement tag: " + tag
+                    );
+            }
+        }
+
+        /** Reads the rows of an <code>INSERT</code>. */
+        private RowBlock rows() {
+            int numRows = count();
+            int width = count();
+            // Every value takes at least one byte, and so does every row
+            // without values.
+            if (width > 0 && numRows > (limit - pos) / width) {
+                throw truncated();
+            }
+            RowBlock rows = new RowBlock();
+            for (int r = 0; r < numRows; r++) {
+                if (width == 0 && next() != 0) {
+                    throw new IllegalArgumentException("Invalid empty row");
+                }
+                for (int c = 0; c < width; c++) {
+                    // Literals go into the block without boxing
+                    int numNodes = count();
+                    if (numNodes == 1 && peek() == NUMBER) {
+                        pos++;
+                        rows.addNumber(zigzag());
+                    } else if (numNodes == 1 && peek() == STRING) {
+                        pos++;
+                        rows.addString(string());
+                    } else if (numNodes == 0) {
+                        throw new IllegalArgumentException("Missing value");
+                    } else {
+                        rows.add(nodes(numNodes));
+                    }
+                }
+                rows.endRow();
+            }
+            return rows;
+        }
+
+        private TableId tableId() {
+            int database = varint();
+            return new TableId(
+                database == 0
+                ? Optional.empty()
+                : Optional.of(string(database - 1)),
+                string()
+            );
+        }
+
+        /** @return the expression, or <code>null</code> if absent. */
+        private Expression expression() {
+            int numNodes = count();
+            return numNodes == 0 ? null : nodes(numNodes);
+        }
+
+        /**
+         * Decodes the nodes of an expression in post-order, every node
+         * takes its operands from the stack.
+         */
+        private Expression nodes(int numNodes) {
+            int top = 0;
+            for (int i = 0; i < numNodes; i++) {
+                byte tag = next();
+                int arity;
+                Expression node;
+                switch (tag) {
+                    case IDENTIFIER:
+                        arity = 0;
+                        node = identifier(varint());
+                        break;
+                    case NUMBER:
+                        arity = 0;
+                        node = new NumConstant(zigzag());
+                        break;
+                    case STRING:
+                        arity = 0;
+                        node = stringConstant(varint());
+                        break;
+                    case PARAMETER:
+                        arity = 0;
+                        node = new Parameter(varint());
+                        break;
+                    case FUNCTION:
+                        String name = string();
+                        arity = operands(top, varint());
+                        node = new FunctionApplication(
+                            name,
+                            Collections.unmodifiableList(Arrays.asList(
+                                Arrays.copyOfRange(stack, top - arity, top)
+                            ))
+                        );
+                        break;
+                    case BINARY:
+                        Operator binary = operator();
+                        arity = operands(top, 2);
+                        node = new BinOp(
+                            binary,
+                            stack[top - 2],
+                            stack[top - 1]
+                        );
+                        break;
+                    case UNARY:
+                        Operator unary = operator();
+                        arity = operands(top, 1);
+                        node = new UnOp(unary, stack[top - 1]);
+                        break;
+                    case IS_NULL:
+                    case IS_NOT_NULL:
+                        arity = operands(top, 1);
+                        node = new IsNullCheck(
+                            stack[top - 1],
+                            tag == IS_NOT_NULL
+                        );
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                            "Unknown expression tag: " + tag
+                        );
+                }
+                top -= arity;
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * top);
+                }
+                stack[top++] = node;
+            }
+            if (top != 1) {
+                throw new IllegalArgumentException(
+                    "Expected a single expression, but got " + top
+                );
+            }
+            Expression root = stack[0];
+            stack[0] = null;
+            return root;
+        }
+
+        /**
+         * Checks that the stack holds enough operands.
+         *
+         * @return <code>arity</code>.
+         */
+        private static int operands(int top, int arity) {
+            if (arity > top) {
+                throw new IllegalArgumentException(
+                    "Expected " + arity + " operands, but got " + top
+                );
+            }
+            return arity;
+        }
+
+        private Operator operator() {
+            int ordinal = varint();
+            if (ordinal >= Operator.values().length) {
+                throw new IllegalArgumentException(
+                    "Unknown operator: " + ordinal
+                );
+            }
+            return Operator.byOrdinal(ordinal);
+        }
+
+        private String string() {
+            return string(varint());
+        }
+
+        private Identifier identifier(int index) {
+            String value = string(index);
+            Identifier id = identifiers[index];
+            if (id == null) {
+                id = new Identifier(value);
+                identifiers[index] = id;
+            }
+            return id;
+        }
+
+        private StringConstant stringConstant(int index) {
+            String value = string(index);
+            StringConstant str = stringConstants[index];
+            if (str == null) {
+                str = new StringConstant(value);
+                stringConstants[index] = str;
+            }
+            return str;
+        }
+
+        private String string(int index) {
+            if (index >= strings.length) {
+                throw new IllegalArgumentException(
+                    "Unknown string: " + index
+                );
+            }
+            return strings[index];
+        }
+
+        private byte next() {
+            if (pos == limit) {
+                throw truncated();
+            }
+            return bytes[pos++];
+        }
+
+        private byte peek() {
+            if (pos == limit) {
+                throw truncated();
+            }
+            return bytes[pos];
+        }
+
+        private static IllegalArgumentException truncated() {
+            return new IllegalArgumentException("Truncated encoding");
+        }
+
+        /**
+         * Reads the number of the elements that follow. Every element
+         * takes at least one byte, so that larger numbers are rejected
+         * before anything is allocated for the elements.
+         */
+        private int count() {
+            int count = varint();
+            if (count > limit - pos) {
+                throw truncated();
+            }
+            return count;
+        }
+
+        /** Reads a non-negative <code>int</code>. */
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = next();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        /** Reads a zigzag-encoded <code>long</code>. */
+        private long zigzag() {
+            long bits = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = next();
+                bits |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return bits >>> 1 ^ -(bits & 1);
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package sqlparser;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static sqlparser.Ast.*;
+
+/**
+ * Hash-consing factory for expressions and tables.
+ *
+ * Returns a canonical instance for every structurally equal expression
+ * or table, so that repetitive statements share their subtrees instead
+ * of duplicating them, and so that equal canonical nodes are the same
+ * instance. Trees are canonicalized bottom-up: the subexpressions of a
+ * canonical expression are canonical themselves, and equality checks in
+ * the table compare them by reference. Together with the hashes that
+ * the nodes compute once, on construction, a lookup costs time
+ * proportional to the number of direct subexpressions, not to the size
+ * of the tree.
+ *
+ * The table holds the canonical instances weakly: instances that are no
+ * longer used anywhere else are garbage collected, and their entries are
+ * removed on subsequent lookups.
+ *
+ * The interner is thread-safe. Threads that canonicalize equal nodes
+ * at the same time get the same instance.
+ */
+public final class AstInterner {
+
+    /**
+     * Weak reference to a canonical node, compares by the referenced
+     * node. Cleared references are equal only to themselves.
+     */
+    private static final class Entry extends WeakReference<Object> {
+
+        /** Hash of the referenced node. */
+        private final int hash;
+
+        Entry(Object node, ReferenceQueue<Object> queue) {
+            super(node, queue);
+            this.hash = node.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            } else if (!(other instanceof Entry)) {
+                return false;
+            }
+            Entry that = (Entry) other;
+            Object node = get();
+            return
+                hash == that.hash &&
+                node != null &&
+                node.equals(that.get());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** Canonical instances, each mapped to itself. */
+    private final ConcurrentHashMap<Entry, Entry> table =
+        new ConcurrentHashMap<>();
+
+    /** Entries whose nodes have been garbage collected. */
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    /** Copies a statement with canonical expressions and tables. */
+    private final StatementVisitor<Statement> statementInterner =
+        new StatementVisitor<Statement>() {
+
+            @Override
+            public Statement visitUse(Use use) {
+                return use;
+            }
+
+            @Override
+            public Statement visitSelect(Select select) {
+                return new Select(
+                    internAll(select.getSelectList()),
+                    select.getFromTableId().map(AstInterner.this::intern),
+                    select.getWhereCondition().map(AstInterner.this::intern),
+                    select.getOrderBy().map(AstInterner.this::intern)
+                );
+            }
+
+            @Override
+            public Statement visitInsert(Insert insert) {
+                RowBlock rows = insert.getRows();
+                RowBlock canonicalRows = new RowBlock();
+                for (int r = 0; r < rows.numRows(); r++) {
+                    for (int c = 0; c < rows.width(); c++) {
+                        // Literals are stored unboxed anyway
+                        Expression cell = rows.get(r, c);
+                        canonicalRows.add(
+                            cell instanceof NumConstant ||
+                            cell instanceof StringConstant
+                            ? cell
+                            : intern(cell)
+                        );
+                    }
+                    canonicalRows.endRow();
+                }
+                return new Insert(
+                    intern(insert.getIntoTable()),
+                    insert.getColumnList(),
+                    canonicalRows
+                );
+            }
+
+            @Override
+            public Statement visitDelete(Delete delete) {
+                return new Delete(
+                    intern(delete.getFromTable()),
+                    intern(delete.getWhereCondition())
+                );
+            }
+        };
+
+    /**
+     * Canonicalizes an expression, including all of its subexpressions.
+     * Works without recursion, so that even the most deeply nested
+     * expressions can be canonicalized.
+     *
+     * @param e the expression.
+     * @return the canonical instance that is equal to <code>e</code>.
+     */
+    public Expression intern(Expression e) {
+        expungeCollected();
+        // Reversed post-order
+        ArrayList<Expression> order = new ArrayList<>();
+        ArrayList<Expression> todo = new ArrayList<>();
+        todo.add(e);
+        while (!todo.isEmpty()) {
+            Expression next = todo.remove(todo.size() - 1);
+            order.add(next);
+            todo.addAll(Arrays.asList(children(next)));
+        }
+        Expression[] done = new Expression[16];
+        int top = 0;
+        for (int i = order.size() - 1; i >= 0; i--) {
+            Expression next = order.get(i);
+            Expression[] cs = children(next);
+            if (cs.length > 0) {
+                top -= cs.length;
+                boolean changed = false;
+                for (int c = 0; c < cs.length; c++) {
+                    changed |= cs[c] != done[top + c];
+                    cs[c] = done[top + c];
+                }
+                if (changed) {
+                    next = withChildren(next, cs);
+                }
+            }
+            if (top == done.length) {
+                done = Arrays.copyOf(done, 2 * top);
+            }
+            done[top++] = canonical(next);
+        }
+        return done[0];
+    }
+
+    /**
+     * Canonicalizes a table.
+     *
+     * @param t the table.
+     * @return the canonical instance that is equal to <code>t</code>.
+     */
+    public TableId intern(TableId t) {
+        expungeCollected();
+        return canonical(t);
+    }
+
+    /**
+     * Canonicalizes all expressions and tables of a statement. Statements
+     * themselves are not canonicalized.
+     *
+     * @param s the statement.
+     * @return equal statement with canonical expressions and tables.
+     */
+    public Statement intern(Statement s) {
+        return s.accept(statementInterner);
+    }
+
+    /** @return number of canonical instances, including collected ones. */
+    public int size() {
+        expungeCollected();
+        return table.size();
+    }
+
+    // Factory methods, each returns the canonical instance of a node
+
+    /** @return canonical identifier. */
+    public Identifier identifier(String value) {
+        expungeCollected();
+        return canonical(new Identifier(value));
+    }
+
+    /** @return canonical numeric literal. */
+    public NumConstant number(long value) {
+        expungeCollected();
+        return canonical(new NumConstant(value));
+    }
+
+    /** @return canonical string literal, <code>value</code> with quotes. */
+    public StringConstant string(String value) {
+        expungeCollected();
+        return canonical(new StringConstant(value));
+    }
+
+    /** @return canonical parameter marker. */
+    public Parameter parameter(int index) {
+        expungeCollected();
+        return canonical(new Parameter(index));
+    }
+
+    /** @return canonical function application. */
+    public FunctionApplication function(
+        String functionId,
+        List<Expression> arguments
+    ) {
+        return (FunctionApplication) intern(
+            new FunctionApplication(functionId, arguments)
+        );
+    }
+
+    /** @return canonical binary operation. */
+    public BinOp binOp(Operator op, Expression left, Expression right) {
+        return (BinOp) intern(new BinOp(op, left, right));
+    }
+
+    /** @return canonical unary operation. */
+    public UnOp unOp(Operator op, Expression operand) {
+        return (UnOp) intern(new UnOp(op, operand));
+    }
+
+    /** @return canonical null check. */
+    public IsNullCheck isNullCheck(Expression operand, boolean not) {
+        return (IsNullCheck) intern(new IsNullCheck(operand, not));
+    }
+
+    /** @return canonical table. */
+    public TableId tableId(Optional<String> databaseName, String tableName) {
+        return intern(new TableId(databaseName, tableName));
+    }
+
+    /** Canonicalizes a list of expressions. */
+    private List<Expression> internAll(List<Expression> list) {
+        List<Expression> result = new ArrayList<>(list.size());
+        for (Expression e: list) {
+            result.add(intern(e));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Looks up a node whose children are canonical, adds it to the table
+     * if there is no equal canonical instance yet.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T canonical(T node) {
+        Entry entry = new Entry(node, collected);
+        while (true) {
+            Entry existing = table.putIfAbsent(entry, entry);
+            if (existing == null) {
+                return node;
+            }
+            Object canonical = existing.get();
+            if (canonical != null) {
+                return (T) canonical;
+            }
+            // Collected between the lookup and now
+            table.remove(existing);
+        }
+    }
+
+    /** Removes the entries of collected nodes. */
+    private void expungeCollected() {
+        Reference<?> ref;
+        while ((ref = collected.poll()) != null) {
+            table.remove(ref);
+        }
+    }
+}
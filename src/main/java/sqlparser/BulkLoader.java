@@ -0,0 +1,400 @@
+package sqlparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static sqlparser.Ast.*;
+import static sqlparser.Token.Type.*;
+
+/**
+ * Extracts the values of literal-only <code>INSERT</code>s in bulk, as
+ * primitive columns, without building ASTs.
+ *
+ * Meant for loading dumps, which consist mostly of <code>INSERT</code>s
+ * whose values are numbers and strings. Such statements are recognized
+ * directly on the tokens: the values of consecutive rows that go into the
+ * same columns of the same table are collected in a
+ * <code>ColumnBatch</code>, which is handed to a consumer whenever it is
+ * full, and whenever the table or the columns change. The batch is
+ * reused afterwards, so apart from the tokens, hardly any objects are
+ * created per row.
+ *
+ * A value is a literal if it is a number, a negated number or a string.
+ * All other statements, including <code>INSERT</code>s with any other
+ * value and <code>INSERT</code>s whose rows do not match the columns,
+ * are parsed by <code>SqlParser</code> as usual, and passed to a second
+ * consumer. The pending batch is always passed on before such a
+ * statement, so the consumers see the statements in the order of the
+ * input.
+ */
+public final class BulkLoader {
+
+    /** Default maximal number of rows per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 1 << 12;
+
+    /** The input. */
+    private final TokenBuffer tokens;
+
+    /** Canonical instances of the identifiers. */
+    private final SymbolTable symbols;
+
+    /** Maximal number of rows per batch. */
+    private final int batchSize;
+
+    /** Receives the batches. */
+    private final Consumer<ColumnBatch> batches;
+
+    /** Receives all statements that are not literal-only inserts. */
+    private final Consumer<Statement> statements;
+
+    /** The batch that is being filled. */
+    private final ColumnBatch batch;
+
+    /** Syntax errors of the statements that have been parsed. */
+    private final List<ErrorMessage> errors = new ArrayList<>();
+
+    // Tokens of the literal-only insert that has been recognized last
+
+    /** Index of the database name, or <code>-1</code>. */
+    private int databaseToken;
+
+    /** Index of the table name. */
+    private int tableToken;
+
+    /** Index of the first column name. */
+    private int firstColumnToken;
+
+    /** Number of columns. */
+    private int width;
+
+    /** Index of the opening parenthesis of the first row. */
+    private int firstRowToken;
+
+    private BulkLoader(
+        TokenBuffer tokens,
+        SymbolTable symbols,
+        int batchSize,
+        Consumer<ColumnBatch> batches,
+        Consumer<Statement> statements
+    ) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                "Batch size must be positive, but was: " + batchSize
+            );
+        }
+        this.tokens = tokens;
+        this.symbols = symbols;
+        this.batchSize = batchSize;
+        this.batches = batches;
+        this.statements = statements;
+        this.batch = new ColumnBatch(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+    }
+
+    /**
+     * Tokenizes the input, and extracts the values of the literal-only
+     * inserts.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the input.
+     * @param batchSize maximal number of rows per batch.
+     * @param batches receives the values of the literal-only inserts.
+     * @param statements receives all other statements.
+     * @return the lexical errors, if there were any, otherwise the
+     *         syntax errors.
+     */
+    public static List<ErrorMessage> load(
+        String inputDescription,
+        CharSequence input,
+        int batchSize,
+        Consumer<ColumnBatch> batches,
+        Consumer<Statement> statements
+    ) {
+        return SqlTokenizer.tokenize(inputDescription, input).fold(
+            lexicalErrors -> lexicalErrors,
+            tokens -> load(
+                tokens,
+                new SymbolTable(),
+                batchSize,
+                batches,
+                statements
+            )
+        );
+    }
+
+    /**
+     * Extracts the values of the literal-only inserts from tokens.
+     *
+     * @param tokens tokens generated by the tokenizer, with a special EOF
+     *               token in the end.
+     * @param symbols symbol table of the session.
+     * @param batchSize maximal number of rows per batch.
+     * @param batches receives the values of the literal-only inserts.
+     * @param statements receives all other statements.
+     * @return the syntax errors.
+     */
+    public static List<ErrorMessage> load(
+        TokenBuffer tokens,
+        SymbolTable symbols,
+        int batchSize,
+        Consumer<ColumnBatch> batches,
+        Consumer<Statement> statements
+    ) {
+        return new BulkLoader(
+            tokens,
+            symbols,
+            batchSize,
+            batches,
+            statements
+        ).load();
+    }
+
+    /** Walks over all statements. */
+    private List<ErrorMessage> load() {
+        int eof = tokens.size() - 1;
+        int i = 0;
+        while (i < eof) {
+            int end = literalInsertEnd(i);
+            if (end >= 0) {
+                appendRows();
+            } else {
+                flush();
+                end = statementEnd(i);
+                errors.addAll(SqlParser.parse(
+                    tokens.cursor(i, end),
+                    symbols,
+                    statements
+                ));
+            }
+            i = end;
+        }
+        flush();
+        return errors;
+    }
+
+    /**
+     * Checks whether a literal-only insert starts at a token, and if so,
+     * remembers the positions of its parts.
+     *
+     * @param i index of the first token of a statement.
+     * @return index after the semicolon of the insert, or <code>-1</code>
+     *         if there is no literal-only insert.
+     */
+    private int literalInsertEnd(int i) {
+        if (
+            !isKeyword(i, Keyword.INSERT) ||
+            !isKeyword(i + 1, Keyword.INTO)
+        ) {
+            return -1;
+        }
+        int j = i + 2;
+        if (tokens.type(j) != IDENTIFIER) {
+            return -1;
+        }
+        if (tokens.type(j + 1) == PERIOD) {
+            if (tokens.type(j + 2) != IDENTIFIER) {
+                return -1;
+            }
+            databaseToken = j;
+            tableToken = j + 2;
+            j += 3;
+        } else {
+            databaseToken = -1;
+            tableToken = j;
+            j++;
+        }
+        if (tokens.type(j) != LPAREN) {
+            return -1;
+        }
+        j++;
+        firstColumnToken = j;
+        width = 0;
+        while (true) {
+            if (tokens.type(j) != IDENTIFIER) {
+                return -1;
+            }
+            width++;
+            j++;
+            if (tokens.type(j) == RPAREN) {
+                break;
+            } else if (tokens.type(j) != COMMA) {
+                return -1;
+            }
+            j++;
+        }
+        j++;
+        if (!isKeyword(j, Keyword.VALUES)) {
+            return -1;
+        }
+        j++;
+        firstRowToken = j;
+        while (true) {
+            if (tokens.type(j) != LPAREN) {
+                return -1;
+            }
+            j++;
+            for (int c = 0; c < width; c++) {
+                if (c > 0) {
+                    if (tokens.type(j) != COMMA) {
+                        return -1;
+                    }
+                    j++;
+                }
+                j = literalEnd(j);
+                if (j < 0) {
+                    return -1;
+                }
+            }
+            if (tokens.type(j) != RPAREN) {
+                return -1;
+            }
+            j++;
+            if (tokens.type(j) == SEMICOLON) {
+                return j + 1;
+            } else if (tokens.type(j) != COMMA) {
+                return -1;
+            }
+            j++;
+        }
+    }
+
+    /**
+     * @param j index of a token.
+     * @return index after the literal that starts at the token, or
+     *         <code>-1</code> if there is none.
+     */
+    private int literalEnd(int j) {
+        switch (tokens.type(j)) {
+            case NUMBER:
+            case STRING:
+                return j + 1;
+            case OPERATOR:
+                if (
+                    tokens.operator(j) == Operator.MINUS &&
+                    tokens.type(j + 1) == NUMBER
+                ) {
+                    return j + 2;
+                }
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    /** Copies the rows of the recognized insert into the batch. */
+    private void appendRows() {
+        if (!isCurrentTable()) {
+            flush();
+            List<String> columns = new ArrayList<>(width);
+            for (int c = 0; c < width; c++) {
+                columns.add(tokens.symbol(firstColumnToken + 2 * c, symbols));
+            }
+            batch.reset(
+                new TableId(
+                    databaseToken < 0
+                    ? Optional.empty()
+                    : Optional.of(tokens.symbol(databaseToken, symbols)),
+                    tokens.symbol(tableToken, symbols)
+                ),
+                Collections.unmodifiableList(columns)
+            );
+        }
+        int j = firstRowToken;
+        while (true) {
+            // Opening parenthesis
+            j++;
+            batch.ensureRoom();
+            for (int c = 0; c < width; c++) {
+                if (c > 0) {
+                    j++;
+                }
+                switch (tokens.type(j)) {
+                    case NUMBER:
+                        batch.setNumber(c, tokens.value(j));
+                        j++;
+                        break;
+                    case STRING:
+                        batch.setString(c, tokens, j);
+                        j++;
+                        break;
+                    default:
+                        // Negated number
+                        batch.setNumber(c, -tokens.value(j + 1));
+                        j += 2;
+                }
+            }
+            batch.endRow();
+            if (batch.numRows() >= batchSize) {
+                flush();
+            }
+            // Closing parenthesis
+            j++;
+            if (tokens.type(j) == SEMICOLON) {
+                return;
+            }
+            j++;
+        }
+    }
+
+    /**
+     * Checks whether the recognized insert goes into the same columns as
+     * the rows in the batch.
+     */
+    private boolean isCurrentTable() {
+        TableId table = batch.getTable();
+        if (table == null) {
+            return false;
+        }
+        Optional<String> database = table.getDatabaseName();
+        if (
+            database.isPresent() != (databaseToken >= 0) ||
+            database.isPresent() &&
+            database.get() != tokens.symbol(databaseToken, symbols) ||
+            table.getTableName() != tokens.symbol(tableToken, symbols)
+        ) {
+            return false;
+        }
+        List<String> columns = batch.getColumns();
+        if (columns.size() != width) {
+            return false;
+        }
+        for (int c = 0; c < width; c++) {
+            String column = tokens.symbol(firstColumnToken + 2 * c, symbols);
+            if (columns.get(c) != column) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Passes the batch to the consumer, unless it is empty. */
+    private void flush() {
+        if (batch.numRows() > 0) {
+            batches.accept(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * @param i index of the first token of a statement.
+     * @return index after the next semicolon, or of the <code>EOF</code>.
+     */
+    private int statementEnd(int i) {
+        int eof = tokens.size() - 1;
+        while (i < eof) {
+            if (tokens.type(i) == SEMICOLON) {
+                return i + 1;
+            }
+            i++;
+        }
+        return eof;
+    }
+
+    /** Checks whether a token is the specified keyword. */
+    private boolean isKeyword(int i, Keyword keyword) {
+        return tokens.keyword(i) == keyword;
+    }
+}
@@ -0,0 +1,94 @@
+package sqlparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Splits an input into chunks that can be tokenized independently.
+ *
+ * Chunks end right after semicolons that are not part of a string
+ * literal. The tokenizer is always in its initial state after such a
+ * semicolon, so that scanning a chunk on its own yields exactly the same
+ * tokens as scanning the entire input.
+ *
+ * The splitter mirrors only those parts of the tokenizer that matter for
+ * the split points and the line numbers: string literals, escape
+ * sequences (a line break after a backslash does not count as a new line),
+ * and line breaks that terminate unfinished string literals.
+ */
+final class ChunkSplitter {
+
+    /** Range of the input, together with the line state at its start. */
+    @Value static final class Chunk {
+        /** Offset of the first character. */
+        int start;
+        /** Offset after the last character. */
+        int end;
+        /** Zero-based index of the line that contains the start. */
+        int lineIdx;
+        /** Offset of the line break before the start, or -1. */
+        int lastLineBreakPos;
+    }
+
+    /** Hidden constructor. */
+    private ChunkSplitter() { /* nothing to do. */ }
+
+    /**
+     * Splits the input into chunks of at least the specified length
+     * (except for the last one). The last chunk ends at the end of the
+     * input, and can be empty.
+     *
+     * @param input the input that is to be tokenized.
+     * @param minChunkLength minimal length of a chunk, positive.
+     * @return non-empty list of adjacent chunks that cover the input.
+     */
+    static List<Chunk> split(CharSequence input, int minChunkLength) {
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        int n = input.length();
+        int lineIdx = 0;
+        int lastLineBreakPos = -1;
+        int chunkStart = 0;
+        int chunkLineIdx = 0;
+        int chunkLastLineBreakPos = -1;
+        boolean inString = false;
+        int i = 0;
+        while (i < n) {
+            char c = input.charAt(i);
+            if (inString) {
+                if (c == '"') {
+                    inString = false;
+                } else if (c == '\n' || c == '\r') {
+                    // Unterminated string, the line break is processed
+                    // once more outside of the string.
+                    inString = false;
+                    continue;
+                } else if (c == '\\') {
+                    i++;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '\n') {
+                lineIdx++;
+                lastLineBreakPos = i;
+            } else if (c == ';' && i + 1 - chunkStart >= minChunkLength) {
+                chunks.add(
+                    new Chunk(
+                        chunkStart,
+                        i + 1,
+                        chunkLineIdx,
+                        chunkLastLineBreakPos
+                    )
+                );
+                chunkStart = i + 1;
+                chunkLineIdx = lineIdx;
+                chunkLastLineBreakPos = lastLineBreakPos;
+            }
+            i++;
+        }
+        chunks.add(
+            new Chunk(chunkStart, n, chunkLineIdx, chunkLastLineBreakPos)
+        );
+        return chunks;
+    }
+}
@@ -0,0 +1,215 @@
+package sqlparser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static sqlparser.Ast.*;
+
+/**
+ * Values of consecutive literal rows that are inserted into the same
+ * columns of a table, stored as primitive columns, see
+ * <code>BulkLoader</code>.
+ *
+ * Every column stores numeric literals as <code>long</code> values, and
+ * string literals as ranges of an arena that is shared by all columns.
+ * The ranges cover the lexemes including the quotes, exactly like the
+ * values of <code>StringConstant</code>. A column can contain both kinds
+ * of literals, the string ranges of numeric values are marked by a start
+ * of <code>-1</code>.
+ *
+ * A batch is reused for the next rows as soon as the consumer returns.
+ * The arrays and the arena are only valid during the callback, the
+ * consumer has to copy whatever it wants to keep.
+ */
+public final class ColumnBatch {
+
+    /** Table into which the rows are inserted. */
+    private TableId table;
+
+    /** Columns into which the rows are inserted. */
+    private List<String> columns;
+
+    /** Number of rows in the batch. */
+    private int numRows = 0;
+
+    /** Number of rows that fit into the arrays. */
+    private int capacity;
+
+    /** Values of the numeric literals, per column. */
+    private long[][] numbers = new long[0][];
+
+    /** Starts of the string literals in the arena, per column. */
+    private int[][] stringStarts = new int[0][];
+
+    /** Ends of the string literals in the arena, per column. */
+    private int[][] stringEnds = new int[0][];
+
+    /** Characters of all string literals of the batch. */
+    private final StringBuilder arena = new StringBuilder();
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity initial number of rows per column.
+     */
+    ColumnBatch(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Empties the batch, and prepares it for rows that are inserted into
+     * other columns.
+     */
+    void reset(TableId table, List<String> columns) {
+        clear();
+        this.table = table;
+        this.columns = columns;
+        int width = columns.size();
+        if (width > numbers.length) {
+            int oldWidth = numbers.length;
+            numbers = Arrays.copyOf(numbers, width);
+            stringStarts = Arrays.copyOf(stringStarts, width);
+            stringEnds = Arrays.copyOf(stringEnds, width);
+            for (int c = oldWidth; c < width; c++) {
+                numbers[c] = new long[capacity];
+                stringStarts[c] = new int[capacity];
+                stringEnds[c] = new int[capacity];
+            }
+        }
+    }
+
+    /** Removes all rows, keeps the arrays for the next rows. */
+    void clear() {
+        numRows = 0;
+        arena.setLength(0);
+    }
+
+    /** Makes room for one more row. */
+    void ensureRoom() {
+        if (numRows == capacity) {
+            capacity *= 2;
+            for (int c = 0; c < numbers.length; c++) {
+                numbers[c] = Arrays.copyOf(numbers[c], capacity);
+                stringStarts[c] = Arrays.copyOf(stringStarts[c], capacity);
+                stringEnds[c] = Arrays.copyOf(stringEnds[c], capacity);
+            }
+        }
+    }
+
+    /** Sets a numeric value in the current row. */
+    void setNumber(int column, long value) {
+        numbers[column][numRows] = value;
+        stringStarts[column][numRows] = -1;
+        stringEnds[column][numRows] = -1;
+    }
+
+    /** Sets a string value in the current row, copied from a token. */
+    void setString(int column, TokenBuffer tokens, int token) {
+        numbers[column][numRows] = 0;
+        stringStarts[column][numRows] = arena.length();
+        tokens.appendLexeme(token, arena);
+        stringEnds[column][numRows] = arena.length();
+    }
+
+    /** Completes the current row. */
+    void endRow() {
+        numRows++;
+    }
+
+    /** @return table into which the rows are inserted. */
+    public TableId getTable() {
+        return table;
+    }
+
+    /** @return columns into which the rows are inserted. */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /** @return number of rows. */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @param column index of a column.
+     * @return values of the numeric literals, only the first
+     *         <code>numRows()</code> entries are meaningful.
+     */
+    public long[] numbers(int column) {
+        checkColumn(column);
+        return numbers[column];
+    }
+
+    /**
+     * @param column index of a column.
+     * @return starts of the string literals in the arena, <code>-1</code>
+     *         for numeric literals, only the first <code>numRows()</code>
+     *         entries are meaningful.
+     */
+    public int[] stringStarts(int column) {
+        checkColumn(column);
+        return stringStarts[column];
+    }
+
+    /**
+     * @param column index of a column.
+     * @return ends of the string literals in the arena, only the first
+     *         <code>numRows()</code> entries are meaningful.
+     */
+    public int[] stringEnds(int column) {
+        checkColumn(column);
+        return stringEnds[column];
+    }
+
+    /** @return characters of all string literals of the batch. */
+    public CharSequence arena() {
+        return arena;
+    }
+
+    /**
+     * @param column index of a column.
+     * @param row index of a row.
+     * @return <code>true</code> if the value is a string literal.
+     */
+    public boolean isString(int column, int row) {
+        return stringStarts(column)[checkRow(row)] >= 0;
+    }
+
+    /**
+     * Materializes a single value, mostly for debugging and tests.
+     *
+     * @param column index of a column.
+     * @param row index of a row.
+     * @return <code>NumConstant</code> or <code>StringConstant</code>.
+     */
+    public Expression get(int column, int row) {
+        if (isString(column, row)) {
+            return new StringConstant(arena.substring(
+                stringStarts[column][row],
+                stringEnds[column][row]
+            ));
+        } else {
+            return new NumConstant(numbers[column][row]);
+        }
+    }
+
+    /** Fails unless the column exists. */
+    private void checkColumn(int column) {
+        if (column < 0 || column >= columns.size()) {
+            throw new IndexOutOfBoundsException(
+                "Column " + column + " of " + columns.size()
+            );
+        }
+    }
+
+    /** Fails unless the row exists, returns it otherwise. */
+    private int checkRow(int row) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException(
+                "Row " + row + " of " + numRows
+            );
+        }
+        return row;
+    }
+}
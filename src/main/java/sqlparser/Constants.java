@@ -4,51 +4,31 @@ import java.util.*;
 import static java.util.stream.Collectors.*;
 
 class Constants {
-    /** Reserved keywords. */
-    public static HashSet<String> RESERVED_KEYWORDS = new HashSet<>(
-        Arrays.asList(
-            "AND",
-            "BY",
-            "DELETE",
-            "FROM",
-            "HAVING",
-            "INSERT",
-            "INTO",
-            "IS",
-            "NOT",
-            "NULL",
-            "OR",
-            "ORDER",
-            "SELECT",
-            "USE",
-            "VALUES",
-            "WHERE"
-        )
-    );
-
-    public static final HashSet<String> COMPARISON_OPS = new HashSet<String>(
-        Arrays.asList("=,!=,<,>,<=,>=,!<,!>".split(","))
-    );
-
-    public static final HashSet<String> ARITH_HIGH_OPS = new HashSet<String>(
-        Arrays.asList("/", "*", "%")
-    );
-
-    public static final HashSet<String> ARITH_LOW_OPS = new HashSet<String>(
-        Arrays.asList("+", "-")
-    );
-
-    public static final HashSet<String> ALL_OPS = new HashSet<String>(){{
-        addAll(COMPARISON_OPS);
-        addAll(ARITH_HIGH_OPS);
-        addAll(ARITH_LOW_OPS);
-    }};
+    /** Precedence of <code>OR</code>, the loosest operator. */
+    public static final int OR_PRECEDENCE = 1;
+
+    /** Precedence of <code>AND</code>. */
+    public static final int AND_PRECEDENCE = 2;
+
+    /** Precedence of the prefix operator <code>NOT</code>. */
+    public static final int NOT_PRECEDENCE = 3;
+
+    /** Precedence of the postfix check <code>IS [NOT] NULL</code>. */
+    public static final int IS_NULL_PRECEDENCE = 4;
+
+    /** Precedence of the comparison operators. */
+    public static final int COMPARISON_PRECEDENCE = 5;
+
+    /** Precedence of the additive operators. */
+    public static final int ARITH_LOW_PRECEDENCE = 6;
+
+    /** Precedence of the multiplicative operators, the tightest ones. */
+    public static final int ARITH_HIGH_PRECEDENCE = 7;
 
     /** Set of characters that can occur as parts of operators. */
     public static final Set<Character> OP_CHARS =
-        ALL_OPS
-        .stream()
-        .flatMap((String s) -> s.chars().mapToObj(c -> (char) c))
+        Arrays.stream(Operator.values())
+        .filter(Operator::isSymbolic)
+        .flatMap(op -> op.getSymbol().chars().mapToObj(c -> (char) c))
         .collect(toSet());
 }
-
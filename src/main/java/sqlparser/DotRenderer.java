@@ -17,6 +17,12 @@ class DotRenderer {
         }
     };
 
+    /** Visitors that render statements and expressions, see below. */
+    private final StatementRenderer statementRenderer =
+        new StatementRenderer();
+    private final Entering entering = new Entering();
+    private final Leaving leaving = new Leaving();
+
     /**
      * Instances of this class act only as closures for the
      * hash sets and node-id suppliers, they should be created only
@@ -122,128 +128,315 @@ class DotRenderer {
     }
 
     private String renderStatement(Statement s) {
-        final String thisNodeId = idSupp.get();
-        matchStatement(
-            s,
-            (Use use) -> {
-                nodes.add(boxNode(thisNodeId, "USE"));
-                edges.add(edge(
-                    thisNodeId,
-                    renderString(use.getDatabaseName()),
-                    "databaseName"
-                ));
-                return (Void) null;
-            },
-            (Select sel) -> {
-                nodes.add(boxNode(thisNodeId, "SELECT"));
+        return s.accept(statementRenderer);
+    }
 
-                edges.add(edge(
-                    thisNodeId,
-                    renderExpressionList(sel.getSelectList()),
-                    "selectList"
-                ));
+    /** Renders a statement, returns the id of its node. */
+    private final class StatementRenderer implements StatementVisitor<String> {
+
+        @Override
+        public String visitUse(Use use) {
+            String thisNodeId = idSupp.get();
+            nodes.add(boxNode(thisNodeId, "USE"));
+            edges.add(edge(
+                thisNodeId,
+                renderString(use.getDatabaseName()),
+                "databaseName"
+            ));
+            return thisNodeId;
+        }
 
-                sel.getFromTableId().ifPresent((TableId tid) -> {
-                    edges.add(edge(thisNodeId, renderTableId(tid), "from"));
-                });
+        @Override
+        public String visitSelect(Select sel) {
+            String thisNodeId = idSupp.get();
+            nodes.add(boxNode(thisNodeId, "SELECT"));
 
-                sel.getWhereCondition().ifPresent((Expression w) -> {
-                    edges.add(edge(thisNodeId, renderExpression(w), "where"));
-                });
+            edges.add(edge(
+                thisNodeId,
+                renderExpressionList(sel.getSelectList()),
+                "selectList"
+            ));
 
-                sel.getOrderBy().ifPresent((Expression o) -> {
-                    edges.add(edge(thisNodeId, renderExpression(o), "orderBy"));
-                });
+            if (sel.getFromTableId().isPresent()) {
+                TableId tid = sel.getFromTableId().get();
+                edges.add(edge(thisNodeId, renderTableId(tid), "from"));
+            }
 
-                return (Void) null;
-            },
-            (Insert ins) -> {
-                nodes.add(boxNode(thisNodeId, "INSERT"));
-                edges.add(edge(
-                    thisNodeId,
-                    renderTableId(ins.getIntoTable()),
-                    "into"
-                ));
-                edges.add(edge(
-                    thisNodeId,
-                    renderStringList(ins.getColumnList()),
-                    "columns"
-                ));
-                edges.add(edge(
-                    thisNodeId,
-                    renderExpressionList(ins.getValues()),
-                    "values"
-                ));
+            if (sel.getWhereCondition().isPresent()) {
+                Expression w = sel.getWhereCondition().get();
+                edges.add(edge(thisNodeId, renderExpression(w), "where"));
+            }
 
-                return (Void) null;
-            },
-            (Delete del) -> {
-                nodes.add(boxNode(thisNodeId, "DELETE"));
-                edges.add(edge(
-                    thisNodeId,
-                    renderTableId(del.getFromTable()),
-                    "from"
-                ));
+            if (sel.getOrderBy().isPresent()) {
+                Expression o = sel.getOrderBy().get();
+                edges.add(edge(thisNodeId, renderExpression(o), "orderBy"));
+            }
+
+            return thisNodeId;
+        }
+
+        @Override
+        public String visitInsert(Insert ins) {
+            String thisNodeId = idSupp.get();
+            nodes.add(boxNode(thisNodeId, "INSERT"));
+            edges.add(edge(
+                thisNodeId,
+                renderTableId(ins.getIntoTable()),
+                "into"
+            ));
+            edges.add(edge(
+                thisNodeId,
+                renderStringList(ins.getColumnList()),
+                "columns"
+            ));
+            RowBlock rows = ins.getRows();
+            for (int r = 0; r < rows.numRows(); r++) {
                 edges.add(edge(
                     thisNodeId,
-                    renderExpression(del.getWhereCondition()),
-                    "where"
+                    renderExpressionList(rows.row(r)),
+                    rows.numRows() == 1 ? "values" : "values " + r
                 ));
-
-                return (Void) null;
             }
-        );
 
-        return thisNodeId;
+            return thisNodeId;
+        }
+
+        @Override
+        public String visitDelete(Delete del) {
+            String thisNodeId = idSupp.get();
+            nodes.add(boxNode(thisNodeId, "DELETE"));
+            edges.add(edge(
+                thisNodeId,
+                renderTableId(del.getFromTable()),
+                "from"
+            ));
+            edges.add(edge(
+                thisNodeId,
+                renderExpression(del.getWhereCondition()),
+                "where"
+            ));
+
+            return thisNodeId;
+        }
     }
 
+    /** Marks the completion of the composite expression below it. */
+    private static final Object LEAVE = new Object();
+
+    /**
+     * Marks the completion of an argument of a function application. The
+     * node id of the arguments and the label of the edge are pending.
+     */
+    private static final Object ARGUMENT = new Object();
+
+    /**
+     * Expressions that are still to be entered, and markers of the steps
+     * that complete composite expressions once their children are done.
+     */
+    private final ArrayDeque<Object> todo = new ArrayDeque<>();
+
+    /**
+     * Node ids and edge labels of the markers on <code>todo</code>, pushed
+     * and popped together with their markers.
+     */
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+
+    /** Node ids of the completed expressions. */
+    private final ArrayDeque<String> done = new ArrayDeque<>();
+
+    /**
+     * Renders an expression without recursion, so that even the most
+     * deeply nested expressions can be rendered.
+     *
+     * Node ids are assigned when an expression is entered, nodes and edges
+     * of composite expressions are emitted when all of their children are
+     * done, exactly in the order of a recursive traversal. Expressions are
+     * dispatched by the visitors, the traversal allocates nothing per node
+     * except for the DOT statements themselves.
+     *
+     * @param expr the expression.
+     * @return id of the node of the expression.
+     */
     private String renderExpression(Expression expr) {
-        final String thisNodeId = idSupp.get();
-        matchExpression(
-            expr,
-            (Identifier id) -> {
-                nodes.add(boxNode(thisNodeId, id.getValue()));
-                return (Void) null;
-            },
-            (NumConstant num) -> {
-                nodes.add(ellipseNode(thisNodeId, "" + num.getValue()));
-                return (Void) null;
-            },
-            (StringConstant str) -> {
-                nodes.add(boxNode(thisNodeId, str.getValue()));
-                return (Void) null;
-            },
-            (FunctionApplication funApp) -> {
-                nodes.add(ellipseNode(thisNodeId, funApp.getFunctionId()));
-                String argsNodeId = renderExpressionList(funApp.getArguments());
-                edges.add(edge(thisNodeId, argsNodeId, "args"));
-                return (Void) null;
-            },
-            (BinOp binOp) -> {
-                String leftNode = renderExpression(binOp.getLeftOperand());
-                String rightNode = renderExpression(binOp.getRightOperand());
-                nodes.add(circleNode(thisNodeId, binOp.getOperator()));
-                edges.add(edge(thisNodeId, leftNode, "first"));
-                edges.add(edge(thisNodeId, rightNode, "second"));
-                return (Void) null;
-            },
-            (UnOp unOp) -> {
-                String opNode = renderExpression(unOp.getOperand());
-                nodes.add(circleNode(thisNodeId, unOp.getOperator()));
-                edges.add(edge(thisNodeId, opNode, ""));
-                return (Void) null;
-            },
-            (IsNullCheck inc) -> {
-                String opNode = renderExpression(inc.getOperand());
-                nodes.add(ellipseNode(
-                    thisNodeId,
-                    inc.isNot() ? "IS NOT NULL" : "IS NULL"
-                ));
-                edges.add(edge(thisNodeId, opNode, ""));
-                return (Void) null;
+        todo.push(expr);
+        while (!todo.isEmpty()) {
+            Object next = todo.pop();
+            if (next == LEAVE) {
+                ((Expression) todo.pop()).accept(leaving);
+            } else if (next == ARGUMENT) {
+                String label = pending.pop();
+                String argsNodeId = pending.pop();
+                edges.add(edge(argsNodeId, done.pop(), label));
+            } else {
+                ((Expression) next).accept(entering);
             }
-        );
-        return thisNodeId;
+        }
+        return done.pop();
+    }
+
+    /**
+     * Emits the nodes of leaves, schedules the children and the
+     * completion of composite expressions.
+     */
+    private final class Entering implements ExpressionVisitor<Void> {
+
+        @Override
+        public Void visitIdentifier(Identifier id) {
+            String thisNodeId = idSupp.get();
+            nodes.add(boxNode(thisNodeId, id.getValue()));
+            done.push(thisNodeId);
+            return null;
+        }
+
+        @Override
+        public Void visitNum(NumConstant num) {
+            String thisNodeId = idSupp.get();
+            nodes.add(ellipseNode(thisNodeId, "" + num.getValue()));
+            done.push(thisNodeId);
+            return null;
+        }
+
+        @Override
+        public Void visitString(StringConstant str) {
+            String thisNodeId = idSupp.get();
+            nodes.add(boxNode(thisNodeId, str.getValue()));
+            done.push(thisNodeId);
+            return null;
+        }
+
+        @Override
+        public Void visitParameter(Parameter param) {
+            String thisNodeId = idSupp.get();
+            nodes.add(ellipseNode(thisNodeId, "?" + param.getIndex()));
+            done.push(thisNodeId);
+            return null;
+        }
+
+        @Override
+        public Void visitFunApp(FunctionApplication funApp) {
+            String thisNodeId = idSupp.get();
+            nodes.add(ellipseNode(thisNodeId, funApp.getFunctionId()));
+            String argsNodeId = idSupp.get();
+            nodes.add(boxNode(argsNodeId, "[]"));
+            leaveLater(funApp, thisNodeId);
+            pending.push(argsNodeId);
+            List<Expression> args = funApp.getArguments();
+            for (int i = args.size() - 1; i >= 0; i--) {
+                pending.push(argsNodeId);
+                pending.push("" + i);
+                todo.push(ARGUMENT);
+                todo.push(args.get(i));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitBinOp(BinOp binOp) {
+            leaveLater(binOp, idSupp.get());
+            todo.push(binOp.getRightOperand());
+            todo.push(binOp.getLeftOperand());
+            return null;
+        }
+
+        @Override
+        public Void visitUnOp(UnOp unOp) {
+            leaveLater(unOp, idSupp.get());
+            todo.push(unOp.getOperand());
+            return null;
+        }
+
+        @Override
+        public Void visitIsNullCheck(IsNullCheck inc) {
+            leaveLater(inc, idSupp.get());
+            todo.push(inc.getOperand());
+            return null;
+        }
+
+        /** Schedules the completion of a composite expression. */
+        private void leaveLater(Expression e, String thisNodeId) {
+            pending.push(thisNodeId);
+            todo.push(e);
+            todo.push(LEAVE);
+        }
+    }
+
+    /**
+     * Emits the nodes and edges of composite expressions whose children
+     * are done.
+     */
+    private final class Leaving implements ExpressionVisitor<Void> {
+
+        ///CLOVER:OFF
+        @Override
+        public Void visitIdentifier(Identifier id) {
+            throw new AssertionError("Leaves are never left");
+        }
+
+        @Override
+        public Void visitNum(NumConstant num) {
+            throw new AssertionError("Leaves are never left");
+        }
+
+        @Override
+        public Void visitString(StringConstant str) {
+            throw new AssertionError("Leaves are never left");
+        }
+
+        @Override
+        public Void visitParameter(Parameter param) {
+            throw new AssertionError("Leaves are never left");
+        }
+        ///CLOVER:ON
+
+        @Override
+        public Void visitFunApp(FunctionApplication funApp) {
+            String argsNodeId = pending.pop();
+            String thisNodeId = pending.pop();
+            edges.add(edge(thisNodeId, argsNodeId, "args"));
+            done.push(thisNodeId);
+            return null;
+        }
+
+        @Override
+        public Void visitBinOp(BinOp binOp) {
+            String thisNodeId = pending.pop();
+            String rightNode = done.pop();
+            String leftNode = done.pop();
+            nodes.add(circleNode(
+                thisNodeId,
+                binOp.getOperator().getSymbol()
+            ));
+            edges.add(edge(thisNodeId, leftNode, "first"));
+            edges.add(edge(thisNodeId, rightNode, "second"));
+            done.push(thisNodeId);
+            return null;
+        }
+
+        @Override
+        public Void visitUnOp(UnOp unOp) {
+            String thisNodeId = pending.pop();
+            String opNode = done.pop();
+            nodes.add(circleNode(
+                thisNodeId,
+                unOp.getOperator().getSymbol()
+            ));
+            edges.add(edge(thisNodeId, opNode, ""));
+            done.push(thisNodeId);
+            return null;
+        }
+
+        @Override
+        public Void visitIsNullCheck(IsNullCheck inc) {
+            String thisNodeId = pending.pop();
+            String opNode = done.pop();
+            nodes.add(ellipseNode(
+                thisNodeId,
+                inc.isNot() ? "IS NOT NULL" : "IS NULL"
+            ));
+            edges.add(edge(thisNodeId, opNode, ""));
+            done.push(thisNodeId);
+            return null;
+        }
     }
 
     private String renderExpressionList(List<Expression> expressions) {
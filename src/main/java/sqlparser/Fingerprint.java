@@ -0,0 +1,20 @@
+package sqlparser;
+
+import lombok.Value;
+
+/**
+ * Normalized text of a statement, in which all literals are replaced by
+ * <code>?</code> placeholders, together with a 64-bit hash of the text.
+ *
+ * Statements that differ only in their literals, in the case of their
+ * keywords, or in whitespace have the same fingerprint, for example
+ * <code>select a from t where id &gt; 42</code> and
+ * <code>SELECT a FROM t WHERE id &gt; 7</code> both have the fingerprint
+ * <code>SELECT a FROM t WHERE id &gt; ?</code>.
+ */
+@Value public final class Fingerprint {
+    /** Tokens of the statement, without the semicolon. */
+    String text;
+    /** FNV-1a hash of the UTF-16 code units of the text. */
+    long hash;
+}
@@ -0,0 +1,165 @@
+package sqlparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static sqlparser.Token.Type;
+
+/**
+ * Builds the fingerprints of statements directly from the tokens, while
+ * the tokenizer scans them, without materializing the tokens.
+ *
+ * The tokens of a statement are separated by single spaces, except
+ * before commas, periods and closing parentheses, after periods and
+ * opening parentheses, and between a function name and its arguments.
+ * Numbers and strings are replaced by <code>?</code>, and so are signed
+ * numbers where an operand is expected, that is, after an operator, an
+ * opening parenthesis, a comma or a keyword. Keywords appear in upper
+ * case. Statements end at semicolons and at the end of the input, empty
+ * statements have no fingerprints.
+ */
+final class Fingerprinter {
+
+    /** Initial value of the FNV-1a hash. */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /** Multiplier of the FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Fingerprints of the completed statements. */
+    private final ArrayList<Fingerprint> fingerprints = new ArrayList<>();
+
+    /** Fingerprint of the current statement, built so far. */
+    private final StringBuilder text = new StringBuilder();
+
+    /** Hash of the <code>text</code>. */
+    private long hash = FNV_OFFSET_BASIS;
+
+    /** Type of the previous token of the statement. */
+    private Type previous = null;
+
+    /**
+     * Sign in front of an operand that has not been appended yet, because
+     * it belongs to the literal if a number follows, or <code>null</code>.
+     */
+    private Operator sign = null;
+
+    /**
+     * Appends a token to the current statement.
+     *
+     * @param type type of the token.
+     * @param input the input of the tokenizer.
+     * @param start offset of the first character of the token.
+     * @param end offset after the last character of the token.
+     * @param code ordinal of the keyword or the operator of a
+     *             <code>KEYWORD</code> or an <code>OPERATOR</code> token,
+     *             ignored otherwise.
+     */
+    void add(Type type, CharSequence input, int start, int end, long code) {
+        if (sign != null && type != Type.NUMBER) {
+            appendSeparator(Type.OPERATOR);
+            String symbol = sign.getSymbol();
+            append(symbol, 0, symbol.length());
+            previous = Type.OPERATOR;
+        }
+        sign = null;
+        if (type == Type.SEMICOLON || type == Type.EOF) {
+            finishStatement();
+            return;
+        }
+        if (type == Type.OPERATOR && isOperandExpected()) {
+            Operator op = Operator.byOrdinal((int) code);
+            if (op == Operator.PLUS || op == Operator.MINUS) {
+                sign = op;
+                return;
+            }
+        }
+        appendSeparator(type);
+        switch (type) {
+            case NUMBER:
+            case STRING:
+                append('?');
+                break;
+            case KEYWORD:
+                String keyword = Keyword.byOrdinal((int) code).name();
+                append(keyword, 0, keyword.length());
+                break;
+            case IDENTIFIER:
+                if (input instanceof Utf8Bytes) {
+                    // Decode multi-byte characters
+                    CharSequence id = input.subSequence(start, end);
+                    append(id, 0, id.length());
+                    break;
+                }
+                // fall through
+            default:
+                append(input, start, end);
+                break;
+        }
+        previous = type;
+    }
+
+    /** @return fingerprints of all completed statements. */
+    List<Fingerprint> fingerprints() {
+        return fingerprints;
+    }
+
+    /** Completes the current statement, unless it is empty. */
+    private void finishStatement() {
+        if (previous != null) {
+            fingerprints.add(new Fingerprint(text.toString(), hash));
+            text.setLength(0);
+            hash = FNV_OFFSET_BASIS;
+            previous = null;
+        }
+    }
+
+    /** Checks whether the next token is in front of an operand. */
+    private boolean isOperandExpected() {
+        return
+            previous == Type.OPERATOR ||
+            previous == Type.LPAREN ||
+            previous == Type.COMMA ||
+            previous == Type.KEYWORD;
+    }
+
+    /** Appends a space if the previous token is separated from the next. */
+    private void appendSeparator(Type next) {
+        if (previous != null && isSeparated(previous, next)) {
+            append(' ');
+        }
+    }
+
+    /** Checks whether two adjacent tokens are separated by a space. */
+    private static boolean isSeparated(Type left, Type right) {
+        switch (right) {
+            case COMMA:
+            case PERIOD:
+            case RPAREN:
+                return false;
+            case LPAREN:
+                return left != Type.IDENTIFIER && left != Type.LPAREN;
+            default:
+                return left != Type.PERIOD && left != Type.LPAREN;
+        }
+    }
+
+    /**
+     * Appends a range of characters to the text, and updates the hash.
+     *
+     * @param chars the characters.
+     * @param start offset of the first appended character.
+     * @param end offset after the last appended character.
+     */
+    private void append(CharSequence chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            append(chars.charAt(i));
+        }
+    }
+
+    /** Appends a character to the text, and updates the hash. */
+    private void append(char c) {
+        text.append(c);
+        hash = (hash ^ c) * FNV_PRIME;
+    }
+}
@@ -0,0 +1,821 @@
+package sqlparser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static sqlparser.Ast.*;
+
+/**
+ * Compact representation of many statements, with all nodes encoded in a
+ * single <code>int</code> array.
+ *
+ * Every node occupies a contiguous record of the array: a header with
+ * its <code>Kind</code> in the lowest byte and the number of children in
+ * the upper bits, a payload, and the offsets of the children. The
+ * meaning of the payload and of the children depends on the kind, see
+ * <code>Kind</code>. Absent optional children have the offset
+ * <code>NONE</code>. Identifiers, function names and
+ * string literals are stored once in a table of symbols, and numbers in
+ * a <code>long</code> array, the payloads are indices into those tables.
+ * Children are always stored before their parents.
+ *
+ * Instead of hundreds of objects per statement, the statements are kept
+ * in three arrays, which costs a fraction of the heap, and hardly any
+ * work for the garbage collector. The nodes are read through a
+ * <code>Node</code>, a flyweight cursor that is moved from offset to
+ * offset without allocating anything. Statements are converted from and
+ * to <code>Ast</code> classes on demand.
+ *
+ * Instances are immutable and can be read by multiple threads, each with
+ * its own <code>Node</code>.
+ */
+public final class FlatAst {
+
+    /** Offset of absent optional children. */
+    public static final int NONE = -1;
+
+    /** Kinds of nodes, with the layouts of their records. */
+    public static enum Kind {
+        /** Payload: database, no children. */
+        USE,
+        /**
+         * Payload: number <code>k</code> of selected expressions.
+         * Children: the <code>k</code> expressions, then the
+         * <code>TABLE</code>, the <code>WHERE</code> condition and the
+         * <code>ORDER BY</code> expression, each of them optional.
+         */
+        SELECT,
+        /**
+         * Payload: number of rows. Children: the <code>TABLE</code>, the
+         * <code>COLUMNS</code>, and then the values row by row.
+         */
+        INSERT,
+        /** No payload. Children: the <code>TABLE</code>, the condition. */
+        DELETE,
+        /** Payload: table name. Children: the optional database. */
+        TABLE,
+        /** No payload. Children: the column names as identifiers. */
+        COLUMNS,
+        /** Payload: the identifier, no children. */
+        IDENTIFIER,
+        /** Payload: index of the value, no children. */
+        NUMBER,
+        /** Payload: the lexeme with quotes, no children. */
+        STRING,
+        /** Payload: index of the parameter, no children. */
+        PARAMETER,
+        /** Payload: function name. Children: the arguments. */
+        FUNCTION,
+        /** Payload: operator. Children: the left and right operands. */
+        BINARY,
+        /** Payload: operator. Children: the operand. */
+        UNARY,
+        /**
+         * Payload: <code>1</code> for <code>IS NOT NULL</code>, otherwise
+         * <code>0</code>. Children: the operand.
+         */
+        IS_NULL;
+
+        /** All kinds, indexed by ordinal. */
+        private static final Kind[] BY_ORDINAL = values();
+    }
+
+    /** Offset of the header with kind and number of children. */
+    private static final int HEADER = 0;
+
+    /** Offset of the payload in a record. */
+    private static final int PAYLOAD = 1;
+
+    /** Offset of the first child in a record. */
+    private static final int CHILDREN = 2;
+
+    /** Maximal number of children that fits into a header. */
+    private static final int MAX_CHILDREN = (1 << 24) - 1;
+
+    /** The records of all nodes. */
+    private final int[] nodes;
+
+    /** Identifiers, function names and string literals. */
+    private final String[] symbols;
+
+    /** Values of the numbers. */
+    private final long[] numbers;
+
+    /** Offsets of the statements. */
+    private final int[] statements;
+
+    private FlatAst(
+        int[] nodes,
+        String[] symbols,
+        long[] numbers,
+        int[] statements
+    ) {
+        this.nodes = nodes;
+        this.symbols = symbols;
+        this.numbers = numbers;
+        this.statements = statements;
+    }
+
+    /**
+     * Encodes statements.
+     *
+     * @param statements the statements.
+     * @return the statements in a single arena.
+     */
+    public static FlatAst of(List<? extends Statement> statements) {
+        Builder builder = new Builder();
+        for (Statement s: statements) {
+            builder.add(s);
+        }
+        return builder.build();
+    }
+
+    /** @return number of statements. */
+    public int numStatements() {
+        return statements.length;
+    }
+
+    /**
+     * @param i index of a statement.
+     * @return offset of the <code>i</code>-th statement.
+     */
+    public int statement(int i) {
+        return statements[i];
+    }
+
+    /** @return number of <code>int</code>s occupied by the nodes. */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Creates a cursor, to be positioned with <code>moveTo</code>.
+     *
+     * @return fresh cursor at the first statement, if there is one.
+     */
+    public Node node() {
+        Node node = new Node();
+        if (statements.length > 0) {
+            node.moveTo(statements[0]);
+        }
+        return node;
+    }
+
+    /**
+     * Decodes a single statement.
+     *
+     * @param i index of a statement.
+     * @return the <code>i</code>-th statement as <code>Ast</code>.
+     */
+    public Statement toStatement(int i) {
+        Node n = new Node().moveTo(statements[i]);
+        switch (n.kind()) {
+            case USE:
+                return new Use(n.symbol());
+            case SELECT:
+                int k = n.payload();
+                List<Expression> selectList = new ArrayList<>(k);
+                for (int c = 0; c < k; c++) {
+                    selectList.add(toExpression(n.child(c)));
+                }
+                return new Select(
+                    selectList,
+                    n.child(k) == NONE
+                    ? Optional.empty()
+                    : Optional.of(toTableId(n.child(k))),
+                    optionalExpression(n.child(k + 1)),
+                    optionalExpression(n.child(k + 2))
+                );
+            case INSERT:
+                int numRows = n.payload();
+                int width =
+                    numRows == 0 ? 0 : (n.numChildren() - 2) / numRows;
+                Node columnNodes = new Node().moveTo(n.child(1));
+                List<String> columns = new ArrayList<>();
+                for (int c = 0; c < columnNodes.numChildren(); c++) {
+                    columns.add(symbols[payload(columnNodes.child(c))]);
+                }
+                RowBlock rows = new RowBlock();
+                for (int r = 0; r < numRows; r++) {
+                    for (int c = 0; c < width; c++) {
+                        rows.add(toExpression(n.child(2 + r * width + c)));
+                    }
+                    rows.endRow();
+                }
+                return new Insert(
+                    toTableId(n.child(0)),
+                    Collections.unmodifiableList(columns),
+                    rows
+                );
+            case DELETE:
+                return new Delete(
+                    toTableId(n.child(0)),
+                    toExpression(n.child(1))
+                );
+            ///CLOVER:OFF
+            default:
+                throw new AssertionError("Not a statement: " + n.kind());
+            ///CLOVER:ON
+        }
+    }
+
+    /**
+     * Decodes all statements.
+     *
+     * @return the statements as <code>Ast</code>.
+     */
+    public List<Statement> toStatements() {
+        List<Statement> result = new ArrayList<>(statements.length);
+        for (int i = 0; i < statements.length; i++) {
+            result.add(toStatement(i));
+        }
+        return result;
+    }
+
+    /** Decodes a table. */
+    private TableId toTableId(int offset) {
+        int database = nodes[offset + CHILDREN];
+        return new TableId(
+            database == NONE
+            ? Optional.empty()
+            : Optional.of(symbols[payload(database)]),
+            symbols[payload(offset)]
+        );
+    }
+
+    /** Decodes an optional expression. */
+    private Optional<Expression> optionalExpression(int offset) {
+        return
+            offset == NONE ?
+            Optional.empty() :
+            Optional.of(toExpression(offset));
+    }
+
+    /**
+     * Decodes an expression, without recursion: the nodes are visited in
+     * post-order, every node takes its operands from a stack of decoded
+     * expressions.
+     */
+    private Expression toExpression(int root) {
+        // Reversed post-order
+        int[] order = new int[16];
+        int numNodes = 0;
+        int[] todo = new int[16];
+        int top = 0;
+        todo[top++] = root;
+        while (top > 0) {
+            int offset = todo[--top];
+            if (numNodes == order.length) {
+                order = Arrays.copyOf(order, 2 * numNodes);
+            }
+            order[numNodes++] = offset;
+            int arity = nodes[offset + HEADER] >>> 8;
+            if (top + arity > todo.length) {
+                todo = Arrays.copyOf(todo, 2 * (top + arity));
+            }
+            for (int c = 0; c < arity; c++) {
+                todo[top++] = nodes[offset + CHILDREN + c];
+            }
+        }
+        ArrayDeque<Expression> done = new ArrayDeque<>();
+        for (int i = numNodes - 1; i >= 0; i--) {
+            int offset = order[i];
+            int payload = nodes[offset + PAYLOAD];
+            switch (Kind.BY_ORDINAL[nodes[offset + HEADER] & 0xFF]) {
+                case IDENTIFIER:
+                    done.push(new Identifier(symbols[payload]));
+                    break;
+                case NUMBER:
+                    done.push(new NumConstant(numbers[payload]));
+                    break;
+                case STRING:
+                    done.push(new StringConstant(symbols[payload]));
+                    break;
+                case PARAMETER:
+                    done.push(new Parameter(payload));
+                    break;
+                case FUNCTION:
+                    Expression[] args =
+                        new Expression[nodes[offset + HEADER] >>> 8];
+                    for (int c = args.length - 1; c >= 0; c--) {
+                        args[c] = done.pop();
+                    }
+                    done.push(new FunctionApplication(
+                        symbols[payload],
+                        Collections.unmodifiableList(Arrays.asList(args))
+                    ));
+                    break;
+                case BINARY:
+                    Expression right = done.pop();
+                    Expression left = done.pop();
+                    done.push(
+                        new BinOp(Operator.byOrdinal(payload), left, right)
+                    );
+                    break;
+                case UNARY:
+                    done.push(
+                        new UnOp(Operator.byOrdinal(payload), done.pop())
+                    );
+                    break;
+                case IS_NULL:
+                    done.push(new IsNullCheck(done.pop(), payload != 0));
+                    break;
+                ///CLOVER:OFF
+                default:
+                    throw new AssertionError(
+                        "Not an expression: " + nodes[offset + HEADER]
+                    );
+                ///CLOVER:ON
+            }
+        }
+        return done.pop();
+    }
+
+    /** Payload of the node at an offset. */
+    private int payload(int offset) {
+        return nodes[offset + PAYLOAD];
+    }
+
+    /**
+     * Flyweight view of a single node. The cursor is moved from node to
+     * node, none of its methods allocate anything.
+     */
+    public final class Node {
+
+        /** Offset of the current node. */
+        private int offset;
+
+        private Node() { /* positioned by moveTo. */ }
+
+        /**
+         * Moves the cursor to a node.
+         *
+         * @param offset offset of a node, for example of a statement or
+         *               of a child.
+         * @return this cursor.
+         */
+        public Node moveTo(int offset) {
+            if (offset < 0 || offset + CHILDREN > nodes.length) {
+                throw new IndexOutOfBoundsException(
+                    "No node at offset " + offset
+                );
+            }
+            this.offset = offset;
+            return this;
+        }
+
+        /**
+         * Moves the cursor to a child of the current node.
+         *
+         * @param i index of the child, which must not be absent.
+         * @return this cursor.
+         */
+        public Node moveToChild(int i) {
+            return moveTo(child(i));
+        }
+
+        /** @return offset of the current node. */
+        public int offset() {
+            return offset;
+        }
+
+        /** @return kind of the current node. */
+        public Kind kind() {
+            return Kind.BY_ORDINAL[nodes[offset + HEADER] & 0xFF];
+        }
+
+        /**
+         * @return the payload of the current node, see <code>Kind</code>.
+         */
+        public int payload() {
+            return nodes[offset + PAYLOAD];
+        }
+
+        /** @return number of children, including absent ones. */
+        public int numChildren() {
+            return nodes[offset + HEADER] >>> 8;
+        }
+
+        /**
+         * @param i index of a child.
+         * @return offset of the child, or <code>NONE</code> if the child
+         *         is absent.
+         */
+        public int child(int i) {
+            if (i < 0 || i >= numChildren()) {
+                throw new IndexOutOfBoundsException(
+                    "Child " + i + " of " + numChildren()
+                );
+            }
+            return nodes[offset + CHILDREN + i];
+        }
+
+        /**
+         * @return the database of <code>USE</code>, the table name of
+         *         <code>TABLE</code>, the identifier, the string literal
+         *         with quotes, or the function name.
+         */
+        public String symbol() {
+            switch (kind()) {
+                case USE:
+                case TABLE:
+                case IDENTIFIER:
+                case STRING:
+                case FUNCTION:
+                    return symbols[payload()];
+                default:
+                    throw new IllegalStateException(
+                        "No symbol in " + kind()
+                    );
+            }
+        }
+
+        /** @return value of a <code>NUMBER</code>. */
+        public long number() {
+            if (kind() != Kind.NUMBER) {
+                throw new IllegalStateException("No number in " + kind());
+            }
+            return numbers[payload()];
+        }
+
+        /** @return operator of a <code>BINARY</code> or <code>UNARY</code>. */
+        public Operator operator() {
+            if (kind() != Kind.BINARY && kind() != Kind.UNARY) {
+                throw new IllegalStateException("No operator in " + kind());
+            }
+            return Operator.byOrdinal(payload());
+        }
+    }
+
+    /**
+     * Encodes statements one by one, for example as they are passed to
+     * the sink of a streaming parser.
+     */
+    public static final class Builder {
+
+        /** Records of the nodes written so far. */
+        private int[] nodes = new int[256];
+
+        /** Number of <code>int</code>s written so far. */
+        private int size = 0;
+
+        /** Indices of the symbols. */
+        private final HashMap<String, Integer> symbolIndices =
+            new HashMap<>();
+
+        /** Symbols, by index. */
+        private final ArrayList<String> symbols = new ArrayList<>();
+
+        /** Values of the numbers. */
+        private long[] numbers = new long[16];
+
+        /** Number of values of numbers. */
+        private int numNumbers = 0;
+
+        /** Offsets of the statements. */
+        private int[] statements = new int[16];
+
+        /** Number of statements. */
+        private int numStatements = 0;
+
+        /**
+         * Expressions that are still to be ordered by
+         * <code>expression</code>.
+         */
+        private final ArrayDeque<Expression> todo = new ArrayDeque<>();
+
+        /** Expression that is being written, in reversed post-order. */
+        private final ArrayList<Expression> order = new ArrayList<>();
+
+        /** Offsets of the written expressions that have no parent yet. */
+        private int[] operands = new int[16];
+
+        /** Number of offsets in <code>operands</code>. */
+        private int numOperands = 0;
+
+        /** Writes a statement, returns its offset. */
+        private final StatementVisitor<Integer> statementWriter =
+            new StatementVisitor<Integer>() {
+
+                @Override
+                public Integer visitUse(Use use) {
+                    return node(Kind.USE, symbol(use.getDatabaseName()));
+                }
+
+                @Override
+                public Integer visitSelect(Select select) {
+                    List<Expression> list = select.getSelectList();
+                    int[] children = new int[list.size() + 3];
+                    int c = 0;
+                    for (Expression e: list) {
+                        children[c++] = expression(e);
+                    }
+                    children[c++] = select.getFromTableId().isPresent()
+                        ? tableId(select.getFromTableId().get())
+                        : NONE;
+                    children[c++] = optionalExpression(
+                        select.getWhereCondition()
+                    );
+                    children[c] = optionalExpression(select.getOrderBy());
+                    return node(Kind.SELECT, list.size(), children);
+                }
+
+                @Override
+                public Integer visitInsert(Insert insert) {
+                    RowBlock rows = insert.getRows();
+                    int width = rows.width();
+                    int[] children = new int[2 + rows.numRows() * width];
+                    children[0] = tableId(insert.getIntoTable());
+                    List<String> columns = insert.getColumnList();
+                    int[] columnNodes = new int[columns.size()];
+                    int c = 0;
+                    for (String column: columns) {
+                        columnNodes[c++] = node(
+                            Kind.IDENTIFIER,
+                            symbol(column)
+                        );
+                    }
+                    children[1] = node(Kind.COLUMNS, 0, columnNodes);
+                    for (int r = 0; r < rows.numRows(); r++) {
+                        for (c = 0; c < width; c++) {
+                            children[2 + r * width + c] =
+                                expression(rows.get(r, c));
+                        }
+                    }
+                    return node(Kind.INSERT, rows.numRows(), children);
+                }
+
+                @Override
+                public Integer visitDelete(Delete delete) {
+                    return node(
+                        Kind.DELETE,
+                        0,
+                        tableId(delete.getFromTable()),
+                        expression(delete.getWhereCondition())
+                    );
+                }
+            };
+
+        /** Pushes the operands of an expression onto <code>todo</code>. */
+        private final ExpressionVisitor<Void> operandPusher =
+            new ExpressionVisitor<Void>() {
+
+                @Override
+                public Void visitIdentifier(Identifier id) {
+                    return null;
+                }
+
+                @Override
+                public Void visitNum(NumConstant num) {
+                    return null;
+                }
+
+                @Override
+                public Void visitString(StringConstant str) {
+                    return null;
+                }
+
+                @Override
+                public Void visitParameter(Parameter param) {
+                    return null;
+                }
+
+                @Override
+                public Void visitFunApp(FunctionApplication funApp) {
+                    List<Expression> args = funApp.getArguments();
+                    for (int i = 0; i < args.size(); i++) {
+                        todo.push(args.get(i));
+                    }
+                    return null;
+                }
+
+                @Override
+                public Void visitBinOp(BinOp binOp) {
+                    todo.push(binOp.getLeftOperand());
+                    todo.push(binOp.getRightOperand());
+                    return null;
+                }
+
+                @Override
+                public Void visitUnOp(UnOp unOp) {
+                    todo.push(unOp.getOperand());
+                    return null;
+                }
+
+                @Override
+                public Void visitIsNullCheck(IsNullCheck inc) {
+                    todo.push(inc.getOperand());
+                    return null;
+                }
+            };
+
+        /**
+         * Writes an expression whose operands have been written already,
+         * and replaces their offsets in <code>operands</code> by its own.
+         */
+        private final ExpressionVisitor<Void> expressionWriter =
+            new ExpressionVisitor<Void>() {
+
+                @Override
+                public Void visitIdentifier(Identifier id) {
+                    write(Kind.IDENTIFIER, symbol(id.getValue()), 0);
+                    return null;
+                }
+
+                @Override
+                public Void visitNum(NumConstant num) {
+                    write(Kind.NUMBER, number(num.getValue()), 0);
+                    return null;
+                }
+
+                @Override
+                public Void visitString(StringConstant str) {
+                    write(Kind.STRING, symbol(str.getValue()), 0);
+                    return null;
+                }
+
+                @Override
+                public Void visitParameter(Parameter param) {
+                    write(Kind.PARAMETER, param.getIndex(), 0);
+                    return null;
+                }
+
+                @Override
+                public Void visitFunApp(FunctionApplication funApp) {
+                    write(
+                        Kind.FUNCTION,
+                        symbol(funApp.getFunctionId()),
+                        funApp.getArguments().size()
+                    );
+                    return null;
+                }
+
+                @Override
+                public Void visitBinOp(BinOp binOp) {
+                    write(Kind.BINARY, binOp.getOperator().ordinal(), 2);
+                    return null;
+                }
+
+                @Override
+                public Void visitUnOp(UnOp unOp) {
+                    write(Kind.UNARY, unOp.getOperator().ordinal(), 1);
+                    return null;
+                }
+
+                @Override
+                public Void visitIsNullCheck(IsNullCheck inc) {
+                    write(Kind.IS_NULL, inc.isNot() ? 1 : 0, 1);
+                    return null;
+                }
+            };
+
+        /**
+         * Encodes a statement.
+         *
+         * @param s the statement.
+         * @return index of the statement.
+         * @throws IllegalArgumentException if an <code>INSERT</code> has
+         *         more than <code>2^24 - 3</code> values, or a function
+         *         more than <code>2^24 - 1</code> arguments. The
+         *         statement is not added then.
+         */
+        public int add(Statement s) {
+            int offset = s.accept(statementWriter);
+            if (numStatements == statements.length) {
+                statements = Arrays.copyOf(statements, 2 * numStatements);
+            }
+            statements[numStatements] = offset;
+            return numStatements++;
+        }
+
+        /**
+         * Completes the encoding. The builder can be used further, the
+         * result does not change.
+         *
+         * @return all statements added so far.
+         */
+        public FlatAst build() {
+            return new FlatAst(
+                Arrays.copyOf(nodes, size),
+                symbols.toArray(new String[0]),
+                Arrays.copyOf(numbers, numNumbers),
+                Arrays.copyOf(statements, numStatements)
+            );
+        }
+
+        /** Writes the record of a node, returns its offset. */
+        private int node(Kind kind, int payload, int... children) {
+            return node(kind, payload, children, 0, children.length);
+        }
+
+        /**
+         * Same as <code>node(Kind, int, int...)</code>, with the children
+         * in a range of an array.
+         */
+        private int node(
+            Kind kind,
+            int payload,
+            int[] children,
+            int start,
+            int numChildren
+        ) {
+            if (numChildren > MAX_CHILDREN) {
+                throw new IllegalArgumentException(
+                    "Too many children for the header: " + numChildren
+                );
+            }
+            int length = CHILDREN + numChildren;
+            if (size + length > nodes.length) {
+                nodes = Arrays.copyOf(
+                    nodes,
+                    Math.max(2 * nodes.length, size + length)
+                );
+            }
+            int offset = size;
+            nodes[offset + HEADER] = numChildren << 8 | kind.ordinal();
+            nodes[offset + PAYLOAD] = payload;
+            System.arraycopy(
+                children, start,
+                nodes, offset + CHILDREN,
+                numChildren
+            );
+            size += length;
+            return offset;
+        }
+
+        /** Index of a symbol, added on first use. */
+        private int symbol(String str) {
+            Integer index = symbolIndices.get(str);
+            if (index == null) {
+                index = symbols.size();
+                symbols.add(str);
+                symbolIndices.put(str, index);
+            }
+            return index;
+        }
+
+        /** Writes a table. */
+        private int tableId(TableId table) {
+            int database = table
+                .getDatabaseName()
+                .map(d -> node(Kind.IDENTIFIER, symbol(d)))
+                .orElse(NONE);
+            return node(Kind.TABLE, symbol(table.getTableName()), database);
+        }
+
+        /** Writes an optional expression, <code>NONE</code> if absent. */
+        private int optionalExpression(Optional<Expression> e) {
+            return e.isPresent() ? expression(e.get()) : NONE;
+        }
+
+        /**
+         * Writes an expression, without recursion: the expressions are
+         * written in post-order, every node takes the offsets of its
+         * operands from a stack.
+         */
+        private int expression(Expression root) {
+            // Left over if the previous statement has been rejected
+            order.clear();
+            numOperands = 0;
+            // Reversed post-order
+            todo.push(root);
+            while (!todo.isEmpty()) {
+                Expression e = todo.pop();
+                order.add(e);
+                e.accept(operandPusher);
+            }
+            for (int i = order.size() - 1; i >= 0; i--) {
+                order.get(i).accept(expressionWriter);
+            }
+            order.clear();
+            return operands[--numOperands];
+        }
+
+        /**
+         * Writes a node whose children are the topmost offsets in
+         * <code>operands</code>, and replaces them by its own offset.
+         */
+        private void write(Kind kind, int payload, int arity) {
+            numOperands -= arity;
+            int offset = node(kind, payload, operands, numOperands, arity);
+            if (numOperands == operands.length) {
+                operands = Arrays.copyOf(operands, 2 * numOperands);
+            }
+            operands[numOperands++] = offset;
+        }
+
+        /** Index of a new number. */
+        private int number(long value) {
+            if (numNumbers == numbers.length) {
+                numbers = Arrays.copyOf(numbers, 2 * numNumbers);
+            }
+            numbers[numNumbers] = value;
+            return numNumbers++;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package sqlparser;
+
+import static sqlparser.Constants.*;
+
+/**
+ * Reserved keywords.
+ *
+ * The tokenizer recognizes the keyword of each <code>KEYWORD</code> token
+ * once, see <code>KeywordTable</code>, so that the parser can dispatch on
+ * the constants instead of comparing strings. The name of each constant
+ * is the canonical upper case form of the keyword.
+ */
+public enum Keyword {
+    AND(Operator.AND, AND_PRECEDENCE),
+    BY,
+    DELETE,
+    FROM,
+    HAVING,
+    INSERT,
+    INTO,
+    IS(null, IS_NULL_PRECEDENCE),
+    NOT(Operator.NOT, 0),
+    NULL,
+    OR(Operator.OR, OR_PRECEDENCE),
+    ORDER,
+    SELECT,
+    USE,
+    VALUES,
+    WHERE;
+
+    /** All keywords, indexed by ordinal. */
+    private static final Keyword[] BY_ORDINAL = values();
+
+    /** Operator that is written as this keyword, or <code>null</code>. */
+    private final Operator operator;
+
+    /**
+     * Precedence of the keyword if it can follow an operand, that is, if
+     * it is a binary operator or starts a null check, otherwise
+     * <code>0</code>.
+     */
+    private final int infixPrecedence;
+
+    Keyword() {
+        this(null, 0);
+    }
+
+    Keyword(Operator operator, int infixPrecedence) {
+        this.operator = operator;
+        this.infixPrecedence = infixPrecedence;
+    }
+
+    /**
+     * @param ordinal ordinal of a keyword.
+     * @return the keyword with the specified ordinal.
+     */
+    static Keyword byOrdinal(int ordinal) {
+        return BY_ORDINAL[ordinal];
+    }
+
+    /**
+     * @return operator that is written as this keyword, or
+     *         <code>null</code>.
+     */
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return precedence of the keyword after an operand, as defined in
+     *         <code>Constants</code>, or <code>0</code> if it cannot
+     *         follow an operand.
+     */
+    public int getInfixPrecedence() {
+        return infixPrecedence;
+    }
+}
@@ -0,0 +1,173 @@
+package sqlparser;
+
+import java.util.Locale;
+
+/**
+ * Perfect hash table of the reserved keywords.
+ *
+ * Recognizes keywords directly in a range of the input, folding the case
+ * while hashing and comparing, so that no intermediate strings are created
+ * for identifiers and keywords.
+ *
+ * The hash function combines the first, the second and the last character
+ * of a candidate with its length. The multiplier is chosen once on
+ * class initialization, such that there are no collisions between the
+ * keywords.
+ */
+final class KeywordTable {
+
+    /** Number of slots, power of two. */
+    private static final int SIZE = 32;
+
+    /** Slots with the keywords, or <code>null</code>. */
+    private static final Keyword[] TABLE = new Keyword[SIZE];
+
+    /** Multiplier of the hash function. */
+    private static final int MULTIPLIER;
+
+    /** Length of the shortest keyword. */
+    private static final int MIN_LENGTH;
+
+    /** Length of the longest keyword. */
+    private static final int MAX_LENGTH;
+
+    /**
+     * Maximal number of bytes per character, if the text consists of
+     * UTF-8 encoded bytes (see <code>Utf8Bytes</code>).
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    static {
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (Keyword k: Keyword.values()) {
+            minLength = Math.min(minLength, k.name().length());
+            maxLength = Math.max(maxLength, k.name().length());
+        }
+        MIN_LENGTH = minLength;
+        MAX_LENGTH = maxLength;
+        MULTIPLIER = findMultiplier();
+        for (Keyword k: Keyword.values()) {
+            TABLE[slot(k.name(), 0, k.name().length())] = k;
+        }
+    }
+
+    /** Hidden constructor. */
+    private KeywordTable() { /* nothing to do. */ }
+
+    /**
+     * Searches for a multiplier that maps all keywords into different
+     * slots.
+     */
+    private static int findMultiplier() {
+        for (int m = 1; m < 1 << 16; m++) {
+            boolean[] occupied = new boolean[SIZE];
+            boolean collision = false;
+            for (Keyword k: Keyword.values()) {
+                String name = k.name();
+                int s = hash(name, 0, name.length(), m) & (SIZE - 1);
+                collision |= occupied[s];
+                occupied[s] = true;
+            }
+            if (!collision) {
+                return m;
+            }
+        }
+        ///CLOVER:OFF
+        throw new AssertionError("No perfect hash for keywords found");
+        ///CLOVER:ON
+    }
+
+    /** Converts ASCII lower case letters to upper case. */
+    private static int fold(char c) {
+        return c >= 'a' && c <= 'z' ? c - ('a' - 'A') : c;
+    }
+
+    /** Hash of a range with at least two characters. */
+    private static int hash(CharSequence text, int start, int end, int m) {
+        int h = fold(text.charAt(start));
+        h = h * m + fold(text.charAt(start + 1));
+        h = h * m + fold(text.charAt(end - 1));
+        return h * m + (end - start);
+    }
+
+    /** Slot of a range with at least two characters. */
+    private static int slot(CharSequence text, int start, int end) {
+        return hash(text, start, end, MULTIPLIER) & (SIZE - 1);
+    }
+
+    /**
+     * Checks whether the specified range of the text is a keyword,
+     * ignoring case.
+     *
+     * @param text the input.
+     * @param start offset of the first character of the candidate.
+     * @param end offset after the last character of the candidate.
+     * @return the keyword, or <code>null</code> if the range is not a
+     *         keyword.
+     */
+    static Keyword lookup(CharSequence text, int start, int end) {
+        int len = end - start;
+        if (len < MIN_LENGTH || len > MAX_LENGTH * MAX_BYTES_PER_CHAR) {
+            // Upper-casing never makes strings shorter
+            return null;
+        }
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return lookupNonAscii(text, start, end);
+            }
+        }
+        return lookupAscii(text, start, end);
+    }
+
+    /**
+     * Same as <code>lookup</code>, for ranges that are known to consist of
+     * ASCII characters only. Spares the tokenizer another pass over the
+     * characters of every identifier.
+     *
+     * @param text the input.
+     * @param start offset of the first character of the candidate.
+     * @param end offset after the last character of the candidate.
+     * @return the keyword, or <code>null</code> if the range is not a
+     *         keyword.
+     */
+    static Keyword lookupAscii(CharSequence text, int start, int end) {
+        int len = end - start;
+        if (len < MIN_LENGTH || len > MAX_LENGTH) {
+            return null;
+        }
+        Keyword candidate = TABLE[slot(text, start, end)];
+        if (candidate == null) {
+            return null;
+        }
+        String name = candidate.name();
+        if (name.length() != len) {
+            return null;
+        }
+        for (int k = 0; k < len; k++) {
+            if (fold(text.charAt(start + k)) != name.charAt(k)) {
+                return null;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Slow path for candidates with non-ASCII characters, some of which
+     * (for example the dotless <code>i</code>) have ASCII upper case forms.
+     */
+    private static Keyword lookupNonAscii(
+        CharSequence text,
+        int start,
+        int end
+    ) {
+        String upper =
+            text.subSequence(start, end).toString().toUpperCase(Locale.ROOT);
+        for (Keyword k: TABLE) {
+            if (k != null && upper.equals(k.name())) {
+                return k;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,79 @@
+package sqlparser;
+
+import java.util.Arrays;
+
+/**
+ * Sorted table with the offsets of the first characters of all lines
+ * of an input.
+ *
+ * Recorded once per input by the tokenizer, and used to compute line and
+ * column numbers of tokens lazily, only when a diagnostic message is built.
+ * This saves a <code>Position</code> (or at least two <code>int</code>s)
+ * per token.
+ */
+final class LineIndex {
+
+    /** Offsets of the first characters of the lines, first line at 0. */
+    private int[] lineStarts = new int[16];
+
+    /** Number of recorded lines. */
+    private int numLines = 1;
+
+    /**
+     * Records the start of the next line.
+     *
+     * @param offset offset of the character after the line break, must
+     *               be larger than all previously recorded offsets.
+     */
+    void addLineStart(int offset) {
+        if (numLines == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, 2 * numLines);
+        }
+        lineStarts[numLines] = offset;
+        numLines++;
+    }
+
+    /**
+     * Records all line starts of another index, except for the start of
+     * its first line.
+     *
+     * @param other index of a later part of the same input.
+     */
+    void addLineStarts(LineIndex other) {
+        for (int i = 1; i < other.numLines; i++) {
+            addLineStart(other.lineStarts[i]);
+        }
+    }
+
+    /**
+     * Finds the zero-based index of the line that contains the offset.
+     */
+    private int lineIndex(int offset) {
+        int lo = 0;
+        int hi = numLines - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Computes the coordinates of the character at the specified offset.
+     *
+     * @param source description of the input, usually file path.
+     * @param text the input, used to count the characters of the line if
+     *             the offsets are byte offsets.
+     * @param offset offset of a character in the input.
+     * @return position with one-based line and column numbers.
+     */
+    Position position(String source, CharSequence text, int offset) {
+        int idx = lineIndex(offset);
+        int column = Utf8Bytes.charCount(text, lineStarts[idx], offset) + 1;
+        return Position.of(source, idx + 1, column);
+    }
+}
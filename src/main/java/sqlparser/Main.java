@@ -1,11 +1,22 @@
 package sqlparser;
 
+import io.vavr.control.Either;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static sqlparser.Ast.Statement;
 
@@ -18,19 +29,43 @@ public final class Main {
     /** Hidden constructor. */
     private Main() { /* nothing to do. */ }
 
+    /** Input mode that reads the entire file into memory at once. */
+    private static final String READ_MODE = "-read";
+
+    /** Input mode that reads the file through a bounded buffer. */
+    private static final String STREAM_MODE = "-stream";
+
+    /** Input mode that maps the file into memory. */
+    private static final String MMAP_MODE = "-mmap";
+
+    /** Input mode that tokenizes the bytes without decoding them. */
+    private static final String BYTES_MODE = "-bytes";
+
+    /** Input mode that reads the file, and processes it on all cores. */
+    private static final String PARALLEL_MODE = "-parallel";
+
     /**
-     * Expects single argument (file path),
+     * Input mode that reads the entire file, and keeps the parsed
+     * statements in a sidecar file for the next run.
+     */
+    private static final String CACHED_MODE = "-cached";
+
+    /** Suffix of the sidecar files of the cached mode. */
+    private static final String CACHE_SUFFIX = ".ast";
+
+    /**
+     * Expects output format, optional input mode and a file path,
      * parses the content of the file,
      * prints the AST or an error message.
      *
-     * @param args command line arguments (single
-     *             file path expected).
+     * @param args command line arguments (output format, optional
+     *             input mode, file path).
      */
     public static void main(final String[] args) {
         boolean useDotRenderer = false;
-        if (args.length != 2) {
+        if (args.length != 2 && args.length != 3) {
             System.out.println("Wrong number of arguments: " + args.length);
-            System.out.println("Expected exactly 2.");
+            System.out.println("Expected 2 or 3.");
             printHelp();
             System.exit(1);
         } else if (args[0].equals("-dot")) {
@@ -46,6 +81,21 @@ public final class Main {
             System.exit(2);
         }
 
+        final String inputMode = args.length == 3 ? args[1] : READ_MODE;
+        if (
+            !inputMode.equals(READ_MODE) &&
+            !inputMode.equals(STREAM_MODE) &&
+            !inputMode.equals(MMAP_MODE) &&
+            !inputMode.equals(BYTES_MODE) &&
+            !inputMode.equals(PARALLEL_MODE) &&
+            !inputMode.equals(CACHED_MODE)
+        ) {
+            System.out.println("Unknown input mode: " + inputMode);
+            printHelp();
+            System.exit(2);
+        }
+        final String inputPath = args[args.length - 1];
+
         final Function<List<Statement>, String> renderer =
             useDotRenderer ?
             DotRenderer::render :
@@ -55,30 +105,26 @@ public final class Main {
                 .map(String::valueOf)
                 .collect(Collectors.joining("\n"));
 
-        Path path = Paths.get(args[1]);
+        Path path = Paths.get(inputPath);
         if (Files.exists(path) && Files.isRegularFile(path)) {
             try {
-                String input = new String(Files.readAllBytes(path), UTF_8);
-                int exitCode =
-                    SqlTokenizer
-                    .tokenize(args[1], input)
-                    .flatMap(SqlParser::parse)
-                    .fold(
-                        (List<ErrorMessage> errors) -> {
-                            for (ErrorMessage e: errors) {
-                                System.out.println(e.formatMavenStyle());
+                int exitCode;
+                if (!useDotRenderer && isStreaming(inputMode)) {
+                    exitCode = printStreamed(inputMode, inputPath, path);
+                } else {
+                    exitCode =
+                        parse(inputMode, inputPath, path)
+                        .fold(
+                            (List<ErrorMessage> errors) ->
+                                printErrors(errors, System.out),
+                            (List<Statement> statements) -> {
+                                System.out.println(
+                                    renderer.apply(statements)
+                                );
+                                return 0;
                             }
-                            System.out.printf(
-                                "There were %d errors\n",
-                                errors.size()
-                            );
-                            return 101;
-                        },
-                        (List<Statement> statements) -> {
-                            System.out.println(renderer.apply(statements));
-                            return 0;
-                        }
-                    );
+                        );
+                }
                 System.exit(exitCode);
             } catch (IOException e) {
                 System.out.println("Error occurred while reading input file: ");
@@ -86,11 +132,292 @@ public final class Main {
                 System.exit(4);
             }
         } else {
-            System.out.println("Input file does not exist: `" + args[1] + "`");
+            System.out.println(
+                "Input file does not exist: `" + inputPath + "`"
+            );
             System.exit(3);
         }
     }
-    
+
+    /**
+     * Prints the error messages in the format of Maven.
+     *
+     * @return exit code for failed parses.
+     */
+    private static int printErrors(
+        List<ErrorMessage> errors,
+        PrintStream out
+    ) {
+        for (ErrorMessage e: errors) {
+            out.println(e.formatMavenStyle());
+        }
+        out.printf("There were %d errors\n", errors.size());
+        return 101;
+    }
+
+    /**
+     * Parses the file in a streaming input mode, and prints the text
+     * representation of every statement as soon as it has been parsed,
+     * so that no statements are kept in memory. Statements that precede
+     * the errors are printed too, before the error messages.
+     *
+     * @param inputMode a streaming input mode.
+     * @param inputDescription file path for the error messages.
+     * @param path path of the input file.
+     * @return exit code.
+     * @throws IOException if reading from the file fails.
+     */
+    private static int printStreamed(
+        String inputMode,
+        String inputDescription,
+        Path path
+    ) throws IOException {
+        PrintStream out = new PrintStream(
+            new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out),
+                1 << 16
+            ),
+            false
+        );
+        long[] numStatements = { 0 };
+        List<ErrorMessage> errors = parseStreamed(
+            inputMode,
+            inputDescription,
+            path,
+            (Statement s) -> {
+                out.println(s);
+                numStatements[0]++;
+            }
+        );
+        int exitCode = 0;
+        if (!errors.isEmpty()) {
+            exitCode = printErrors(errors, out);
+        } else if (numStatements[0] == 0) {
+            // Same output as for an empty list of statements
+            out.println();
+        }
+        out.flush();
+        return exitCode;
+    }
+
+    /**
+     * Parses the file in a streaming input mode, passing every statement
+     * to the sink as soon as it has been parsed.
+     *
+     * @param inputMode a streaming input mode.
+     * @param inputDescription file path for the error messages.
+     * @param path path of the input file.
+     * @param sink receives the successfully parsed statements.
+     * @return lexical or syntax errors, empty in case of success.
+     * @throws IOException if reading from the file fails.
+     */
+    private static List<ErrorMessage> parseStreamed(
+        String inputMode,
+        String inputDescription,
+        Path path,
+        Consumer<Statement> sink
+    ) throws IOException {
+        if (inputMode.equals(MMAP_MODE)) {
+            return SqlParser.parse(
+                SqlTokenizer.tokenSource(
+                    inputDescription,
+                    MappedCharSequence.map(path)
+                ),
+                sink
+            );
+        }
+        try (FileChannel channel = FileChannel.open(path)) {
+            return SqlParser.parse(inputDescription, channel, sink);
+        }
+    }
+
+    /**
+     * Checks whether the input mode passes the statements on as soon as
+     * they have been parsed, without a buffer of all tokens.
+     */
+    private static boolean isStreaming(String inputMode) {
+        return inputMode.equals(STREAM_MODE) || inputMode.equals(MMAP_MODE);
+    }
+
+    /**
+     * Parses the content of the file using the specified input mode.
+     *
+     * In stream and mmap mode, the tokenizer and the parser run in a
+     * single pass, without materializing the tokens.
+     *
+     * @param inputMode one of the supported input modes.
+     * @param inputDescription file path for the error messages.
+     * @param path path of the input file.
+     * @return statements or error messages.
+     * @throws IOException if reading from the file fails.
+     */
+    private static Either<List<ErrorMessage>, List<Statement>> parse(
+        String inputMode,
+        String inputDescription,
+        Path path
+    ) throws IOException {
+        if (isStreaming(inputMode)) {
+            ArrayList<Statement> statements = new ArrayList<>();
+            List<ErrorMessage> errors = parseStreamed(
+                inputMode,
+                inputDescription,
+                path,
+                statements::add
+            );
+            return
+                errors.isEmpty() ?
+                Either.right(statements) :
+                Either.left(errors);
+        } else if (inputMode.equals(BYTES_MODE)) {
+            return SqlTokenizer.tokenize(
+                inputDescription,
+                ByteBuffer.wrap(Files.readAllBytes(path))
+            ).flatMap(SqlParser::parse);
+        } else if (inputMode.equals(PARALLEL_MODE)) {
+            String input = new String(Files.readAllBytes(path), UTF_8);
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            return
+                SqlTokenizer
+                .tokenize(inputDescription, input, pool)
+                .flatMap(t -> SqlParser.parse(t, new SymbolTable(), pool));
+        } else if (inputMode.equals(CACHED_MODE)) {
+            return parseCached(inputDescription, path);
+        } else {
+            String input = new String(Files.readAllBytes(path), UTF_8);
+            return
+                SqlTokenizer
+                .tokenize(inputDescription, input)
+                .flatMap(SqlParser::parse);
+        }
+    }
+
+    /**
+     * Decodes the statements from the sidecar file of the input file, if
+     * the sidecar was written for the current content of the file.
+     * Otherwise, parses the content, and replaces the sidecar if there
+     * are no errors.
+     *
+     * The sidecar starts with the length and a 64-bit hash of the content,
+     * followed by the statements encoded by <code>AstCodec</code>.
+     * Sidecars of different content or of other versions of the encoding
+     * are ignored. The cache is an optimization only: a sidecar that
+     * cannot be written is skipped silently.
+     *
+     * @param inputDescription file path for the error messages.
+     * @param path path of the input file.
+     * @return statements or error messages.
+     * @throws IOException if reading from the input file fails.
+     */
+    private static Either<List<ErrorMessage>, List<Statement>> parseCached(
+        String inputDescription,
+        Path path
+    ) throws IOException {
+        byte[] content = Files.readAllBytes(path);
+        long hash = contentHash(content);
+        Path sidecar =
+            path.resolveSibling(path.getFileName() + CACHE_SUFFIX);
+        if (Files.isRegularFile(sidecar)) {
+            ByteBuffer cached = ByteBuffer.wrap(Files.readAllBytes(sidecar));
+            if (
+                cached.remaining() >= 2 * Long.BYTES &&
+                cached.getLong() == content.length &&
+                cached.getLong() == hash
+            ) {
+                try {
+                    return Either.right(AstCodec.decode(cached));
+                } catch (IllegalArgumentException e) {
+                    // Other version or damaged, parse again
+                }
+            }
+        }
+        Either<List<ErrorMessage>, List<Statement>> result =
+            SqlTokenizer
+            .tokenize(inputDescription, new String(content, UTF_8))
+            .flatMap(SqlParser::parse);
+        if (result.isRight()) {
+            writeSidecar(sidecar, content.length, hash, result.get());
+        }
+        return result;
+    }
+
+    /**
+     * Replaces a sidecar file atomically, through a temporary file in the
+     * same directory, so that concurrent runs never read partial sidecars.
+     */
+    private static void writeSidecar(
+        Path sidecar,
+        long length,
+        long hash,
+        List<Statement> statements
+    ) {
+        Path tmp = null;
+        try {
+            Path dir = sidecar.toAbsolutePath().getParent();
+            tmp = Files.createTempFile(
+                dir,
+                sidecar.getFileName().toString(),
+                ".tmp"
+            );
+            try (
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp))
+                )
+            ) {
+                out.writeLong(length);
+                out.writeLong(hash);
+                AstCodec.write(statements, out);
+            }
+            Files.move(
+                tmp,
+                sidecar,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (IOException e) {
+            try {
+                if (tmp != null) {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException ignored) {
+                // Nothing else to do
+            }
+        }
+    }
+
+    /**
+     * Hashes the content of an input file, eight bytes at a time, with
+     * the mixing steps of MurmurHash3. Much faster than a cryptographic
+     * digest, which would cost as much as decoding the sidecar, and good
+     * enough to tell apart different versions of a file.
+     *
+     * @param bytes the content.
+     * @return 64-bit hash of the content.
+     */
+    private static long contentHash(byte[] bytes) {
+        ByteBuffer words = ByteBuffer.wrap(bytes).order(LITTLE_ENDIAN);
+        long h = 0;
+        int i = 0;
+        for (; i + Long.BYTES <= bytes.length; i += Long.BYTES) {
+            h ^= mix(words.getLong(i));
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        long tail = 0;
+        for (int shift = 0; i < bytes.length; i++, shift += 8) {
+            tail |= (bytes[i] & 0xFFL) << shift;
+        }
+        h ^= mix(tail) ^ bytes.length;
+        // Finalization of MurmurHash3
+        h = (h ^ h >>> 33) * 0xff51afd7ed558ccdL;
+        h = (h ^ h >>> 33) * 0xc4ceb9fe1a85ec53L;
+        return h ^ h >>> 33;
+    }
+
+    /** Scrambles a word before it is combined into the hash. */
+    private static long mix(long k) {
+        return Long.rotateLeft(k * 0x87c37b91114253d5L, 31) *
+            0x4cf5ad432745937fL;
+    }
+
     /** Prints help. */
     private static void printHelp() {
         System.out.println(
@@ -98,13 +425,26 @@ public final class Main {
             "Usage:\n" +
             "\n" +
             "    java -cp <PATH_TO_JAR> sqlparser.Main" +
-            " <OUTPUT_FORMAT> <INPUT_FILE>\n" +
+            " <OUTPUT_FORMAT> [<INPUT_MODE>] <INPUT_FILE>\n" +
             "\n" +
             "where <OUTPUT_FORMAT> is one of:\n" +
             "\n" +
             "    -dot          (for generating DOT graph code)\n" +
             "    -text         (for raw text representation of the ASTs) \n" +
             "\n" +
+            "the optional <INPUT_MODE> is one of:\n" +
+            "\n" +
+            "    -read         (reads entire file into memory, default)\n" +
+            "    -stream       (reads file through a bounded buffer,\n" +
+            "                   prints statements as they are parsed)\n" +
+            "    -mmap         (maps file into memory, decodes lazily,\n" +
+            "                   files below 2 GB, prints statements as\n" +
+            "                   they are parsed)\n" +
+            "    -bytes        (reads entire file, scans undecoded bytes)\n" +
+            "    -parallel     (reads entire file, parses on all cores)\n" +
+            "    -cached       (reads entire file, caches ASTs in " +
+            "<INPUT_FILE>.ast)\n" +
+            "\n" +
             "and <INPUT_FILE> is the path to input file.\n"
         );
     }
@@ -0,0 +1,269 @@
+package sqlparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Read-only <code>CharSequence</code> view of UTF-8 encoded bytes, usually
+ * of a memory-mapped file.
+ *
+ * The bytes are never decoded into a <code>String</code> as a whole.
+ * If the input consists of ASCII characters only (which is checked by a
+ * single scan on construction), the character indices coincide with the
+ * byte indices, and <code>charAt</code> is a plain byte lookup. Otherwise,
+ * the constructor decodes all bytes once, without storing the characters,
+ * only to count them, because <code>length</code> has to be known up
+ * front. After that, the characters are decoded lazily by a cursor that
+ * moves through the bytes. Sequential access (as performed by the
+ * tokenizer) is cheap, random access is supported by sparse checkpoints
+ * that map every <code>STRIDE</code>-th character index to a byte offset.
+ *
+ * Offsets are <code>int</code>s, and a single mapping is limited to
+ * <code>Integer.MAX_VALUE</code> bytes, so <code>map</code> rejects files
+ * of 2 GB and more. Larger dumps have to be read in the stream mode,
+ * whose buffer is bounded.
+ *
+ * Malformed byte sequences are decoded as <code>U+FFFD</code>, one
+ * replacement character per invalid byte.
+ *
+ * Instances are not thread-safe, because the decoding cursor is shared.
+ */
+final class MappedCharSequence implements CharSequence {
+
+    /** Distance between two checkpoints, in characters. */
+    private static final int STRIDE = 4096;
+
+    /** Code point that replaces malformed byte sequences. */
+    private static final int REPLACEMENT = 0xFFFD;
+
+    /** The encoded bytes, only absolute <code>get</code>s are used. */
+    private final ByteBuffer bytes;
+
+    /** Number of bytes. */
+    private final int numBytes;
+
+    /** Number of UTF-16 characters. */
+    private final int numChars;
+
+    /** Whether all bytes are ASCII, so that chars and bytes coincide. */
+    private final boolean ascii;
+
+    /** Character index of the code point under the cursor. */
+    private int cursorChar = 0;
+
+    /** Byte offset of the code point under the cursor. */
+    private int cursorByte = 0;
+
+    /** Decoded code point under the cursor, packed by <code>decode</code>. */
+    private int cursorCode;
+
+    /**
+     * Character indices of the checkpoints. The <code>k</code>-th
+     * checkpoint is the first code point that starts at or after
+     * <code>k * STRIDE</code>.
+     */
+    private final int[] checkpointChars;
+
+    /** Byte offsets of the checkpoints. */
+    private final int[] checkpointBytes;
+
+    /** Number of checkpoints recorded so far. */
+    private int numCheckpoints = 1;
+
+    /**
+     * Creates a view of the bytes between position and limit of the
+     * buffer.
+     *
+     * @param buffer UTF-8 encoded characters.
+     */
+    MappedCharSequence(ByteBuffer buffer) {
+        this.bytes = buffer.slice();
+        this.numBytes = bytes.remaining();
+        this.ascii = isAscii(bytes, numBytes);
+        if (ascii) {
+            this.numChars = numBytes;
+            this.checkpointChars = null;
+            this.checkpointBytes = null;
+        } else {
+            int chars = 0;
+            for (int i = 0; i < numBytes; ) {
+                int code = decode(i);
+                chars += width(code);
+                i += length(code);
+            }
+            this.numChars = chars;
+            this.checkpointChars = new int[chars / STRIDE + 2];
+            this.checkpointBytes = new int[chars / STRIDE + 2];
+            this.cursorCode = numBytes > 0 ? decode(0) : 0;
+        }
+    }
+
+    /**
+     * Maps the entire file into memory.
+     *
+     * @param path path to an UTF-8 encoded file.
+     * @return character view of the mapped file.
+     * @throws IOException if the file cannot be opened or mapped, or if it
+     *                     is too large to be indexed by <code>int</code>s.
+     */
+    static MappedCharSequence map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(
+                    "File too large to be mapped: " + path +
+                    " (" + size + " bytes)"
+                );
+            }
+            return new MappedCharSequence(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+            );
+        }
+    }
+
+    /** Checks eight bytes at a time whether any high bit is set. */
+    private static boolean isAscii(ByteBuffer buffer, int size) {
+        int i = 0;
+        for (; i + 8 <= size; i += 8) {
+            if ((buffer.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < size; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the code point that starts at the specified byte offset.
+     *
+     * @return the code point in the lower 24 bits, the number of consumed
+     *         bytes in the upper 8 bits.
+     */
+    private int decode(int offset) {
+        int b0 = bytes.get(offset) & 0xFF;
+        if (b0 < 0x80) {
+            return b0 | 1 << 24;
+        }
+        int len;
+        int cp;
+        if (b0 >= 0xC2 && b0 <= 0xDF) {
+            len = 2;
+            cp = b0 & 0x1F;
+        } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+            len = 3;
+            cp = b0 & 0x0F;
+        } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+            len = 4;
+            cp = b0 & 0x07;
+        } else {
+            return REPLACEMENT | 1 << 24;
+        }
+        if (offset + len > numBytes) {
+            return REPLACEMENT | 1 << 24;
+        }
+        for (int k = 1; k < len; k++) {
+            int b = bytes.get(offset + k) & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                return REPLACEMENT | 1 << 24;
+            }
+            cp = cp << 6 | (b & 0x3F);
+        }
+        if (
+            (len == 3 && (cp < 0x800 || (cp >= 0xD800 && cp <= 0xDFFF))) ||
+            (len == 4 && (cp < 0x10000 || cp > 0x10FFFF))
+        ) {
+            return REPLACEMENT | 1 << 24;
+        }
+        return cp | len << 24;
+    }
+
+    /** Extracts the code point from the result of <code>decode</code>. */
+    private static int codePoint(int code) {
+        return code & 0xFFFFFF;
+    }
+
+    /** Extracts the number of bytes from the result of <code>decode</code>. */
+    private static int length(int code) {
+        return code >>> 24;
+    }
+
+    /** Number of UTF-16 chars needed for the decoded code point. */
+    private static int width(int code) {
+        return codePoint(code) >= 0x10000 ? 2 : 1;
+    }
+
+    /**
+     * Moves the cursor to the code point that contains the character with
+     * the specified index.
+     */
+    private void seek(int index) {
+        if (index < cursorChar) {
+            int k = index / STRIDE;
+            if (checkpointChars[k] > index) {
+                k--;
+            }
+            cursorChar = checkpointChars[k];
+            cursorByte = checkpointBytes[k];
+            cursorCode = decode(cursorByte);
+        }
+        while (cursorChar + width(cursorCode) <= index) {
+            cursorChar += width(cursorCode);
+            cursorByte += length(cursorCode);
+            if (cursorChar >= numCheckpoints * STRIDE) {
+                checkpointChars[numCheckpoints] = cursorChar;
+                checkpointBytes[numCheckpoints] = cursorByte;
+                numCheckpoints++;
+            }
+            cursorCode = decode(cursorByte);
+        }
+    }
+
+    @Override
+    public int length() {
+        return numChars;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= numChars) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        if (ascii) {
+            return (char) bytes.get(index);
+        }
+        seek(index);
+        int cp = codePoint(cursorCode);
+        if (cp < 0x10000) {
+            return (char) cp;
+        } else if (index == cursorChar) {
+            return Character.highSurrogate(cp);
+        } else {
+            return Character.lowSurrogate(cp);
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > numChars || start > end) {
+            throw new IndexOutOfBoundsException(
+                "start: " + start + ", end: " + end
+            );
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, numChars).toString();
+    }
+}
@@ -0,0 +1,88 @@
+package sqlparser;
+
+import static sqlparser.Constants.*;
+
+/**
+ * Operators of expressions.
+ *
+ * <code>OR</code>, <code>AND</code> and <code>NOT</code> are written as
+ * keywords, all other operators consist of symbols, and are scanned as
+ * <code>OPERATOR</code> tokens. The tokenizer determines the operator of
+ * each token once, so that the parser and everyone downstream can
+ * dispatch on the constants instead of comparing strings.
+ *
+ * The string representation of an operator is the way it is written.
+ */
+public enum Operator {
+    OR("OR", OR_PRECEDENCE),
+    AND("AND", AND_PRECEDENCE),
+    NOT("NOT", NOT_PRECEDENCE),
+    EQ("=", COMPARISON_PRECEDENCE),
+    NE("!=", COMPARISON_PRECEDENCE),
+    LT("<", COMPARISON_PRECEDENCE),
+    GT(">", COMPARISON_PRECEDENCE),
+    LE("<=", COMPARISON_PRECEDENCE),
+    GE(">=", COMPARISON_PRECEDENCE),
+    NLT("!<", COMPARISON_PRECEDENCE),
+    NGT("!>", COMPARISON_PRECEDENCE),
+    PLUS("+", ARITH_LOW_PRECEDENCE),
+    MINUS("-", ARITH_LOW_PRECEDENCE),
+    TIMES("*", ARITH_HIGH_PRECEDENCE),
+    DIVIDE("/", ARITH_HIGH_PRECEDENCE),
+    MODULO("%", ARITH_HIGH_PRECEDENCE);
+
+    /** All operators, indexed by ordinal. */
+    private static final Operator[] BY_ORDINAL = values();
+
+    /** The operator as it is written. */
+    private final String symbol;
+
+    /** Precedence, as defined in <code>Constants</code>. */
+    private final int precedence;
+
+    Operator(String symbol, int precedence) {
+        this.symbol = symbol;
+        this.precedence = precedence;
+    }
+
+    /**
+     * @param ordinal ordinal of an operator.
+     * @return the operator with the specified ordinal.
+     */
+    static Operator byOrdinal(int ordinal) {
+        return BY_ORDINAL[ordinal];
+    }
+
+    /** @return the operator as it is written. */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return precedence, operators with higher precedence bind more
+     *         tightly.
+     */
+    public int getPrecedence() {
+        return precedence;
+    }
+
+    /**
+     * The multiplicative operators group to the right, all other binary
+     * operators group to the left.
+     *
+     * @return <code>true</code> if the operator groups to the right.
+     */
+    public boolean isRightAssociative() {
+        return precedence == ARITH_HIGH_PRECEDENCE;
+    }
+
+    /** @return <code>true</code> unless the operator is a keyword. */
+    public boolean isSymbolic() {
+        return this != OR && this != AND && this != NOT;
+    }
+
+    @Override
+    public String toString() {
+        return symbol;
+    }
+}
@@ -0,0 +1,237 @@
+package sqlparser;
+
+import io.vavr.control.Either;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static sqlparser.Ast.*;
+
+/**
+ * Bounded cache of parse results, keyed by the text of the statements.
+ *
+ * Meant for applications that parse the same statement texts over and
+ * over again: a repeated text costs a single hash lookup. When the cache
+ * is full, the least recently used entry is evicted. Results with errors
+ * are cached as well. The bound is on the number of results, not on their
+ * size: a long script counts as a single entry, just like a short
+ * statement.
+ *
+ * The cached results are shared by all callers, the lists are
+ * unmodifiable, and the ASTs are immutable.
+ *
+ * The cache is thread-safe. It is split into independently locked
+ * segments, selected by the hash of the text, so that hits in different
+ * segments do not wait for each other. Every segment evicts its own least
+ * recently used entry, so the eviction order of the entire cache is only
+ * approximately LRU. Caches with fewer than <code>2 * MIN_SEGMENT_SIZE</code>
+ * entries have a single segment, and are exactly LRU.
+ *
+ * Texts are parsed outside of the lock, so that misses do not block
+ * concurrent lookups. If two threads miss the same text at the same time,
+ * both parse it, but both get the result that has been cached first.
+ *
+ * Results that are parsed in the same segment share their identifiers
+ * through a symbol table. The table is replaced by an empty one after
+ * the segment has evicted as many results as it can hold, so that it
+ * does not keep the identifiers of evicted results alive forever.
+ */
+public final class ParseCache {
+
+    /** Maximal number of segments, a power of two. */
+    private static final int MAX_SEGMENTS = 16;
+
+    /** Minimal number of entries per segment. */
+    static final int MIN_SEGMENT_SIZE = 64;
+
+    /** LRU map of cached results, together with its counters. */
+    private static final class Segment {
+
+        /** Maximal number of cached results in this segment. */
+        private final int maxEntries;
+
+        /** Cached results in access order. */
+        private final LinkedHashMap<
+            String,
+            Either<List<ErrorMessage>, List<Statement>>
+        > entries;
+
+        /** Identifiers of the results parsed since the last reset. */
+        private SymbolTable symbols = new SymbolTable();
+
+        /** Evictions since the symbol table has been replaced. */
+        private int evictionsSinceReset = 0;
+
+        /** Number of lookups that have found a cached result. */
+        private long hits = 0;
+
+        /** Number of lookups that had to parse the text. */
+        private long misses = 0;
+
+        /** Number of results that have been evicted. */
+        private long evictions = 0;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.entries = new LinkedHashMap<
+                String,
+                Either<List<ErrorMessage>, List<Statement>>
+            >(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<
+                        String,
+                        Either<List<ErrorMessage>, List<Statement>>
+                    > eldest
+                ) {
+                    if (size() > Segment.this.maxEntries) {
+                        evicted();
+                        return true;
+                    } else {
+                        return false;
+                    }
+                }
+            };
+        }
+
+        /** Counts an eviction, replaces the symbol table if necessary. */
+        private void evicted() {
+            evictions++;
+            evictionsSinceReset++;
+            if (evictionsSinceReset >= maxEntries) {
+                symbols = new SymbolTable();
+                evictionsSinceReset = 0;
+            }
+        }
+    }
+
+    /** Description of the input, used in error messages. */
+    private final String inputDescription;
+
+    /** The segments, their number is a power of two. */
+    private final Segment[] segments;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param inputDescription description of the input, used only in the
+     *                         error messages.
+     * @param maxEntries maximal number of cached results, must be positive.
+     */
+    public ParseCache(String inputDescription, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(
+                "Cache size must be positive, but was: " + maxEntries
+            );
+        }
+        this.inputDescription = inputDescription;
+        int numSegments = 1;
+        while (
+            2 * numSegments <= MAX_SEGMENTS &&
+            maxEntries / (2 * numSegments) >= MIN_SEGMENT_SIZE
+        ) {
+            numSegments *= 2;
+        }
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            int remainder = i < maxEntries % numSegments ? 1 : 0;
+            segments[i] = new Segment(maxEntries / numSegments + remainder);
+        }
+    }
+
+    /**
+     * Selects the segment by the bits 16 to 19 of the spread hash (there
+     * are at most 16 segments). The multiplication mixes the lower bits of
+     * the hash code into those.
+     */
+    private Segment segmentFor(String text) {
+        int hash = text.hashCode() * 0x9E3779B9;
+        return segments[(hash >>> 16) & (segments.length - 1)];
+    }
+
+    /**
+     * Tokenizes and parses a text, unless the result is cached already.
+     *
+     * @param text one or more statements.
+     * @return a <code>Right</code> with the statements in case of success,
+     *         otherwise a <code>Left</code> with a list of errors, exactly
+     *         as returned by <code>SqlTokenizer</code> and
+     *         <code>SqlParser</code>.
+     */
+    public Either<List<ErrorMessage>, List<Statement>> parse(String text) {
+        Segment segment = segmentFor(text);
+        SymbolTable symbols;
+        synchronized (segment) {
+            Either<List<ErrorMessage>, List<Statement>> cached =
+                segment.entries.get(text);
+            if (cached != null) {
+                segment.hits++;
+                return cached;
+            }
+            segment.misses++;
+            symbols = segment.symbols;
+        }
+        Either<List<ErrorMessage>, List<Statement>> result = SqlTokenizer
+            .tokenize(inputDescription, text)
+            .flatMap(tokens -> SqlParser.parse(tokens, symbols))
+            .bimap(
+                Collections::unmodifiableList,
+                Collections::unmodifiableList
+            );
+        synchronized (segment) {
+            Either<List<ErrorMessage>, List<Statement>> raced =
+                segment.entries.putIfAbsent(text, result);
+            return raced == null ? result : raced;
+        }
+    }
+
+    /** @return number of cached results. */
+    public int size() {
+        int size = 0;
+        for (Segment segment: segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /** @return number of lookups that have found a cached result. */
+    public long hits() {
+        long hits = 0;
+        for (Segment segment: segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    /** @return number of lookups that had to parse the text. */
+    public long misses() {
+        long misses = 0;
+        for (Segment segment: segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    /** @return number of results that have been evicted. */
+    public long evictions() {
+        long evictions = 0;
+        for (Segment segment: segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /** @return number of independently locked segments. */
+    int numSegments() {
+        return segments.length;
+    }
+}
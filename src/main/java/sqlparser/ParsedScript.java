@@ -0,0 +1,631 @@
+package sqlparser;
+
+import io.vavr.control.Either;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import lombok.Value;
+
+import static sqlparser.Ast.*;
+import static sqlparser.ChunkSplitter.Chunk;
+
+/**
+ * Tokens and ASTs of a script that can be updated cheaply after an edit.
+ *
+ * The script is kept as a sequence of segments. Every segment ends right
+ * after a semicolon that is not part of a string literal, except for the
+ * last one, which ends at the end of the script. As explained in
+ * <code>ChunkSplitter</code>, such segments can be tokenized on their
+ * own, and since statements end with semicolons, they can also be parsed
+ * on their own.
+ *
+ * An edit rescans only the segments that it touches, and the following
+ * segments up to the first semicolon that separated segments before the
+ * edit and still does so afterwards (an edit can open or close a string
+ * literal). All other segments are reused together with their tokens and
+ * ASTs. The positions in their error messages are relative to the start
+ * of the segment, and are shifted only when the result is assembled.
+ *
+ * The segments are stored in the leaves of a persistent balanced tree,
+ * whose nodes cache the lengths, line breaks, and the numbers of
+ * statements and errors of their subtrees. An edit rebuilds only the
+ * paths from the root to the replaced segments, and the statements are
+ * returned as a view of the tree, so that neither the edits nor
+ * <code>result</code> copy anything per segment of the script.
+ *
+ * Instances are immutable: an edit returns a new instance and leaves the
+ * old one intact. All instances derived from the same initial parse share
+ * a symbol table.
+ */
+public final class ParsedScript {
+
+    /** Statement (or the end of the script) that is parsed on its own. */
+    @Value private static final class Segment {
+        /** The text, ending with a semicolon, except in the last segment. */
+        String text;
+        /** Number of line breaks in the text. */
+        int lineBreaks;
+        /** Number of characters after the last line break in the text. */
+        int lastLineLength;
+        /** Lexical errors, positions relative to the segment. */
+        List<ErrorMessage> lexicalErrors;
+        /** Tokens, <code>null</code> in case of lexical errors. */
+        TokenBuffer tokens;
+        /** Syntax errors or statements, positions relative to the segment. */
+        Either<List<ErrorMessage>, List<Statement>> parsed;
+    }
+
+    /**
+     * Node of a balanced tree with the segments in its leaves. Every inner
+     * node has two children, whose heights differ by at most one.
+     */
+    private static final class Node {
+        /** The segment of a leaf, <code>null</code> in inner nodes. */
+        final Segment segment;
+        /** Left child, <code>null</code> in leaves. */
+        final Node left;
+        /** Right child, <code>null</code> in leaves. */
+        final Node right;
+        /** Number of nodes on the longest path to a leaf. */
+        final int height;
+        /** Number of segments. */
+        final int numSegments;
+        /** Number of characters. */
+        final int length;
+        /** Number of line breaks. */
+        final int lineBreaks;
+        /** Number of characters after the last line break. */
+        final int lastLineLength;
+        /** Number of successfully parsed statements. */
+        final int numStatements;
+        /** Number of lexical errors. */
+        final int numLexicalErrors;
+        /** Number of syntax errors. */
+        final int numSyntaxErrors;
+
+        /** Creates a leaf. */
+        Node(Segment s) {
+            segment = s;
+            left = null;
+            right = null;
+            height = 1;
+            numSegments = 1;
+            length = s.text.length();
+            lineBreaks = s.lineBreaks;
+            lastLineLength = s.lastLineLength;
+            numStatements = s.parsed.isRight() ? s.parsed.get().size() : 0;
+            numLexicalErrors = s.lexicalErrors.size();
+            numSyntaxErrors = s.parsed.isLeft() ? s.parsed.getLeft().size() : 0;
+        }
+
+        /** Creates an inner node, without rebalancing. */
+        Node(Node left, Node right) {
+            segment = null;
+            this.left = left;
+            this.right = right;
+            height = 1 + Math.max(left.height, right.height);
+            numSegments = left.numSegments + right.numSegments;
+            length = left.length + right.length;
+            lineBreaks = left.lineBreaks + right.lineBreaks;
+            lastLineLength = right.lineBreaks == 0
+                ? left.lastLineLength + right.lastLineLength
+                : right.lastLineLength;
+            numStatements = left.numStatements + right.numStatements;
+            numLexicalErrors = left.numLexicalErrors + right.numLexicalErrors;
+            numSyntaxErrors = left.numSyntaxErrors + right.numSyntaxErrors;
+        }
+    }
+
+    /**
+     * Concatenates two balanced trees.
+     *
+     * @param a the first segments, or <code>null</code>.
+     * @param b the last segments, or <code>null</code>.
+     * @return balanced tree with the segments of both trees.
+     */
+    private static Node concat(Node a, Node b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        } else if (a.height > b.height + 1) {
+            return balance(a.left, concat(a.right, b));
+        } else if (b.height > a.height + 1) {
+            return balance(concat(a, b.left), b.right);
+        } else {
+            return new Node(a, b);
+        }
+    }
+
+    /**
+     * Joins two balanced trees whose heights differ by at most two, with a
+     * single or double rotation if they differ by exactly two.
+     */
+    private static Node balance(Node l, Node r) {
+        if (l.height > r.height + 1) {
+            if (l.left.height >= l.right.height) {
+                return new Node(l.left, new Node(l.right, r));
+            } else {
+                return new Node(
+                    new Node(l.left, l.right.left),
+                    new Node(l.right.right, r)
+                );
+            }
+        } else if (r.height > l.height + 1) {
+            if (r.right.height >= r.left.height) {
+                return new Node(new Node(l, r.left), r.right);
+            } else {
+                return new Node(
+                    new Node(l, r.left.left),
+                    new Node(r.left.right, r.right)
+                );
+            }
+        } else {
+            return new Node(l, r);
+        }
+    }
+
+    /** Builds a balanced tree from the segments in <code>[from, to)</code>. */
+    private static Node build(List<Segment> segments, int from, int to) {
+        if (from == to) {
+            return null;
+        } else if (from + 1 == to) {
+            return new Node(segments.get(from));
+        } else {
+            int mid = (from + to) >>> 1;
+            return new Node(
+                build(segments, from, mid),
+                build(segments, mid, to)
+            );
+        }
+    }
+
+    /** @return tree with the first segments, or <code>null</code>. */
+    private static Node prefix(Node n, int numSegments) {
+        if (numSegments == 0) {
+            return null;
+        } else if (numSegments == n.numSegments) {
+            return n;
+        } else if (numSegments <= n.left.numSegments) {
+            return prefix(n.left, numSegments);
+        } else {
+            return concat(
+                n.left,
+                prefix(n.right, numSegments - n.left.numSegments)
+            );
+        }
+    }
+
+    /** @return tree of the segments from an index, or <code>null</code>. */
+    private static Node suffix(Node n, int from) {
+        if (from == 0) {
+            return n;
+        } else if (from == n.numSegments) {
+            return null;
+        } else if (from >= n.left.numSegments) {
+            return suffix(n.right, from - n.left.numSegments);
+        } else {
+            return concat(suffix(n.left, from), n.right);
+        }
+    }
+
+    /** Description of the input, usually the file path. */
+    private final String source;
+
+    /** Identifiers of all versions of the script. */
+    private final SymbolTable symbols;
+
+    /** Root of the tree with the segments, never empty. */
+    private final Node root;
+
+    private ParsedScript(String source, SymbolTable symbols, Node root) {
+        this.source = source;
+        this.symbols = symbols;
+        this.root = root;
+    }
+
+    /**
+     * Tokenizes and parses a script.
+     *
+     * @param source usually path to the file (used only for error messages).
+     * @param text the script.
+     * @return parsed script, ready for edits.
+     */
+    public static ParsedScript parse(String source, String text) {
+        return parse(source, text, new SymbolTable());
+    }
+
+    /**
+     * Same as <code>parse(String, String)</code>, but takes the identifiers
+     * from the symbol table of a session.
+     *
+     * @param source usually path to the file (used only for error messages).
+     * @param text the script.
+     * @param symbols symbol table of the session.
+     * @return parsed script, ready for edits.
+     */
+    public static ParsedScript parse(
+        String source,
+        String text,
+        SymbolTable symbols
+    ) {
+        ParsedScript empty = new ParsedScript(
+            source,
+            symbols,
+            new Node(segment(source, symbols, "", 0, 0))
+        );
+        return empty.edit(0, 0, text);
+    }
+
+    /**
+     * Replaces a range of the script, and updates tokens and ASTs of the
+     * affected statements.
+     *
+     * @param offset offset of the first replaced character.
+     * @param removedLength number of replaced characters.
+     * @param inserted the replacement.
+     * @return the edited script.
+     */
+    public ParsedScript edit(int offset, int removedLength, String inserted) {
+        int length = length();
+        int editEnd = offset + removedLength;
+        if (offset < 0 || removedLength < 0 || editEnd > length) {
+            throw new IndexOutOfBoundsException(
+                "Edit [" + offset + ", " + editEnd + ") " +
+                "of a script with length " + length
+            );
+        }
+        int numSegments = root.numSegments;
+        int first = segmentAt(offset);
+        int last = segmentAt(editEnd);
+        int regionStart = start(first);
+        int lastStart = start(last);
+        String lastText = segment(last).text;
+        // Distance by which the text after the edit moves
+        int delta = inserted.length() - removedLength;
+
+        StringBuilder region = new StringBuilder();
+        region.append(segment(first).text, 0, offset - regionStart);
+        region.append(inserted);
+        region.append(lastText, editEnd - lastStart, lastText.length());
+
+        // Old segments are appended in batches of growing size, so that
+        // the region is rescanned only a logarithmic number of times.
+        int next = last + 1;
+        int batch = 1;
+        while (true) {
+            List<Chunk> chunks = ChunkSplitter.split(region, 1);
+            // Look for a chunk that ends where an old segment ends, the
+            // last segment must be replaced together with the end.
+            int k = last;
+            int kEnd = lastStart + lastText.length();
+            int maxK = Math.min(next, numSegments - 1);
+            for (int c = 0; c + 1 < chunks.size(); c++) {
+                int end = regionStart + chunks.get(c).getEnd();
+                while (k < maxK && kEnd + delta < end) {
+                    k++;
+                    kEnd += segment(k).text.length();
+                }
+                if (k < maxK && kEnd + delta == end) {
+                    return replace(first, k + 1, region, chunks, c + 1);
+                }
+            }
+            if (next == numSegments) {
+                return replace(first, next, region, chunks, chunks.size());
+            }
+            int stop = Math.min(numSegments, next + batch);
+            while (next < stop) {
+                region.append(segment(next).text);
+                next++;
+            }
+            batch *= 2;
+        }
+    }
+
+    /**
+     * Creates a copy of the script in which the old segments in the range
+     * <code>[first, resume)</code> are replaced by chunks of a region.
+     *
+     * @param first index of the first replaced segment.
+     * @param resume index of the first reused segment after the region.
+     * @param region the new text of the replaced segments.
+     * @param chunks chunks of the region.
+     * @param numChunks number of chunks that replace the segments.
+     */
+    private ParsedScript replace(
+        int first,
+        int resume,
+        CharSequence region,
+        List<Chunk> chunks,
+        int numChunks
+    ) {
+        ArrayList<Segment> replacement = new ArrayList<>(numChunks);
+        for (int c = 0; c < numChunks; c++) {
+            Chunk chunk = chunks.get(c);
+            String text =
+                region.subSequence(chunk.getStart(), chunk.getEnd()).toString();
+            int lineBreaks = 0;
+            int lastLineLength = 0;
+            // Nothing follows the last chunk of the script, so its line
+            // breaks do not matter.
+            if (c + 1 < chunks.size()) {
+                Chunk nextChunk = chunks.get(c + 1);
+                lineBreaks = nextChunk.getLineIdx() - chunk.getLineIdx();
+                lastLineLength = lineBreaks == 0
+                    ? text.length()
+                    : chunk.getEnd() - nextChunk.getLastLineBreakPos() - 1;
+            }
+            replacement.add(
+                segment(source, symbols, text, lineBreaks, lastLineLength)
+            );
+        }
+        Node newRoot = concat(
+            concat(prefix(root, first), build(replacement, 0, numChunks)),
+            suffix(root, resume)
+        );
+        return new ParsedScript(source, symbols, newRoot);
+    }
+
+    /** Tokenizes and parses the text of a segment. */
+    private static Segment segment(
+        String source,
+        SymbolTable symbols,
+        String text,
+        int lineBreaks,
+        int lastLineLength
+    ) {
+        Either<List<ErrorMessage>, TokenBuffer> tokens =
+            SqlTokenizer.tokenize(source, text);
+        if (tokens.isLeft()) {
+            return new Segment(
+                text,
+                lineBreaks,
+                lastLineLength,
+                tokens.getLeft(),
+                null,
+                Either.right(Collections.emptyList())
+            );
+        } else {
+            return new Segment(
+                text,
+                lineBreaks,
+                lastLineLength,
+                Collections.emptyList(),
+                tokens.get(),
+                SqlParser.parse(tokens.get(), symbols)
+            );
+        }
+    }
+
+    /** @return the segment with the specified index. */
+    private Segment segment(int segmentIdx) {
+        Node n = root;
+        while (n.segment == null) {
+            if (segmentIdx < n.left.numSegments) {
+                n = n.left;
+            } else {
+                segmentIdx -= n.left.numSegments;
+                n = n.right;
+            }
+        }
+        return n.segment;
+    }
+
+    /**
+     * Finds the segment that contains the character at the offset.
+     *
+     * @return index of the first segment that ends after the offset, or of
+     *         the last segment.
+     */
+    private int segmentAt(int offset) {
+        Node n = root;
+        int segmentIdx = 0;
+        while (n.segment == null) {
+            if (offset < n.left.length) {
+                n = n.left;
+            } else {
+                offset -= n.left.length;
+                segmentIdx += n.left.numSegments;
+                n = n.right;
+            }
+        }
+        return segmentIdx;
+    }
+
+    /** Offset of the first character of a segment. */
+    private int start(int segmentIdx) {
+        Node n = root;
+        int offset = 0;
+        while (n.segment == null) {
+            if (segmentIdx < n.left.numSegments) {
+                n = n.left;
+            } else {
+                segmentIdx -= n.left.numSegments;
+                offset += n.left.length;
+                n = n.right;
+            }
+        }
+        return offset;
+    }
+
+    /** @return number of characters in the script. */
+    public int length() {
+        return root.length;
+    }
+
+    /** @return the entire text of the script. */
+    public String text() {
+        StringBuilder bldr = new StringBuilder(length());
+        ArrayDeque<Node> todo = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            Node n = todo.pop();
+            if (n.segment != null) {
+                bldr.append(n.segment.text);
+            } else {
+                todo.push(n.right);
+                todo.push(n.left);
+            }
+        }
+        return bldr.toString();
+    }
+
+    /**
+     * Collects the statements of the script, exactly as if the entire text
+     * had been tokenized by <code>SqlTokenizer</code> and parsed by
+     * <code>SqlParser</code> with the symbol table of this script.
+     *
+     * The statements are returned as an unmodifiable view of the segments,
+     * which finds a statement by its index in logarithmic time.
+     *
+     * @return a <code>Right</code> with the statements in case of success,
+     *         otherwise a <code>Left</code> with the lexical errors, if there
+     *         are any, or the syntax errors.
+     */
+    public Either<List<ErrorMessage>, List<Statement>> result() {
+        if (root.numLexicalErrors > 0) {
+            ArrayList<ErrorMessage> errors = new ArrayList<>();
+            collectErrors(root, true, 1, 1, errors);
+            return Either.left(errors);
+        } else if (root.numSyntaxErrors > 0) {
+            ArrayList<ErrorMessage> errors = new ArrayList<>();
+            collectErrors(root, false, 1, 1, errors);
+            return Either.left(errors);
+        } else {
+            return Either.right(new StatementList(root));
+        }
+    }
+
+    /**
+     * Collects the errors of a subtree, skipping subtrees without errors.
+     *
+     * @param n the subtree.
+     * @param lexical whether to collect lexical or syntax errors.
+     * @param line line of the start of the subtree.
+     * @param column column of the start of the subtree.
+     * @param errors errors with positions relative to the script.
+     */
+    private static void collectErrors(
+        Node n,
+        boolean lexical,
+        int line,
+        int column,
+        List<ErrorMessage> errors
+    ) {
+        if ((lexical ? n.numLexicalErrors : n.numSyntaxErrors) == 0) {
+            return;
+        }
+        if (n.segment != null) {
+            List<ErrorMessage> segmentErrors = lexical
+                ? n.segment.lexicalErrors
+                : n.segment.parsed.getLeft();
+            for (ErrorMessage e: segmentErrors) {
+                errors.add(shift(e, line, column));
+            }
+        } else {
+            collectErrors(n.left, lexical, line, column, errors);
+            if (n.left.lineBreaks == 0) {
+                column += n.left.lastLineLength;
+            } else {
+                line += n.left.lineBreaks;
+                column = 1 + n.left.lastLineLength;
+            }
+            collectErrors(n.right, lexical, line, column, errors);
+        }
+    }
+
+    /** Unmodifiable view of the statements in a tree of segments. */
+    private static final class StatementList extends AbstractList<Statement> {
+
+        /** The tree, all segments are parsed successfully. */
+        private final Node root;
+
+        StatementList(Node root) {
+            this.root = root;
+        }
+
+        @Override
+        public int size() {
+            return root.numStatements;
+        }
+
+        @Override
+        public Statement get(int index) {
+            if (index < 0 || index >= root.numStatements) {
+                throw new IndexOutOfBoundsException(
+                    "Index " + index + " of " + root.numStatements +
+                    " statements"
+                );
+            }
+            Node n = root;
+            while (n.segment == null) {
+                if (index < n.left.numStatements) {
+                    n = n.left;
+                } else {
+                    index -= n.left.numStatements;
+                    n = n.right;
+                }
+            }
+            return n.segment.parsed.get().get(index);
+        }
+
+        /** Walks the leaves in order, instead of descending per element. */
+        @Override
+        public Iterator<Statement> iterator() {
+            ArrayDeque<Node> todo = new ArrayDeque<>();
+            todo.push(root);
+            return new Iterator<Statement>() {
+                private Iterator<Statement> current =
+                    Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext() && !todo.isEmpty()) {
+                        Node n = todo.pop();
+                        if (n.numStatements == 0) {
+                            continue;
+                        } else if (n.segment != null) {
+                            current = n.segment.parsed.get().iterator();
+                        } else {
+                            todo.push(n.right);
+                            todo.push(n.left);
+                        }
+                    }
+                    return current.hasNext();
+                }
+
+                @Override
+                public Statement next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+            };
+        }
+    }
+
+    /**
+     * Moves an error message from a segment to the script.
+     *
+     * @param e error with a position relative to the segment.
+     * @param line line of the start of the segment.
+     * @param column column of the start of the segment.
+     * @return error with a position relative to the script.
+     */
+    private static ErrorMessage shift(ErrorMessage e, int line, int column) {
+        Position p = e.getPosition();
+        return new ErrorMessage(
+            Position.of(
+                p.getSource(),
+                line + p.getLine() - 1,
+                p.getLine() == 1 ? column + p.getColumn() - 1 : p.getColumn()
+            ),
+            e.getMessage()
+        );
+    }
+}
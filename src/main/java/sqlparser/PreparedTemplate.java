@@ -0,0 +1,348 @@
+package sqlparser;
+
+import io.vavr.control.Either;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static sqlparser.Ast.*;
+
+/**
+ * Statement with parameter markers <code>?</code>, parsed once, into which
+ * values can be bound repeatedly, much like a JDBC
+ * <code>PreparedStatement</code>.
+ *
+ * Binding does not parse anything. It copies only the nodes on the paths
+ * from the root of the statement to the parameters, all other subtrees of
+ * the template (and lists without parameters) are shared by the bound
+ * statements. The paths are found once, when the template is created,
+ * so binding costs time proportional to their total length. The rows of
+ * an <code>INSERT</code> are copied as a whole, their literals are not
+ * objects that could be shared anyway, see <code>RowBlock</code>.
+ *
+ * Templates are immutable and can be used by multiple threads.
+ */
+public final class PreparedTemplate {
+
+    /** The statement with the parameter markers. */
+    private final Statement statement;
+
+    /** Top-level expressions of the statement, see <code>roots</code>. */
+    private final List<Expression> roots;
+
+    /**
+     * Expressions that contain parameters, including the parameters
+     * themselves, every expression after all of its children.
+     */
+    private final Expression[] paths;
+
+    /**
+     * For every expression in <code>paths</code>, the indices of its
+     * children in <code>paths</code>, or <code>-1</code> for children
+     * without parameters.
+     */
+    private final int[][] children;
+
+    /**
+     * For every root, its index in <code>paths</code>, or <code>-1</code>
+     * if it contains no parameters.
+     */
+    private final int[] rootPaths;
+
+    /** Number of parameters of the statement. */
+    private final int numParameters;
+
+    /**
+     * Creates a template from a statement, usually one that has been
+     * parsed from a text with parameter markers.
+     *
+     * @param statement the statement.
+     */
+    public PreparedTemplate(Statement statement) {
+        this.statement = statement;
+        this.roots = roots(statement);
+
+        // All expressions in pre-order, children after their parents
+        ArrayList<Expression> nodes = new ArrayList<>();
+        ArrayList<int[]> nodeChildren = new ArrayList<>();
+        int[] rootNodes = new int[roots.size()];
+        ArrayDeque<Integer> todo = new ArrayDeque<>();
+        for (int r = 0; r < roots.size(); r++) {
+            rootNodes[r] = nodes.size();
+            nodes.add(roots.get(r));
+            nodeChildren.add(null);
+            todo.push(rootNodes[r]);
+            while (!todo.isEmpty()) {
+                int i = todo.pop();
+                Expression[] cs = children(nodes.get(i));
+                int[] indices = new int[cs.length];
+                for (int c = 0; c < cs.length; c++) {
+                    indices[c] = nodes.size();
+                    nodes.add(cs[c]);
+                    nodeChildren.add(null);
+                    todo.push(indices[c]);
+                }
+                nodeChildren.set(i, indices);
+            }
+        }
+
+        // Walking backwards visits children before their parents
+        boolean[] hasParameters = new boolean[nodes.size()];
+        int numPaths = 0;
+        int maxIndex = -1;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Expression e = nodes.get(i);
+            if (e instanceof Parameter) {
+                hasParameters[i] = true;
+                maxIndex = Math.max(maxIndex, ((Parameter) e).getIndex());
+            }
+            for (int c: nodeChildren.get(i)) {
+                hasParameters[i] |= hasParameters[c];
+            }
+            if (hasParameters[i]) {
+                numPaths++;
+            }
+        }
+        this.numParameters = maxIndex + 1;
+
+        this.paths = new Expression[numPaths];
+        this.children = new int[numPaths][];
+        int[] pathIndices = new int[nodes.size()];
+        int p = 0;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            if (hasParameters[i]) {
+                int[] cs = nodeChildren.get(i);
+                int[] pathChildren = new int[cs.length];
+                for (int c = 0; c < cs.length; c++) {
+                    pathChildren[c] =
+                        hasParameters[cs[c]] ? pathIndices[cs[c]] : -1;
+                }
+                paths[p] = nodes.get(i);
+                children[p] = pathChildren;
+                pathIndices[i] = p;
+                p++;
+            }
+        }
+        this.rootPaths = new int[roots.size()];
+        for (int r = 0; r < roots.size(); r++) {
+            int i = rootNodes[r];
+            rootPaths[r] = hasParameters[i] ? pathIndices[i] : -1;
+        }
+    }
+
+    /**
+     * Tokenizes and parses a text with parameter markers, and creates a
+     * template for each statement.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param text one or more statements.
+     * @return a <code>Right</code> with one template per statement in case
+     *         of success, otherwise a <code>Left</code> with a list of
+     *         errors.
+     */
+    public static Either<List<ErrorMessage>, List<PreparedTemplate>> prepare(
+        String inputDescription,
+        String text
+    ) {
+        return SqlTokenizer
+            .tokenize(inputDescription, text)
+            .flatMap(SqlParser::parse)
+            .map(statements -> {
+                List<PreparedTemplate> templates = new ArrayList<>();
+                for (Statement s: statements) {
+                    templates.add(new PreparedTemplate(s));
+                }
+                return templates;
+            });
+    }
+
+    /** @return the statement with the parameter markers. */
+    public Statement getStatement() {
+        return statement;
+    }
+
+    /** @return number of parameters, one more than the largest index. */
+    public int getNumParameters() {
+        return numParameters;
+    }
+
+    /**
+     * Replaces the parameter markers by values.
+     *
+     * @param values values of the parameters, by index.
+     * @return the statement with the values in place of the parameters.
+     * @throws IllegalArgumentException if the number of values does not
+     *         match the number of parameters.
+     */
+    public Statement bind(Expression... values) {
+        return bind(Arrays.asList(values));
+    }
+
+    /**
+     * Same as <code>bind(Expression...)</code>, with the values in a list.
+     *
+     * @param values values of the parameters, by index.
+     * @return the statement with the values in place of the parameters.
+     * @throws IllegalArgumentException if the number of values does not
+     *         match the number of parameters.
+     */
+    public Statement bind(List<? extends Expression> values) {
+        if (values.size() != numParameters) {
+            throw new IllegalArgumentException(
+                "Expected " + numParameters + " values, but got " +
+                values.size()
+            );
+        }
+        if (paths.length == 0) {
+            return statement;
+        }
+        Expression[] bound = new Expression[paths.length];
+        for (int p = 0; p < paths.length; p++) {
+            Expression e = paths[p];
+            if (e instanceof Parameter) {
+                bound[p] = values.get(((Parameter) e).getIndex());
+            } else {
+                Expression[] cs = children(e);
+                for (int c = 0; c < cs.length; c++) {
+                    int k = children[p][c];
+                    if (k >= 0) {
+                        cs[c] = bound[k];
+                    }
+                }
+                bound[p] = withChildren(e, cs);
+            }
+        }
+        Expression[] newRoots = new Expression[roots.size()];
+        for (int r = 0; r < newRoots.length; r++) {
+            int k = rootPaths[r];
+            newRoots[r] = k < 0 ? roots.get(r) : bound[k];
+        }
+        return withRoots(statement, newRoots);
+    }
+
+    /** Collects the top-level expressions of a statement. */
+    private static final StatementVisitor<List<Expression>> ROOTS =
+        new StatementVisitor<List<Expression>>() {
+
+            @Override
+            public List<Expression> visitUse(Use use) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public List<Expression> visitSelect(Select select) {
+                List<Expression> rs = new ArrayList<>(select.getSelectList());
+                select.getWhereCondition().ifPresent(rs::add);
+                select.getOrderBy().ifPresent(rs::add);
+                return rs;
+            }
+
+            @Override
+            public List<Expression> visitInsert(Insert insert) {
+                List<Expression> rs = new ArrayList<>();
+                for (List<Expression> row: insert.getRows().rows()) {
+                    rs.addAll(row);
+                }
+                return rs;
+            }
+
+            @Override
+            public List<Expression> visitDelete(Delete delete) {
+                return Collections.singletonList(delete.getWhereCondition());
+            }
+        };
+
+    /**
+     * Top-level expressions of a statement: the select list, the
+     * <code>WHERE</code> condition and the <code>ORDER BY</code>
+     * expression of a <code>SELECT</code>, the values of an
+     * <code>INSERT</code>, and the condition of a <code>DELETE</code>.
+     */
+    private static List<Expression> roots(Statement s) {
+        return s.accept(ROOTS);
+    }
+
+    /**
+     * Copies a statement with different top-level expressions, in the
+     * order of <code>roots</code>. Lists in which no expression has been
+     * replaced are shared.
+     */
+    private static Statement withRoots(
+        Statement s,
+        final Expression[] newRoots
+    ) {
+        return s.accept(new StatementVisitor<Statement>() {
+
+            @Override
+            public Statement visitUse(Use use) {
+                return use;
+            }
+
+            @Override
+            public Statement visitSelect(Select select) {
+                List<Expression> list = select.getSelectList();
+                int n = list.size();
+                Optional<Expression> where = select.getWhereCondition();
+                Optional<Expression> orderBy = select.getOrderBy();
+                if (where.isPresent() && where.get() != newRoots[n]) {
+                    where = Optional.of(newRoots[n]);
+                }
+                Expression last = newRoots[newRoots.length - 1];
+                if (orderBy.isPresent() && orderBy.get() != last) {
+                    orderBy = Optional.of(last);
+                }
+                return new Select(
+                    replaced(list, newRoots),
+                    select.getFromTableId(),
+                    where,
+                    orderBy
+                );
+            }
+
+            @Override
+            public Statement visitInsert(Insert insert) {
+                RowBlock rows = new RowBlock();
+                int width = insert.getRows().width();
+                for (int i = 0; i < newRoots.length; i++) {
+                    rows.add(newRoots[i]);
+                    if ((i + 1) % width == 0) {
+                        rows.endRow();
+                    }
+                }
+                return new Insert(
+                    insert.getIntoTable(),
+                    insert.getColumnList(),
+                    rows
+                );
+            }
+
+            @Override
+            public Statement visitDelete(Delete delete) {
+                return new Delete(delete.getFromTable(), newRoots[0]);
+            }
+        });
+    }
+
+    /**
+     * Returns the list itself if its elements are the same as the first
+     * elements of the array, otherwise a new list with those elements.
+     */
+    private static List<Expression> replaced(
+        List<Expression> list,
+        Expression[] elements
+    ) {
+        int i = 0;
+        for (Expression e: list) {
+            if (e != elements[i++]) {
+                return Collections.unmodifiableList(
+                    Arrays.asList(Arrays.copyOf(elements, list.size()))
+                );
+            }
+        }
+        return list;
+    }
+}
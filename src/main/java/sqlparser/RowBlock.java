@@ -0,0 +1,269 @@
+package sqlparser;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import static sqlparser.Ast.*;
+
+/**
+ * Rows of the <code>VALUES</code> clause of an <code>INSERT</code>,
+ * stored column by column.
+ *
+ * Dumps insert thousands of rows per statement, and most of the values
+ * are plain literals. Instead of a list of expression objects per row,
+ * the values are kept column by column in two parallel arrays per block:
+ * numeric literals as primitive values, string literals as their lexemes,
+ * and only the remaining expressions as objects. Literals are materialized as
+ * <code>NumConstant</code> and <code>StringConstant</code> on access, so
+ * the cells compare equal, but are not necessarily the same instances on
+ * every access.
+ *
+ * All rows have the same width. The block is filled row by row when it
+ * is created, and never changes afterwards.
+ */
+public final class RowBlock {
+
+    /** Number of values per row, grows while the first row is added. */
+    private int width = 0;
+
+    /** Number of completed rows. */
+    private int numRows = 0;
+
+    /** Column of the next value of the current row. */
+    private int column = 0;
+
+    /**
+     * Number of rows that fit into the columns. Stays at one during the
+     * first row, so that the first row is laid out like a growing array.
+     */
+    private int capacity = 1;
+
+    /**
+     * Values of numeric literals, column by column, the value in row
+     * <code>r</code> and column <code>c</code> is at
+     * <code>c * capacity + r</code>.
+     */
+    private long[] numbers = new long[4];
+
+    /**
+     * Lexemes of string literals, other expressions, or <code>null</code>
+     * for numeric literals, laid out like <code>numbers</code>.
+     */
+    private Object[] objects = new Object[4];
+
+    /** Creates an empty block, to be filled by the parser. */
+    RowBlock() { /* nothing to do. */ }
+
+    /**
+     * Creates a block from a list of rows.
+     *
+     * @param rows the rows, all of the same width.
+     * @return block with the same values.
+     * @throws IllegalArgumentException if the rows differ in width.
+     */
+    public static RowBlock of(List<? extends List<? extends Expression>> rows) {
+        RowBlock block = new RowBlock();
+        for (List<? extends Expression> row: rows) {
+            if (block.numRows > 0 && row.size() != block.width) {
+                throw new IllegalArgumentException(
+                    "Expected rows of width " + block.width +
+                    ", but got a row of width " + row.size()
+                );
+            }
+            for (Expression e: row) {
+                block.add(e);
+            }
+            block.endRow();
+        }
+        return block;
+    }
+
+    /** Appends a numeric literal to the current row. */
+    void addNumber(long value) {
+        int i = nextCell();
+        numbers[i] = value;
+        objects[i] = null;
+    }
+
+    /** Appends a string literal, with quotes, to the current row. */
+    void addString(String lexeme) {
+        int i = nextCell();
+        objects[i] = lexeme;
+    }
+
+    /** Appends an expression to the current row, literals are unboxed. */
+    void add(Expression e) {
+        if (e instanceof NumConstant) {
+            addNumber(((NumConstant) e).getValue());
+        } else if (e instanceof StringConstant) {
+            addString(((StringConstant) e).getValue());
+        } else {
+            int i = nextCell();
+            objects[i] = e;
+        }
+    }
+
+    /** Completes the current row, the first one determines the width. */
+    void endRow() {
+        numRows++;
+        column = 0;
+    }
+
+    /**
+     * Makes room for the next value of the current row, adding a column
+     * during the first row, and growing all columns at the start of a row
+     * that does not fit.
+     *
+     * @return index of the value in <code>numbers</code> and
+     *         <code>objects</code>.
+     */
+    private int nextCell() {
+        if (numRows == 0) {
+            if (width == numbers.length) {
+                numbers = Arrays.copyOf(numbers, 2 * width);
+                objects = Arrays.copyOf(objects, 2 * width);
+            }
+            width++;
+        } else if (column == 0 && numRows == capacity) {
+            int newCapacity = 2 * capacity;
+            long[] newNumbers = new long[width * newCapacity];
+            Object[] newObjects = new Object[width * newCapacity];
+            for (int c = 0; c < width; c++) {
+                System.arraycopy(
+                    numbers, c * capacity,
+                    newNumbers, c * newCapacity,
+                    numRows
+                );
+                System.arraycopy(
+                    objects, c * capacity,
+                    newObjects, c * newCapacity,
+                    numRows
+                );
+            }
+            numbers = newNumbers;
+            objects = newObjects;
+            capacity = newCapacity;
+        }
+        return column++ * capacity + numRows;
+    }
+
+    /** @return number of rows. */
+    public int numRows() {
+        return numRows;
+    }
+
+    /** @return number of values per row. */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * @param row index of a row.
+     * @param column index of a column.
+     * @return the value in the specified row and column.
+     */
+    public Expression get(int row, int column) {
+        if (row < 0 || row >= numRows || column < 0 || column >= width) {
+            throw new IndexOutOfBoundsException(
+                "Cell (" + row + ", " + column + ") of " +
+                numRows + " x " + width
+            );
+        }
+        int i = column * capacity + row;
+        Object o = objects[i];
+        if (o == null) {
+            return new NumConstant(numbers[i]);
+        } else if (o instanceof String) {
+            return new StringConstant((String) o);
+        } else {
+            return (Expression) o;
+        }
+    }
+
+    /**
+     * @param row index of a row.
+     * @return unmodifiable view of the values of the row.
+     */
+    public List<Expression> row(final int row) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException(
+                "Row " + row + " of " + numRows
+            );
+        }
+        return new AbstractList<Expression>() {
+            @Override
+            public Expression get(int column) {
+                return RowBlock.this.get(row, column);
+            }
+
+            @Override
+            public int size() {
+                return width;
+            }
+        };
+    }
+
+    /** @return unmodifiable view of all rows. */
+    public List<List<Expression>> rows() {
+        return new AbstractList<List<Expression>>() {
+            @Override
+            public List<Expression> get(int row) {
+                return row(row);
+            }
+
+            @Override
+            public int size() {
+                return numRows;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        } else if (!(other instanceof RowBlock)) {
+            return false;
+        }
+        RowBlock that = (RowBlock) other;
+        if (numRows != that.numRows || width != that.width) {
+            return false;
+        }
+        for (int c = 0; c < width; c++) {
+            for (int r = 0; r < numRows; r++) {
+                int i = c * capacity + r;
+                int j = c * that.capacity + r;
+                Object o = objects[i];
+                Object p = that.objects[j];
+                if (o == null
+                    ? p != null || numbers[i] != that.numbers[j]
+                    : !o.equals(p)
+                ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = width;
+        for (int c = 0; c < width; c++) {
+            for (int r = 0; r < numRows; r++) {
+                int i = c * capacity + r;
+                Object o = objects[i];
+                hash = 31 * hash + (
+                    o == null ? Long.hashCode(numbers[i]) : o.hashCode()
+                );
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return rows().toString();
+    }
+}
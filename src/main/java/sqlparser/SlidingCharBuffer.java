@@ -0,0 +1,105 @@
+package sqlparser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Bounded window over the characters of a <code>Reader</code>.
+ *
+ * Exposes only the currently buffered characters through the
+ * <code>CharSequence</code> interface. The tokenizer periodically asks the
+ * buffer to <code>slide</code>, which discards all characters before the
+ * start of the token that is currently being scanned, and refills the
+ * freed space from the reader.
+ *
+ * The buffer grows only if a single token does not fit into it, so the
+ * memory consumption is bounded by the length of the longest token
+ * (string literals cannot span multiple lines, so in the worst case by the
+ * length of the longest line), not by the size of the input.
+ */
+final class SlidingCharBuffer implements CharSequence {
+
+    /** Source of the characters. */
+    private final Reader reader;
+
+    /** Buffered characters, valid range is <code>[0, length)</code>. */
+    private char[] buffer;
+
+    /** Number of valid characters in the buffer. */
+    private int length = 0;
+
+    /** Set as soon as the reader reports the end of the stream. */
+    private boolean endOfInput = false;
+
+    /**
+     * Creates an empty window, nothing is read before the first
+     * <code>slide</code>.
+     *
+     * @param reader source of the characters.
+     * @param capacity initial size of the buffer, must be positive.
+     */
+    SlidingCharBuffer(Reader reader, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                "Buffer capacity must be positive, but was: " + capacity
+            );
+        }
+        this.reader = reader;
+        this.buffer = new char[capacity];
+    }
+
+    /**
+     * Discards the characters before <code>keepFrom</code>, moves the
+     * remaining characters to the start of the buffer, and reads more
+     * characters into the freed space.
+     *
+     * @param keepFrom index of the first character that is still needed.
+     * @return number of discarded characters, by which all indices into
+     *         this buffer are shifted to the left.
+     * @throws IOException if the underlying reader fails.
+     */
+    int slide(int keepFrom) throws IOException {
+        if (endOfInput) {
+            return 0;
+        }
+        if (keepFrom > 0) {
+            System.arraycopy(buffer, keepFrom, buffer, 0, length - keepFrom);
+            length -= keepFrom;
+        }
+        if (length == buffer.length) {
+            // A single token occupies the entire buffer
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        int numRead = 0;
+        while (numRead == 0) {
+            numRead = reader.read(buffer, length, buffer.length - length);
+        }
+        if (numRead < 0) {
+            endOfInput = true;
+        } else {
+            length += numRead;
+        }
+        return keepFrom;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return buffer[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(buffer, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+}
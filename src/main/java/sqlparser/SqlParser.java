@@ -1,8 +1,14 @@
 package sqlparser;
 
 import io.vavr.control.Either;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 import static sqlparser.Ast.*;
 import static sqlparser.Constants.*;
@@ -13,10 +19,10 @@ import static sqlparser.Token.Type;
 public final class SqlParser {
 
     /** The input, presumably generated by the tokenizer. */
-    private final ArrayList<Token> tokens;
+    private final TokenSource tokens;
 
-    /** Index of the currently inspected token. */
-    private int currentIndex = 0;
+    /** Canonical instances of the identifiers. */
+    private final SymbolTable symbols;
 
     /**
      * Signals that parsing of a statement has failed. Carries the
@@ -34,8 +40,54 @@ public final class SqlParser {
         }
     }
 
-    private SqlParser(ArrayList<Token> tokens) {
+    /** Minimal number of tokens per range of the parallel parser. */
+    private static final int MIN_RANGE_LENGTH = 1 << 12;
+
+    /** Frame of an expression that consumes operators by precedence. */
+    private static final int CLIMB_FRAME = 0;
+
+    /** Frame of a unary operator, waiting for its operand. */
+    private static final int PREFIX_FRAME = 1;
+
+    /** Frame of a parenthesized expression, waiting for its content. */
+    private static final int PAREN_FRAME = 2;
+
+    /** Frame of a function call, waiting for the next argument. */
+    private static final int CALL_FRAME = 3;
+
+    /**
+     * Entry of the explicit stack that is used for parsing expressions.
+     * The frames are reused, only the fields of the respective kind are
+     * meaningful.
+     */
+    private static final class Frame {
+        /** One of the <code>*_FRAME</code> constants. */
+        int kind;
+        /** Precedence of the loosest operator that may be consumed. */
+        int minPrecedence;
+        /** Precedence of the tightest operator that may be consumed. */
+        int maxPrecedence;
+        /** Precedence of the right operand of the pending operator. */
+        int rightPrecedence;
+        /** Pending operator. */
+        Operator operator;
+        /** Name of the called function. */
+        String function;
+        /** Expression parsed so far, <code>null</code> before the first. */
+        Expression accum;
+        /** Arguments of the function call parsed so far. */
+        List<Expression> arguments;
+    }
+
+    /** Number of parameter markers in the current statement so far. */
+    private int numParameters = 0;
+
+    /** Stack of the expression that is being parsed, grown on demand. */
+    private Frame[] frames = new Frame[16];
+
+    private SqlParser(TokenSource tokens, SymbolTable symbols) {
         this.tokens = tokens;
+        this.symbols = symbols;
     }
 
     /**
@@ -45,407 +97,514 @@ public final class SqlParser {
      * Simply discards all tokens until the next semicolon is encountered.
      */
     private void recover() {
-        int n = tokens.size();
-        while (currentIndex < n) {
-            if (tryPeek(SEMICOLON).isPresent()) {
-                currentIndex++;
+        while (!tryPeek(EOF)) {
+            if (tryEat(SEMICOLON)) {
                 return;
             }
-            currentIndex++;
+            tokens.next();
         }
     }
 
     /**
-     * Attemts to parse the statements in the input.
+     * Attemts to parse the statements in the input, passes each
+     * successfully parsed statement to the sink as soon as its
+     * terminating semicolon has been consumed.
+     *
+     * Once the token source reports a lexical error, no more statements
+     * are passed to the sink, because the tokens no longer reflect the
+     * input faithfully. The tokens are still consumed up to the end, in
+     * order to collect all lexical errors.
      *
      * After the invocation of this method, the state of the parser 
      * is completely undefined.
+     *
+     * @return the lexical errors, if there were any, otherwise the
+     *         syntax errors.
      */
-    private Either<List<ErrorMessage>, List<Statement>> parse() {
-        LinkedList<Statement> result = new LinkedList<>();
+    private List<ErrorMessage> parse(Consumer<Statement> sink) {
         LinkedList<ErrorMessage> errors = new LinkedList<>();
 
-        int n = tokens.size();
-        while (
-            currentIndex < n &&
-            tokens.get(currentIndex).getTokenType() != EOF
-        ) {
+        while (!tryPeek(EOF)) {
             try {
                 Statement s = statement();
-                result.add(s);
+                if (tokens.errors().isEmpty()) {
+                    sink.accept(s);
+                }
             } catch (ParseException e) {
                 errors.add(e.getErrorMessage());
                 recover();
             }
         }
 
-        if (errors.isEmpty()) {
-            return Either.right(result);
+        if (tokens.errors().isEmpty()) {
+            return errors;
         } else {
-            return Either.left(errors);
+            return new LinkedList<>(tokens.errors());
         }
     }
 
     /** 
-     * Retrieves current token,
-     * assumes that the <code>currentIndex</code> is valid
+     * Retrieves the type of the current token
      * (we never parse past the special EOF token).
      */
-    private Token peek() {
-        return tokens.get(currentIndex);
+    private Type peek() {
+        return tokens.peek();
     }
 
-    /**
-     * Attempts to get the current token, throws if it doesn't have the
-     * specified type. 
-     */
-    private Token peek(Type tpe) throws ParseException {
-        Token tok = tokens.get(currentIndex);
-        if (tok.getTokenType() == tpe) {
-            return tok;
-        } else {
-            return error(
-                tok.getPosition(),
-                "Expected token of type " + tpe + ", " +
-                "but found `" + tok.getString() + "`"
-            );
-        }
+    /** Extracts the lexeme of the current token. */
+    private String lexeme() {
+        return tokens.lexeme();
     }
 
     /**
-     * Attempts to retrieve current token, throws if it either doesn't have
-     * the specified token type, or if it doesn't have exactly the specified
-     * lexeme.
+     * Checks that the current token has the specified type, throws
+     * otherwise.
      */
-    private Token peek(Type tpe, String str) throws ParseException {
-        Token tok = tokens.get(currentIndex);
-        if (tpe == tok.getTokenType() && str.equals(tok.getString())) {
-            return tok;
-        } else {
-            return error(
-                tok.getPosition(),
-                "Expected token `" + str + "` of type " + tpe + ", " +
-                "but found: `" + tok.getString() + "`"
+    private void peek(Type tpe) throws ParseException {
+        if (tokens.peek() != tpe) {
+            error(
+                "Expected token of type " + tpe + ", " +
+                "but found `" + lexeme() + "`"
             );
         }
     }
 
     /**
-     * Attempts to get the current token, returns <code>None</code> if
-     * it doesn't have the specified type.
+     * Checks that the current token is the specified keyword, throws
+     * otherwise.
      */
-    private Optional<Token> tryPeek(Type tpe) {
-        Token tok = peek();
-        if (tpe == tok.getTokenType()) {
-            return Optional.of(tok);
-        } else {
-            return Optional.empty();
+    private void peek(Keyword keyword) throws ParseException {
+        if (!tryPeek(keyword)) {
+            error(
+                "Expected token `" + keyword + "` of type " + KEYWORD + ", " +
+                "but found: `" + lexeme() + "`"
+            );
         }
     }
 
     /**
-     * Attempts to get the current token, returns <code>None</code> if
-     * it doesn't have the specified type, or if it has the string value
-     * other than specified.
+     * Checks whether the current token has the specified type.
      */
-    private Optional<Token> tryPeek(Type tpe, String str) {
-        Token tok = peek();
-        if (tpe == tok.getTokenType() && str.equals(tok.getString())) {
-            return Optional.of(tok);
-        } else {
-            return Optional.empty();
-        }
+    private boolean tryPeek(Type tpe) {
+        return tpe == tokens.peek();
     }
 
     /**
-     * Attempts to get the current token, returns <code>None</code> if 
-     * it doesn't satisfy the predicate.
+     * Checks whether the current token is the specified keyword.
      */
-    private Optional<Token> tryPeek(Type tpe, Predicate<String> strPred) {
-        Token tok = peek();
-        if (tpe == tok.getTokenType() && strPred.test(tok.getString())) {
-            return Optional.of(tok);
-        } else {
-            return Optional.empty();
-        }
+    private boolean tryPeek(Keyword keyword) {
+        return keyword == tokens.keyword();
     }
 
     /**
-     * Same as <code>peek</code>,
-     * followed by <code>currentIndex</code> increment.
+     * Consumes the current token unconditionally.
+     *
+     * @return lexeme of the consumed token.
      */
-    private Token eat() {
-        Token tok = peek();
-        currentIndex++;
-        return tok;
+    private String eat() {
+        String lexeme = lexeme();
+        tokens.next();
+        return lexeme;
     }
 
     /**
      * Consumes a token of the specified type.
      *
-     * If the type matches, then this method increments the current token index,
-     * and returns the consumed token. Otherwise, it does not increment the
-     * current index, and throws a <code>ParseException</code>.
+     * If the type matches, then this method moves on to the next token.
+     * Otherwise, it does not consume anything, and throws a
+     * <code>ParseException</code>.
      */
-    private Token eat(Type tpe) throws ParseException {
-        Token tok = peek(tpe);
-        currentIndex++;
-        return tok;
+    private void eat(Type tpe) throws ParseException {
+        peek(tpe);
+        tokens.next();
     }
 
     /**
-     * Consumes a token of the specified type and with specified string value.
+     * Consumes an identifier.
      *
-     * If the type and the string part both match,
-     * then this method increments the current token index
-     * and returns the consumed token. Otherwise, it does not increment the
-     * current index, and throws a <code>ParseException</code>.
+     * @return canonical instance of the identifier from the symbol table.
      */
-    private Token eat(Type tpe, String str) throws ParseException {
-        Token tok = peek(tpe, str);
-        currentIndex++;
-        return tok;
+    private String identifier() throws ParseException {
+        peek(IDENTIFIER);
+        String id = tokens.symbol(symbols);
+        tokens.next();
+        return id;
     }
 
     /**
-     * Same as <code>tryPeek</code>, but increment the <code>currentIndex</code>
-     * in case of success.
+     * Consumes the specified keyword.
+     *
+     * If the current token is the keyword, then this method moves on to
+     * the next token. Otherwise, it does not consume anything, and throws
+     * a <code>ParseException</code>.
      */
-    private Optional<Token> tryEat(Type tpe) {
-        Optional<Token> optTok = tryPeek(tpe);
-        if (optTok.isPresent()) {
-            currentIndex++;
-        }
-        return optTok;
+    private void eat(Keyword keyword) throws ParseException {
+        peek(keyword);
+        tokens.next();
     }
 
     /**
-     * Same as <code>tryPeek</code>, but increment the <code>currentIndex</code>
-     * in case of success.
+     * Same as <code>tryPeek</code>, but consumes the token in case of
+     * success.
      */
-    private Optional<Token> tryEat(Type tpe, String str) {
-        Optional<Token> optTok = tryPeek(tpe, str);
-        if (optTok.isPresent()) {
-            currentIndex++;
+    private boolean tryEat(Type tpe) {
+        boolean found = tryPeek(tpe);
+        if (found) {
+            tokens.next();
         }
-        return optTok;
+        return found;
     }
 
     /**
-     * Same as <code>tryPeek</code>, but increment the <code>currentIndex</code>
-     * in case of success.
+     * Same as <code>tryPeek</code>, but consumes the token in case of
+     * success.
      */
-    private Optional<Token> tryEat(Type tpe, Predicate<String> strPred) {
-        Optional<Token> optTok = tryPeek(tpe, strPred);
-        if (optTok.isPresent()) {
-            currentIndex++;
+    private boolean tryEat(Keyword keyword) {
+        boolean found = tryPeek(keyword);
+        if (found) {
+            tokens.next();
         }
-        return optTok;
+        return found;
     }
 
     /**
-     * Emits an error at current position.
+     * Emits an error at the position of the current token.
      *
      * The universal quantification over the return type <code>A</code> 
      * guarantees that this method always throws a <code>ParseException</code>.
      */
-    private <A> A error(Position pos, String message)
-    throws ParseException {
-        throw new ParseException(new ErrorMessage(pos, message));
+    private <A> A error(String message) throws ParseException {
+        throw new ParseException(
+            new ErrorMessage(tokens.position(), message)
+        );
     }
 
     private Statement statement() throws ParseException {
-        Token t = peek();
-        switch (t.getTokenType()) {
+        numParameters = 0;
+        switch (peek()) {
             case KEYWORD:
-                switch (t.getString()) {
-                    case "USE": return use();
-                    case "SELECT": return select();
-                    case "INSERT": return insert();
-                    case "DELETE": return delete();
+                Keyword keyword = tokens.keyword();
+                switch (keyword) {
+                    case USE: return use();
+                    case SELECT: return select();
+                    case INSERT: return insert();
+                    case DELETE: return delete();
                     default: return error(
-                        t.getPosition(),
                         "Unexpected keyword at start of a statement: " +
-                        t.getString()
+                        keyword
                     );
                 }
             default: return error(
-                t.getPosition(),
                 "Invalid start of statement, not even a keyword: `" +
-                t.getString() + "`"
+                lexeme() + "`"
             );
         }
     }
 
     private Use use() throws ParseException {
-        eat(KEYWORD, "USE");
-        Token t = eat(IDENTIFIER);
+        eat(Keyword.USE);
+        String database = identifier();
         eat(SEMICOLON);
-        return new Use(t.getString());
+        return new Use(database);
     }
 
     private Expression expression() throws ParseException {
-        LinkedList<Expression> disjuncts = new LinkedList<>();
-        disjuncts.add(disjunct());
-        while (tryEat(KEYWORD, "OR").isPresent()) {
-            disjuncts.add(disjunct());
-        }
-        Expression res =  disjuncts.stream().reduce(BinOp.partial("OR")).get();
-        return res;
+        return expression(OR_PRECEDENCE, null);
     }
 
-    private Expression disjunct() throws ParseException {
-        LinkedList<Expression> conjuncts = new LinkedList<>();
-        conjuncts.add(conjunct());
-        while (tryEat(KEYWORD, "AND").isPresent()) {
-            conjuncts.add(conjunct());
+    /**
+     * Parses an expression by precedence climbing. Consumes only those
+     * operators that bind at least as tightly as the specified precedence,
+     * and leaves the looser ones to the callers further up.
+     *
+     * <code>NOT</code> is a prefix operator, its operand extends over
+     * everything up to the next <code>AND</code> or <code>OR</code>.
+     * <code>IS [NOT] NULL</code> is applied at most once, to an entire
+     * comparison. The multiplicative operators group to the right, all
+     * other binary operators group to the left.
+     *
+     * Nested subexpressions are kept on an explicit stack of frames
+     * instead of the call stack, so that the nesting depth is limited
+     * only by the available memory. Each iteration either parses the
+     * beginning of an operand (pushing a frame for every prefix operator,
+     * parenthesis and function call on the way), or hands a finished
+     * operand to the frame on top of the stack.
+     *
+     * @param minPrecedence precedence of the loosest operator that may be
+     *        consumed, as defined in <code>Constants</code>.
+     * @param first first operand, if it has been consumed already,
+     *        otherwise <code>null</code>.
+     */
+    private Expression expression(int minPrecedence, Expression first)
+    throws ParseException {
+        int top = 0;
+        climbFrame(top, minPrecedence);
+        // Whether the frame on top waits for an operand that has not been
+        // started yet, or has just been given a finished `operand`.
+        boolean needOperand = first == null;
+        Expression operand = first;
+        while (true) {
+            Frame frame = frames[top];
+            if (needOperand) {
+                if (
+                    frame.kind == CLIMB_FRAME &&
+                    frame.minPrecedence <= NOT_PRECEDENCE &&
+                    tryEat(Keyword.NOT)
+                ) {
+                    // Only AND and OR may follow the operand of NOT
+                    frame.maxPrecedence = NOT_PRECEDENCE - 1;
+                    frame(++top, PREFIX_FRAME).operator = Operator.NOT;
+                    climbFrame(++top, NOT_PRECEDENCE);
+                    continue;
+                }
+                switch (peek()) {
+                    case IDENTIFIER:
+                        String id = identifier();
+                        if (!tryEat(LPAREN)) {
+                            // That's just an isolated identifier, looks
+                            // like column name
+                            operand = new Identifier(id);
+                        } else if (tryEat(RPAREN)) {
+                            operand = new FunctionApplication(
+                                id,
+                                new LinkedList<>()
+                            );
+                        } else {
+                            // Function invocation with arguments
+                            Frame call = frame(++top, CALL_FRAME);
+                            call.function = id;
+                            call.arguments = new LinkedList<>();
+                            climbFrame(++top, OR_PRECEDENCE);
+                            continue;
+                        }
+                        break;
+                    case LPAREN:
+                        tokens.next();
+                        frame(++top, PAREN_FRAME);
+                        climbFrame(++top, OR_PRECEDENCE);
+                        continue;
+                    case OPERATOR:
+                        Operator op = tokens.operator();
+                        if (op != Operator.PLUS && op != Operator.MINUS) {
+                            return error(
+                                "Invalid operator at start of a factor: " +
+                                "`" + op + "`"
+                            );
+                        }
+                        tokens.next();
+                        // The operand of a unary operator is a factor
+                        frame(++top, PREFIX_FRAME).operator = op;
+                        continue;
+                    case NUMBER:
+                        operand = new NumConstant(tokens.value());
+                        tokens.next();
+                        break;
+                    case STRING:
+                        operand = new StringConstant(eat());
+                        break;
+                    case PARAMETER:
+                        operand = new Parameter(numParameters++);
+                        tokens.next();
+                        break;
+                    default: return error(
+                        "Invalid token type at start of a factor: " +
+                        "`" + lexeme() + "`"
+                    );
+                }
+                needOperand = false;
+                continue;
+            }
+            switch (frame.kind) {
+                case PREFIX_FRAME:
+                    operand = new UnOp(frame.operator, operand);
+                    top--;
+                    continue;
+                case PAREN_FRAME:
+                    eat(RPAREN);
+                    top--;
+                    continue;
+                case CALL_FRAME:
+                    frame.arguments.add(operand);
+                    if (tryEat(COMMA)) {
+                        climbFrame(++top, OR_PRECEDENCE);
+                        needOperand = true;
+                    } else {
+                        eat(RPAREN);
+                        operand = new FunctionApplication(
+                            frame.function,
+                            frame.arguments
+                        );
+                        top--;
+                    }
+                    continue;
+                default:
+                    break;
+            }
+            // Climbing frame: combine with the left operand, if any, then
+            // look for the next operator that this frame may consume.
+            if (frame.accum == null) {
+                frame.accum = operand;
+            } else {
+                frame.accum = new BinOp(frame.operator, frame.accum, operand);
+                // Tighter operators have been declined by the right operand
+                frame.maxPrecedence = Math.min(
+                    frame.maxPrecedence,
+                    frame.rightPrecedence - 1
+                );
+            }
+            while (!needOperand) {
+                Operator op;
+                int precedence;
+                switch (peek()) {
+                    case OPERATOR:
+                        op = tokens.operator();
+                        precedence = op.getPrecedence();
+                        break;
+                    case KEYWORD:
+                        Keyword keyword = tokens.keyword();
+                        op = keyword.getOperator();
+                        precedence = keyword.getInfixPrecedence();
+                        break;
+                    default:
+                        op = null;
+                        precedence = 0;
+                }
+                if (
+                    precedence == 0 ||
+                    precedence < frame.minPrecedence ||
+                    precedence > frame.maxPrecedence
+                ) {
+                    break;
+                }
+                tokens.next();
+                if (precedence == IS_NULL_PRECEDENCE) {
+                    boolean not = tryEat(Keyword.NOT);
+                    eat(Keyword.NULL);
+                    frame.accum = new IsNullCheck(frame.accum, not);
+                    frame.maxPrecedence = IS_NULL_PRECEDENCE - 1;
+                } else {
+                    frame.operator = op;
+                    frame.rightPrecedence =
+                        op.isRightAssociative()
+                        ? precedence
+                        : precedence + 1;
+                    climbFrame(++top, frame.rightPrecedence);
+                    needOperand = true;
+                }
+            }
+            if (!needOperand) {
+                operand = frame.accum;
+                if (top == 0) {
+                    return operand;
+                }
+                top--;
+            }
         }
-        return conjuncts.stream().reduce(BinOp.partial("AND")).get();
     }
 
-    private Expression conjunct() throws ParseException {
-        if (tryEat(KEYWORD, "NOT").isPresent()) {
-            return new UnOp("NOT", conjunct());
-        } else {
-            return isNullCheck();
+    /**
+     * Prepares the frame at the specified depth of the expression stack
+     * for reuse, growing the stack if necessary.
+     */
+    private Frame frame(int index, int kind) {
+        if (index == frames.length) {
+            frames = Arrays.copyOf(frames, 2 * index);
         }
-    }
-
-    private Expression isNullCheck() throws ParseException {
-        Expression leftPart = comparison();
-        if (tryEat(KEYWORD, "IS").isPresent()) {
-            boolean not = tryEat(KEYWORD, "NOT").isPresent();
-            eat(KEYWORD, "NULL");
-            return new IsNullCheck(leftPart, not);
-        } else {
-            return leftPart;
+        Frame frame = frames[index];
+        if (frame == null) {
+            frame = new Frame();
+            frames[index] = frame;
         }
+        frame.kind = kind;
+        return frame;
     }
 
-    private Expression comparison() throws ParseException {
-        Expression accum = comparable();
-        while (true) {
-            Optional<Token> opTok = tryEat(OPERATOR, COMPARISON_OPS::contains);
-            if (opTok.isPresent()) {
-                Expression right = comparable();
-                accum = new BinOp(opTok.get().getString(), accum, right);
-            } else {
-                return accum;
-            }
-        }
+    /** Prepares a climbing frame for an expression without operands. */
+    private void climbFrame(int index, int minPrecedence) {
+        Frame frame = frame(index, CLIMB_FRAME);
+        frame.minPrecedence = minPrecedence;
+        frame.maxPrecedence = ARITH_HIGH_PRECEDENCE;
+        frame.accum = null;
     }
 
-    private Expression comparable() throws ParseException {
-        Expression accum = term();
-
-        while (true) {
-            Optional<Token> opToken = tryEat(OPERATOR, ARITH_LOW_OPS::contains);
-
-            if (opToken.isPresent()) {
-                Expression right = term();
-                accum = new BinOp(opToken.get().getString(), accum, right);
-            } else {
-                return accum;
+    /**
+     * Parses the rows of a <code>VALUES</code> clause. The first row
+     * determines the width, all further rows must have the same width.
+     */
+    private RowBlock rows() throws ParseException {
+        RowBlock rows = new RowBlock();
+        eat(LPAREN);
+        if (!tryEat(RPAREN)) {
+            // nonempty first row
+            rowValue(rows);
+            while (tryEat(COMMA)) {
+                rowValue(rows);
             }
+            eat(RPAREN);
         }
-    }
-
-    private Expression term() throws ParseException {
-        // TODO: duplication with `comparable`
-        Expression accum = factor();
-        while (true) {
-            Optional<Token> opTok = tryEat(OPERATOR, ARITH_HIGH_OPS::contains);
-            if (opTok.isPresent()) {
-                Expression right = term();
-                accum = new BinOp(opTok.get().getString(), accum, right);
-            } else {
-                return accum;
+        rows.endRow();
+        while (tryEat(COMMA)) {
+            eat(LPAREN);
+            for (int c = 0; c < rows.width(); c++) {
+                if (c > 0) {
+                    eat(COMMA);
+                }
+                rowValue(rows);
             }
+            eat(RPAREN);
+            rows.endRow();
         }
+        return rows;
     }
 
-    private Expression factor() throws ParseException {
-        Token t = peek();
-        switch (t.getTokenType()) {
-            case IDENTIFIER:
-                return functionOrColumn();
-            case LPAREN:
-                return parenthesizedExpression();
-            case OPERATOR:
-                switch (t.getString()) {
-                    case "+":
-                        eat(OPERATOR, "+");
-                        return new UnOp("+", factor());
-                    case "-":
-                        eat(OPERATOR, "-");
-                        return new UnOp("-", factor());
-                    default: return error(
-                        t.getPosition(),
-                        "Invalid operator at start of a factor: " +
-                        "`" + t.getString() + "`"
+    /**
+     * Parses a value of a row. Literals are consumed right away, and are
+     * stored directly unless they turn out to be the first operand of a
+     * larger expression, which is then parsed as usual.
+     */
+    private void rowValue(RowBlock rows) throws ParseException {
+        switch (peek()) {
+            case NUMBER:
+                long value = tokens.value();
+                tokens.next();
+                if (peek() == COMMA || peek() == RPAREN) {
+                    rows.addNumber(value);
+                } else {
+                    rows.add(
+                        expression(OR_PRECEDENCE, new NumConstant(value))
                     );
                 }
-            case NUMBER:
-                eat();
-                return new NumConstant(Long.parseLong(t.getString()));
+                break;
             case STRING:
-                eat();
-                return new StringConstant(t.getString());
-            default: return error(
-                t.getPosition(),
-                "Invalid token type at start of a factor: " +
-                "`" + t.getString() + "`"
-            );
-        }
-    }
-
-    private Expression functionOrColumn() throws ParseException {
-        String id = eat(IDENTIFIER).getString();
-        if (tryPeek(LPAREN).isPresent()) {
-            // That looks like a function invocation
-            List<Expression> args = tuple();
-            return new FunctionApplication(id, args);
-        } else {
-            // That's just an isolated identifier, looks like column name
-            return new Identifier(id);
-        }
-    }
-
-    private List<Expression> tuple() throws ParseException {
-        eat(LPAREN);
-        if (tryEat(RPAREN).isPresent()) {
-            // empty tuple
-            return new LinkedList<>();
-        } else {
-            // must be a nonempty tuple
-            List<Expression> components = commaSeparatedExpressions();
-            eat(RPAREN);
-            return components;
+                String lexeme = eat();
+                if (peek() == COMMA || peek() == RPAREN) {
+                    rows.addString(lexeme);
+                } else {
+                    rows.add(
+                        expression(OR_PRECEDENCE, new StringConstant(lexeme))
+                    );
+                }
+                break;
+            default:
+                rows.add(expression());
         }
     }
 
     private List<Expression> commaSeparatedExpressions() throws ParseException {
         LinkedList<Expression> components = new LinkedList<>();
         components.add(expression());
-        while (tryEat(COMMA).isPresent()) {
+        while (tryEat(COMMA)) {
             components.add(expression());
         }
         return components;
     }
 
-    private Expression parenthesizedExpression() throws ParseException {
-        eat(LPAREN);
-        Expression res = expression();
-        eat(RPAREN);
-        return res;
-    }
-
     private TableId tableId() throws ParseException {
-        String firstPart = eat(IDENTIFIER).getString();
-        if (tryEat(PERIOD).isPresent()) {
+        String firstPart = identifier();
+        if (tryEat(PERIOD)) {
             // The first part was only the database. There must be a
             // second part with the actual table name
-            String secondPart = eat(IDENTIFIER).getString();
+            String secondPart = identifier();
             return new TableId(Optional.of(firstPart), secondPart);
         } else {
             // It's only table name, no database prefix
@@ -454,26 +613,26 @@ public final class SqlParser {
     }
 
     private Select select() throws ParseException {
-        eat(KEYWORD, "SELECT");
+        eat(Keyword.SELECT);
         List<Expression> selectList = commaSeparatedExpressions();
 
         // WONTFIX: <code>map</code> doesn't work because of exceptions.
         // Fall back to ternary operator: it doesn't care whether the
         // operands can throw exceptions or not.
         Optional<TableId> fromTableId =
-            tryEat(KEYWORD, "FROM").isPresent() ?
+            tryEat(Keyword.FROM) ?
             Optional.of(tableId()) :
             Optional.empty();
 
         Optional<Expression> whereCondition =
-            tryEat(KEYWORD, "WHERE").isPresent() ?
+            tryEat(Keyword.WHERE) ?
             Optional.of(expression()) :
             Optional.empty();
 
 
         Optional<Expression> orderBy = Optional.empty();
-        if (tryEat(KEYWORD, "ORDER").isPresent()) {
-            eat(KEYWORD, "BY");
+        if (tryEat(Keyword.ORDER)) {
+            eat(Keyword.BY);
             orderBy = Optional.of(expression());
         }
 
@@ -483,33 +642,33 @@ public final class SqlParser {
     }
 
     private Insert insert() throws ParseException {
-        eat(KEYWORD, "INSERT");
-        eat(KEYWORD, "INTO");
+        eat(Keyword.INSERT);
+        eat(Keyword.INTO);
         TableId intoTable = tableId();
         eat(LPAREN);
         List<String> columns = columnList();
         eat(RPAREN);
-        eat(KEYWORD, "VALUES");
-        List<Expression> values = tuple();
+        eat(Keyword.VALUES);
+        RowBlock rows = rows();
         eat(SEMICOLON);
 
-        return new Insert(intoTable, columns, values);
+        return new Insert(intoTable, columns, rows);
     }
 
     private List<String> columnList() throws ParseException {
         LinkedList<String> columns = new LinkedList<>();
-        columns.add(eat(IDENTIFIER).getString());
-        while (tryEat(COMMA).isPresent()) {
-            columns.add(eat(IDENTIFIER).getString());
+        columns.add(identifier());
+        while (tryEat(COMMA)) {
+            columns.add(identifier());
         }
         return columns;
     }
 
     private Delete delete() throws ParseException {
-        eat(KEYWORD, "DELETE");
-        eat(KEYWORD, "FROM");
+        eat(Keyword.DELETE);
+        eat(Keyword.FROM);
         TableId fromTable = tableId();
-        eat(KEYWORD, "WHERE");
+        eat(Keyword.WHERE);
         Expression whereCondition = expression();
         eat(SEMICOLON);
 
@@ -526,8 +685,212 @@ public final class SqlParser {
      *         otherwise a <code>Left</code> with a lits of errors.
      */
     public static Either<List<ErrorMessage>, List<Statement>> parse(
-        ArrayList<Token> tokens
+        TokenBuffer tokens
+    ) {
+        return parse(tokens, new SymbolTable());
+    }
+
+    /**
+     * Same as <code>parse(TokenBuffer)</code>, but takes the identifiers
+     * from the symbol table of a session, so that all statements parsed in
+     * the same session share the same identifier instances.
+     *
+     * @param tokens tokens generated by the tokenizer, with a special EOF token
+     *               in the end.
+     * @param symbols symbol table of the session.
+     * @return a <code>Right</code> with the forest in case of success,
+     *         otherwise a <code>Left</code> with a lits of errors.
+     */
+    public static Either<List<ErrorMessage>, List<Statement>> parse(
+        TokenBuffer tokens,
+        SymbolTable symbols
+    ) {
+        return parseAll(tokens.cursor(), symbols);
+    }
+
+    /**
+     * Same as <code>parse(TokenBuffer, SymbolTable)</code>, but parses
+     * ranges of statements in parallel.
+     *
+     * The tokens are split after semicolons, where the panic-mode recovery
+     * would resynchronize anyway, so that every statement is parsed
+     * exactly as by the sequential parser. The ranges are parsed by the
+     * tasks of the <code>pool</code>, and the statements and errors are
+     * merged in the order of the input.
+     *
+     * @param tokens tokens generated by the tokenizer, with a special EOF token
+     *               in the end.
+     * @param symbols symbol table of the session, shared by all tasks.
+     * @param pool runs the parsing of the ranges.
+     * @return a <code>Right</code> with the forest in case of success,
+     *         otherwise a <code>Left</code> with a lits of errors.
+     */
+    public static Either<List<ErrorMessage>, List<Statement>> parse(
+        TokenBuffer tokens,
+        SymbolTable symbols,
+        ForkJoinPool pool
+    ) {
+        int rangeLength = Math.max(
+            MIN_RANGE_LENGTH,
+            tokens.size() / (4 * pool.getParallelism())
+        );
+        return parse(tokens, symbols, pool, rangeLength);
+    }
+
+    /**
+     * Parses ranges of statements in parallel, see
+     * <code>parse(TokenBuffer, SymbolTable, ForkJoinPool)</code>.
+     *
+     * @param tokens tokens generated by the tokenizer, with a special EOF token
+     *               in the end.
+     * @param symbols symbol table of the session, shared by all tasks.
+     * @param pool runs the parsing of the ranges.
+     * @param minRangeLength minimal number of tokens per range.
+     * @return a <code>Right</code> with the forest in case of success,
+     *         otherwise a <code>Left</code> with a lits of errors.
+     */
+    static Either<List<ErrorMessage>, List<Statement>> parse(
+        TokenBuffer tokens,
+        SymbolTable symbols,
+        ForkJoinPool pool,
+        int minRangeLength
+    ) {
+        ArrayList<ForkJoinTask<Either<List<ErrorMessage>, List<Statement>>>>
+            tasks = new ArrayList<>();
+        int eof = tokens.size() - 1;
+        int from = 0;
+        for (int i = 0; i < eof; i++) {
+            if (tokens.type(i) == SEMICOLON && i + 1 - from >= minRangeLength) {
+                final TokenSource range = tokens.cursor(from, i + 1);
+                tasks.add(pool.submit(() -> parseAll(range, symbols)));
+                from = i + 1;
+            }
+        }
+        final TokenSource lastRange = tokens.cursor(from, eof);
+        tasks.add(pool.submit(() -> parseAll(lastRange, symbols)));
+
+        LinkedList<Statement> statements = new LinkedList<>();
+        LinkedList<ErrorMessage> errors = new LinkedList<>();
+        for (ForkJoinTask<Either<List<ErrorMessage>, List<Statement>>> task:
+            tasks
+        ) {
+            Either<List<ErrorMessage>, List<Statement>> res = task.join();
+            if (res.isLeft()) {
+                errors.addAll(res.getLeft());
+            } else {
+                statements.addAll(res.get());
+            }
+        }
+        if (errors.isEmpty()) {
+            return Either.right(statements);
+        } else {
+            return Either.left(errors);
+        }
+    }
+
+    /** Collects all statements of a token source. */
+    private static Either<List<ErrorMessage>, List<Statement>> parseAll(
+        TokenSource tokens,
+        SymbolTable symbols
     ) {
-        return new SqlParser(tokens).parse();
+        LinkedList<Statement> result = new LinkedList<>();
+        List<ErrorMessage> errors =
+            new SqlParser(tokens, symbols).parse(result::add);
+        if (errors.isEmpty()) {
+            return Either.right(result);
+        } else {
+            return Either.left(errors);
+        }
+    }
+
+    /**
+     * Parses the statements from a token source, passing each statement
+     * to the sink as soon as its terminating semicolon has been consumed.
+     *
+     * If the source reports lexical errors, then only the lexical errors
+     * are returned, and no statements are passed to the sink after the
+     * first lexical error. Statements that precede the first lexical
+     * error may have been passed to the sink already.
+     *
+     * @param tokens token source, with a special EOF token in the end.
+     * @param sink receives the successfully parsed statements.
+     * @return list of lexical or syntax errors, empty in case of success.
+     */
+    public static List<ErrorMessage> parse(
+        TokenSource tokens,
+        Consumer<Statement> sink
+    ) {
+        return parse(tokens, new SymbolTable(), sink);
+    }
+
+    /**
+     * Same as <code>parse(TokenSource, Consumer)</code>, but takes the
+     * identifiers from the symbol table of a session.
+     *
+     * @param tokens token source, with a special EOF token in the end.
+     * @param symbols symbol table of the session.
+     * @param sink receives the successfully parsed statements.
+     * @return list of lexical or syntax errors, empty in case of success.
+     */
+    public static List<ErrorMessage> parse(
+        TokenSource tokens,
+        SymbolTable symbols,
+        Consumer<Statement> sink
+    ) {
+        return new SqlParser(tokens, symbols).parse(sink);
+    }
+
+    /**
+     * Tokenizes and parses a character stream in a single pass.
+     *
+     * The tokenizer runs only as far ahead as the parser needs, no list of
+     * tokens is ever built. Statements are passed to the sink as soon as
+     * their terminating semicolon has been scanned, the memory consumption
+     * does not depend on the length of the input (apart from whatever
+     * the sink retains). The errors are the same as with separate
+     * tokenization and parsing, see <code>parse(TokenSource, Consumer)</code>
+     * for the details about statements that precede lexical errors.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the stream to be parsed, not closed by this method.
+     * @param sink receives the successfully parsed statements.
+     * @return list of lexical or syntax errors, empty in case of success.
+     * @throws IOException if reading from the input fails.
+     */
+    public static List<ErrorMessage> parse(
+        String inputDescription,
+        Reader input,
+        Consumer<Statement> sink
+    ) throws IOException {
+        TokenSource tokens = SqlTokenizer.tokenSource(
+            inputDescription,
+            input,
+            SqlTokenizer.DEFAULT_BUFFER_SIZE
+        );
+        try {
+            return parse(tokens, sink);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Same as <code>parse(String, Reader, Consumer)</code>, decodes the
+     * bytes from the channel as UTF-8, malformed input is replaced.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input UTF-8 encoded input, not closed by this method.
+     * @param sink receives the successfully parsed statements.
+     * @return list of lexical or syntax errors, empty in case of success.
+     * @throws IOException if reading from the input fails.
+     */
+    public static List<ErrorMessage> parse(
+        String inputDescription,
+        ReadableByteChannel input,
+        Consumer<Statement> sink
+    ) throws IOException {
+        return parse(inputDescription, SqlTokenizer.utf8Reader(input), sink);
     }
 }
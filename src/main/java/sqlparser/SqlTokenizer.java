@@ -1,7 +1,20 @@
 package sqlparser;
 
 import io.vavr.control.Either;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import static sqlparser.Constants.*;
 import static sqlparser.Token.Type.*;
@@ -14,24 +27,48 @@ import static sqlparser.Token.Type;
  */
 public final class SqlTokenizer {
 
-    /**
-     * States of a simple DFA that is run during the <code>tokenize</code>
-     * method invocation.
-     */
-    private static enum State {
-        DEFAULT,
-        SCAN_ID,
-        SCAN_NUM,
-        SCAN_STR,
-        SCAN_STR_ESCAPE,
-        SCAN_OP
+    /** Default size of the character buffer used for streaming input. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** Minimal number of characters per chunk when tokenizing in parallel. */
+    private static final int MIN_CHUNK_LENGTH = 1 << 16;
+
+    /** Token types of the punctuation, indexed by character class. */
+    private static final Type[] PUNCTUATION_TYPES =
+        new Type[TokenizerDfa.NUM_CLASSES];
+
+    static {
+        PUNCTUATION_TYPES[TokenizerDfa.LPAREN] = LPAREN;
+        PUNCTUATION_TYPES[TokenizerDfa.RPAREN] = RPAREN;
+        PUNCTUATION_TYPES[TokenizerDfa.COMMA] = COMMA;
+        PUNCTUATION_TYPES[TokenizerDfa.PERIOD] = PERIOD;
+        PUNCTUATION_TYPES[TokenizerDfa.SEMICOLON] = SEMICOLON;
+        PUNCTUATION_TYPES[TokenizerDfa.QUESTION_MARK] = PARAMETER;
     }
 
     /** Source file path (for emitting better error-messages). */
     private final String sourceFilePath;
 
-    /** The entire input that is to be tokenized. */
-    private final String input;
+    /**
+     * The input that is to be tokenized. Either the entire input, or a
+     * sliding window over a stream (see <code>window</code>).
+     */
+    private CharSequence input;
+
+    /**
+     * Sliding window over streamed input, <code>null</code> if the entire
+     * input is available in memory.
+     */
+    private final SlidingCharBuffer window;
+
+    /**
+     * Whether the input consists of UTF-8 encoded bytes, see
+     * <code>Utf8Bytes</code>. Such input is always entirely in memory.
+     */
+    private final boolean utf8;
+
+    /** Number of currently available input characters. */
+    private int n;
 
     /** Start of the currently scanned token. */
     private int tokenStart = 0;
@@ -45,11 +82,29 @@ public final class SqlTokenizer {
     /** Position of last line break, for columns in error messages. */
     private int lastLineBreakPos = -1;
 
-    /** State of the DFA. */
-    private State state = State.DEFAULT;
+    /** State of the DFA, see <code>TokenizerDfa</code>. */
+    private int state = TokenizerDfa.DEFAULT;
 
-    /** Scanned tokens. */
-    private ArrayList<Token> result = new ArrayList<>();
+    /**
+     * Whether all characters that have been scanned since the last
+     * identifier-like token are ASCII characters.
+     */
+    private boolean ascii = true;
+
+    /** Collects the scanned tokens, unless a <code>sink</code> is set. */
+    private final TokenBuffer buffer;
+
+    /** Receives materialized tokens, <code>null</code> if buffered. */
+    private final Consumer<Token> sink;
+
+    /** Builds fingerprints instead of tokens, or <code>null</code>. */
+    private final Fingerprinter fingerprints;
+
+    /** Number of tokens emitted so far. */
+    private int numTokens = 0;
+
+    /** Set as soon as the <code>EOF</code> token has been emitted. */
+    private boolean finished = false;
 
     /** Occurred errors. */
     private LinkedList<ErrorMessage> errors = new LinkedList<>();
@@ -57,24 +112,153 @@ public final class SqlTokenizer {
     /**
      * Sets up a fresh DFA and result / error buffers.
      *
+     * Exactly one of <code>buffer</code>, <code>sink</code> and
+     * <code>fingerprints</code> must be non-<code>null</code>.
+     *
      * @param sourceFilePath path of the input file (used for error messages).
      * @param input the input to be parsed.
+     * @param window initially empty window over the input stream, same as
+     *               <code>input</code>, or <code>null</code> if the entire
+     *               input is in memory.
+     * @param buffer collects the scanned tokens.
+     * @param sink receives the scanned tokens.
+     * @param fingerprints builds the fingerprints of the statements.
      */
-    private SqlTokenizer(String sourceFilePath, String input) {
+    private SqlTokenizer(
+        String sourceFilePath,
+        CharSequence input,
+        SlidingCharBuffer window,
+        TokenBuffer buffer,
+        Consumer<Token> sink,
+        Fingerprinter fingerprints
+    ) {
         this.sourceFilePath = sourceFilePath;
         this.input = input;
+        this.window = window;
+        this.utf8 = input instanceof Utf8Bytes;
+        this.n = window == null ? input.length() : 0;
+        this.buffer = buffer;
+        this.sink = sink;
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Attempts to make more input available by sliding the window.
+     *
+     * Everything before the start of the current token is discarded,
+     * all indices are shifted accordingly.
+     *
+     * @return <code>true</code> if there is at least one more character
+     *         at the current position, <code>false</code> at the end of
+     *         input.
+     */
+    private boolean refill() {
+        if (window == null) {
+            return false;
+        }
+        try {
+            int dropped = window.slide(tokenStart);
+            tokenStart -= dropped;
+            pos -= dropped;
+            lastLineBreakPos -= dropped;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        n = window.length();
+        return pos < n;
+    }
+
+    /** Extracts the lexeme of the currently scanned token. */
+    private String currentLexeme() {
+        return input.subSequence(tokenStart, pos).toString();
+    }
+
+    /**
+     * Extracts the character at the current position. For UTF-8 input,
+     * decodes the entire sequence that starts at the current byte.
+     */
+    private String currentCharacter() {
+        int end = pos + 1;
+        if (utf8) {
+            while (end < n && (input.charAt(end) & 0xC0) == 0x80) {
+                end++;
+            }
+        }
+        return input.subSequence(pos, end).toString();
+    }
+
+    /**
+     * Computes the one-based column of an offset in the current line,
+     * in characters, even if the offsets are byte offsets.
+     */
+    private int column(int offset) {
+        return Utf8Bytes.charCount(input, lastLineBreakPos + 1, offset) + 1;
     }
 
     private Position currentPosition() {
-        return Position.of(sourceFilePath, 1 + lineIdx, pos - lastLineBreakPos);
+        return Position.of(sourceFilePath, 1 + lineIdx, column(pos));
     }
 
     private Position currentTokenStartPosition() {
-        return Position.of(
-            sourceFilePath,
-            1 + lineIdx,
-            tokenStart - lastLineBreakPos
-        );
+        return Position.of(sourceFilePath, 1 + lineIdx, column(tokenStart));
+    }
+
+    /**
+     * Passes the currently scanned token either to the buffer, to the
+     * fingerprints, or, as a materialized token, to the sink.
+     */
+    private void emit(Type t) {
+        emit(t, 0);
+    }
+
+    /**
+     * Same as <code>emit(Type)</code>, with the numeric value of a
+     * <code>NUMBER</code> token, or the ordinal of the keyword or the
+     * operator of a <code>KEYWORD</code> or an <code>OPERATOR</code>
+     * token.
+     */
+    private void emit(Type t, long value) {
+        if (buffer != null) {
+            buffer.add(
+                t,
+                input,
+                tokenStart,
+                pos,
+                1 + lineIdx,
+                tokenStart - lastLineBreakPos,
+                value
+            );
+        } else if (fingerprints != null) {
+            fingerprints.add(t, input, tokenStart, pos, value);
+        } else {
+            sink.accept(currentToken(t, value));
+        }
+        numTokens++;
+    }
+
+    /**
+     * Materializes the currently scanned token, see
+     * <code>emit(Type, long)</code>. Kept out of <code>emit</code>, so that
+     * the paths of the buffer and of the fingerprints stay small enough to
+     * be inlined.
+     */
+    private Token currentToken(Type t, long value) {
+        if (t == NUMBER) {
+            Position position = currentTokenStartPosition();
+            return Token.number(currentLexeme(), position, value);
+        } else if (t == KEYWORD) {
+            return Token.keyword(
+                Keyword.byOrdinal((int) value),
+                currentTokenStartPosition()
+            );
+        } else if (t == OPERATOR) {
+            return Token.operator(
+                Operator.byOrdinal((int) value),
+                currentTokenStartPosition()
+            );
+        } else {
+            return Token.of(t, currentLexeme(), currentTokenStartPosition());
+        }
     }
 
     /**
@@ -83,17 +267,21 @@ public final class SqlTokenizer {
      *
      * Recognizes keywords, converts them into special keyword-tokens.
      * The exact string values of the keywords are not preserved, keywords
-     * are all converted into upper case.
+     * are all converted into upper case. The keywords are recognized
+     * directly in the input, without extracting the lexeme.
      */
     private void addIdentifierLikeToken() {
-        String str = input.substring(tokenStart, pos);
-        String strUpper = str.toUpperCase();
-        Token tok =
-            RESERVED_KEYWORDS.contains(strUpper) ?
-            Token.of(KEYWORD, strUpper, currentTokenStartPosition()) :
-            Token.of(IDENTIFIER, str, currentTokenStartPosition());
-        result.add(tok);
+        Keyword keyword =
+            ascii ?
+            KeywordTable.lookupAscii(input, tokenStart, pos) :
+            KeywordTable.lookup(input, tokenStart, pos);
+        if (keyword != null) {
+            emit(KEYWORD, keyword.ordinal());
+        } else {
+            emit(IDENTIFIER);
+        }
         tokenStart = pos;
+        ascii = true;
     }
 
     /**
@@ -102,27 +290,42 @@ public final class SqlTokenizer {
      * case that the scanned substring is not a valid operator.
      */
     private void addOperatorToken() {
-        String str = input.substring(tokenStart, pos);
-        if (ALL_OPS.contains(str)) {
-            result.add(Token.of(OPERATOR, str, currentTokenStartPosition()));
+        Operator op = TokenizerDfa.operator(input, tokenStart, pos);
+        if (op != null) {
+            emit(OPERATOR, op.ordinal());
         } else {
-            addErrorMessageAtToken("Invalid operator: `" + str + "`");
+            addErrorMessageAtToken(
+                "Invalid operator: `" + currentLexeme() + "`"
+            );
         }
     }
 
     /**
      * Attempts to add a number token.
      *
-     * Emits error if the number is too large.
+     * Computes the value of the number directly from the input, and
+     * emits error if the number does not fit into a <code>long</code>.
      */
     private void addNumberToken() {
-        String str = input.substring(tokenStart, pos);
-        try {
-            long value = Long.parseLong(str);
-            result.add(Token.of(NUMBER, str, currentTokenStartPosition()));
-        } catch (NumberFormatException e) {
-            addErrorMessageAtToken("Number too long: `" + str + "`");
+        long value = 0;
+        for (int i = tokenStart; i < pos; i++) {
+            char c = input.charAt(i);
+            int digit =
+                c >= '0' && c <= '9' ?
+                c - '0' :
+                Character.digit(c, 10);
+            if (
+                value > Long.MAX_VALUE / 10 ||
+                (value == Long.MAX_VALUE / 10 && digit > Long.MAX_VALUE % 10)
+            ) {
+                addErrorMessageAtToken(
+                    "Number too long: `" + currentLexeme() + "`"
+                );
+                return;
+            }
+            value = value * 10 + digit;
         }
+        emit(NUMBER, value);
     }
 
     /**
@@ -130,8 +333,7 @@ public final class SqlTokenizer {
      * start to current index.
      */
     private void addTokenOfType(Type t) {
-        String str = input.substring(tokenStart, pos);
-        result.add(Token.of(t, str, currentTokenStartPosition()));
+        emit(t);
         tokenStart = pos;
     }
 
@@ -146,139 +348,139 @@ public final class SqlTokenizer {
     }
 
     /**
-     * Runs the DFA on the input.
+     * Runs the DFA on the entire input.
      * 
      * After calling this method, the behavior of this DFA is undefined,
      * do not use it again.
      */
-    private Either<List<ErrorMessage>, ArrayList<Token>> tokenize() {
-        int n = input.length();
-        while (pos < n) {
-            char c = input.charAt(pos);
-            switch (state) {
-                case DEFAULT:
-                    tokenStart = pos;
-                    if (Character.isWhitespace(c)) {
-                        if (c == '\n') {
-                            lastLineBreakPos = pos;
-                            lineIdx++;
-                        }
-                        pos++;
-                        /* Stay in DEFAULT */
-                    } else if (Character.isJavaIdentifierStart(c)) {
-                        pos++;
-                        state = State.SCAN_ID;
-                    } else if (Character.isDigit(c)) {
-                        pos++;
-                        state = State.SCAN_NUM;
-                    } else if (c == '"') {
-                        pos++;
-                        state = State.SCAN_STR;
-                    } else if (OP_CHARS.contains(c)) {
-                        pos++;
-                        state = State.SCAN_OP;
-                    } else if (c == '(') {
-                        pos++;
-                        addTokenOfType(LPAREN);
-                        /* Stay in DEFAULT */
-                    } else if (c == ')') {
-                        pos++;
-                        addTokenOfType(RPAREN);
-                        /* Stay in DEFAULT */
-                    } else if (c == ',') {
-                        pos++;
-                        addTokenOfType(COMMA);
-                        /* Stay in DEFAULT */
-                    } else if (c == '.') {
-                        pos++;
-                        addTokenOfType(PERIOD);
-                        /* Stay in DEFAULT */
-                    } else if (c == ';') {
-                        pos++;
-                        addTokenOfType(SEMICOLON);
-                        /* Stay in DEFAULT */
-                    } else {
-                        pos++;
-                        addErrorMessageAtToken("Invalid token: `" + c + "`");
-                    }
+    private List<ErrorMessage> tokenize() {
+        run(Integer.MAX_VALUE);
+        return errors;
+    }
+
+    /**
+     * Runs the DFA until the total number of emitted tokens reaches the
+     * specified limit, or until the end of the input, whichever comes
+     * first. Can be invoked repeatedly, the DFA continues where it
+     * stopped. At the end of the input, emits the <code>EOF</code> token,
+     * later invocations do nothing.
+     *
+     * @param tokenLimit number of tokens after which the DFA pauses.
+     */
+    private void run(int tokenLimit) {
+        while (numTokens < tokenLimit && (pos < n || refill())) {
+            // Consumes the characters that merely advance the DFA in a
+            // tight loop, on local copies of the fields, stops at the
+            // first character that requires an action
+            CharSequence in = input;
+            boolean bytes = utf8;
+            int end = n;
+            int p = pos;
+            int s = state;
+            int start = tokenStart;
+            char c = 0;
+            int characterClass = 0;
+            int transition = 0;
+            do {
+                c = in.charAt(p);
+                if (s == TokenizerDfa.DEFAULT) {
+                    start = p;
+                }
+                if (TokenizerDfa.loops(s, c)) {
+                    p++;
+                    continue;
+                } else if (c >= 128) {
+                    ascii = false;
+                }
+                characterClass =
+                    bytes ?
+                    TokenizerDfa.byteClass(c) :
+                    TokenizerDfa.characterClass(c);
+                transition = TokenizerDfa.transition(s, characterClass);
+                if (TokenizerDfa.action(transition) != TokenizerDfa.ADVANCE) {
                     break;
-                case SCAN_ID:
-                    if (Character.isJavaIdentifierPart(c)) {
-                        pos++;
-                        /* Stay in SCAN_ID */
-                    } else {
-                        addIdentifierLikeToken();
-                        /* Don't advance pos */
-                        state = State.DEFAULT;
+                }
+                s = TokenizerDfa.nextState(transition);
+                p++;
+            } while (p < end);
+            pos = p;
+            state = s;
+            tokenStart = start;
+            if (p == end) {
+                // Refills the window, or finishes
+                continue;
+            }
+            switch (TokenizerDfa.action(transition)) {
+                case TokenizerDfa.LINE_BREAK:
+                    lastLineBreakPos = pos;
+                    lineIdx++;
+                    if (buffer != null) {
+                        buffer.addLineStart(pos + 1);
                     }
+                    pos++;
                     break;
-                case SCAN_NUM:
-                    if (Character.isDigit(c)) {
-                        pos++;
-                    } else if (Character.isJavaIdentifierPart(c)) {
-                        addErrorMessageAtChar(
-                            "Number lumped together with identifier characters"
-                        );
-                        state = State.DEFAULT;
-                    } else {
-                        addNumberToken();
-                        /* Don't advance pos */
-                        state = State.DEFAULT;
-                    }
+                case TokenizerDfa.PUNCTUATION:
+                    pos++;
+                    addTokenOfType(PUNCTUATION_TYPES[characterClass]);
                     break;
-                case SCAN_STR:
-                    if (c == '"') {
-                        pos++;
-                        addTokenOfType(STRING);
-                        state = State.DEFAULT;
-                    } else if (c == '\\') {
-                        pos++;
-                        state = State.SCAN_STR_ESCAPE;
-                    } else if (c == '\r' || c == '\n') {
-                        addErrorMessageAtChar(
-                            "Multiline strings not supported"
-                        );
-                        state = State.DEFAULT;
-                    } else {
-                        pos++;
-                        /* Stay in State.SCAN_STR */
-                    }
+                case TokenizerDfa.INVALID_CHAR:
+                    pos++;
+                    addErrorMessageAtToken("Invalid token: `" + c + "`");
                     break;
-                case SCAN_STR_ESCAPE:
-                    if (
-                        c == '"' || c == 'n' || c == 'r' ||
-                        c == 'b' || c == 'f' || c == '\\'
-                    ) {
-                        /* valid. proceed. */
-                        pos++;
-                        state = State.SCAN_STR;
-                    } else {
-                        addErrorMessageAtChar(
-                            "Invalid escape sequence: \\" + c
-                        );
-                        pos++;
-                        state = State.SCAN_STR;
-                    }
+                case TokenizerDfa.END_IDENTIFIER:
+                    addIdentifierLikeToken();
                     break;
-                case SCAN_OP:
-                    if (OP_CHARS.contains(c)) {
-                        pos++;
-                        /* Stay in SCAN_OP */
-                    } else {
-                        addOperatorToken();
-                        state = State.DEFAULT;
-                    }
+                case TokenizerDfa.END_NUMBER:
+                    addNumberToken();
+                    break;
+                case TokenizerDfa.NUMBER_LUMPED:
+                    addErrorMessageAtChar(
+                        "Number lumped together with identifier characters"
+                    );
+                    break;
+                case TokenizerDfa.END_STRING:
+                    pos++;
+                    addTokenOfType(STRING);
+                    break;
+                case TokenizerDfa.MULTILINE_STRING:
+                    addErrorMessageAtChar("Multiline strings not supported");
+                    break;
+                case TokenizerDfa.INVALID_ESCAPE:
+                    addErrorMessageAtChar(
+                        "Invalid escape sequence: \\" + currentCharacter()
+                    );
+                    pos++;
                     break;
+                case TokenizerDfa.END_OPERATOR:
+                    addOperatorToken();
+                    break;
+                ///CLOVER:OFF
+                default: throw new AssertionError(
+                    "invalid transition: " + transition
+                );
+                ///CLOVER:ON
             }
+            state = TokenizerDfa.nextState(transition);
+        }
+        if (numTokens < tokenLimit && !finished) {
+            finish();
         }
+    }
 
-        // Now reached EOF
+    /**
+     * Finishes the last token at the end of the input, and emits the
+     * <code>EOF</code> token.
+     */
+    private void finish() {
         switch (state) {
-            case DEFAULT: /* do nothing. */ break;
-            case SCAN_ID: addIdentifierLikeToken(); break;
-            case SCAN_NUM: addNumberToken(); break;
-            case SCAN_STR: addErrorMessageAtChar("Unterminated string"); break;
-            case SCAN_OP: addOperatorToken(); break;
+            case TokenizerDfa.DEFAULT: /* do nothing. */ break;
+            case TokenizerDfa.SCAN_ID: addIdentifierLikeToken(); break;
+            case TokenizerDfa.SCAN_NUM: addNumberToken(); break;
+            case TokenizerDfa.SCAN_STR:
+            case TokenizerDfa.SCAN_STR_ESCAPE:
+                addErrorMessageAtChar("Unterminated string");
+                break;
+            case TokenizerDfa.SCAN_OP: addOperatorToken(); break;
             ///CLOVER:OFF
             default: throw new AssertionError("invalid state: " + state);
             ///CLOVER:ON
@@ -287,7 +489,17 @@ public final class SqlTokenizer {
         // Attach artificial EOF token (saves line/column for error messages
         // about runaway string literals etc.)
         addTokenOfType(EOF);
+        finished = true;
+    }
 
+    /**
+     * Wraps the collected tokens (or whatever else has been collected) or
+     * the errors into an <code>Either</code>.
+     */
+    private static <T> Either<List<ErrorMessage>, T> toEither(
+        List<ErrorMessage> errors,
+        T result
+    ) {
         if (errors.isEmpty()) {
             return Either.right(result);
         } else {
@@ -302,16 +514,489 @@ public final class SqlTokenizer {
      * in case of failure, returns a <code>Left</code> with a list of errors.
      * Emits a special <code>EOF</code> token in the end.
      *
+     * The input can be any <code>CharSequence</code>, for example a
+     * <code>String</code>, or a view of a memory-mapped file.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the input to be tokenized.
+     * @return <code>Right</code> with tokens in case of success, otherwise
+     *         <code>Left</code> with a list of error messages.
+     */
+    public static Either<List<ErrorMessage>, TokenBuffer> tokenize(
+        String inputDescription,
+        CharSequence input
+    ) {
+        TokenBuffer tokens = TokenBuffer.backedByInput(inputDescription, input);
+        List<ErrorMessage> errors = new SqlTokenizer(
+            inputDescription,
+            input,
+            null,
+            tokens,
+            null,
+            null
+        ).tokenize();
+        return toEither(errors, tokens);
+    }
+
+    /**
+     * Computes the fingerprints of all statements of the input, see
+     * <code>Fingerprint</code>.
+     *
+     * The fingerprints and their hashes are built by the tokenizer itself,
+     * in a single pass over the input, no tokens and no ASTs are
+     * created. The statements are not checked for syntax errors.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the input to be fingerprinted.
+     * @return <code>Right</code> with one fingerprint per statement in
+     *         case of success, otherwise <code>Left</code> with a list of
+     *         lexical errors.
+     */
+    public static Either<List<ErrorMessage>, List<Fingerprint>> fingerprint(
+        String inputDescription,
+        CharSequence input
+    ) {
+        Fingerprinter fingerprints = new Fingerprinter();
+        List<ErrorMessage> errors = new SqlTokenizer(
+            inputDescription,
+            input,
+            null,
+            null,
+            null,
+            fingerprints
+        ).tokenize();
+        return toEither(errors, fingerprints.fingerprints());
+    }
+
+    /**
+     * Same as <code>tokenize(String, CharSequence)</code>, but scans the
+     * UTF-8 encoded bytes directly, without decoding them first. The
+     * lexemes are decoded only when they are requested from the buffer,
+     * the positions are still reported in characters.
+     *
+     * All bytes of multi-byte sequences are treated as identifier
+     * characters. This makes no difference for ASCII input, and for input
+     * with non-ASCII characters only in identifiers and string literals.
+     * Other non-ASCII characters, which are rejected by the ordinary
+     * tokenizer (or treated as whitespace or digits), end up in
+     * identifiers.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input UTF-8 encoded input, between position and limit.
+     * @return <code>Right</code> with tokens in case of success, otherwise
+     *         <code>Left</code> with a list of error messages.
+     */
+    public static Either<List<ErrorMessage>, TokenBuffer> tokenize(
+        String inputDescription,
+        ByteBuffer input
+    ) {
+        return tokenize(inputDescription, new Utf8Bytes(input));
+    }
+
+    /**
+     * Same as <code>tokenize(String, CharSequence)</code>, but tokenizes
+     * chunks of the input in parallel.
+     *
+     * The input is split after semicolons that are outside of string
+     * literals, the chunks are tokenized by the tasks of the
+     * <code>pool</code>, and the results are concatenated in order. The
+     * tokens and the errors are exactly the same as with the sequential
+     * tokenizer.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the input to be tokenized.
+     * @param pool runs the tokenization of the chunks.
+     * @return <code>Right</code> with tokens in case of success, otherwise
+     *         <code>Left</code> with a list of error messages.
+     */
+    public static Either<List<ErrorMessage>, TokenBuffer> tokenize(
+        String inputDescription,
+        String input,
+        ForkJoinPool pool
+    ) {
+        int chunkLength = Math.max(
+            MIN_CHUNK_LENGTH,
+            input.length() / (4 * pool.getParallelism())
+        );
+        return tokenize(inputDescription, input, pool, chunkLength);
+    }
+
+    /**
+     * Tokenizes chunks of the input in parallel, see
+     * <code>tokenize(String, String, ForkJoinPool)</code>.
+     *
      * @param inputDescription usually path to the file (used only for
      *                         error messages).
-     * @param input the input String to be tokenized.
+     * @param input the input to be tokenized, must support concurrent
+     *              reads.
+     * @param pool runs the tokenization of the chunks.
+     * @param minChunkLength minimal number of characters per chunk.
      * @return <code>Right</code> with tokens in case of success, otherwise
      *         <code>Left</code> with a list of error messages.
      */
-    public static Either<List<ErrorMessage>, ArrayList<Token>> tokenize(
+    static Either<List<ErrorMessage>, TokenBuffer> tokenize(
         String inputDescription,
-        String input
+        CharSequence input,
+        ForkJoinPool pool,
+        int minChunkLength
     ) {
-        return new SqlTokenizer(inputDescription, input).tokenize();
+        List<ChunkSplitter.Chunk> chunks =
+            ChunkSplitter.split(input, minChunkLength);
+        ArrayList<ForkJoinTask<SqlTokenizer>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            final ChunkSplitter.Chunk chunk = chunks.get(i);
+            final boolean last = i == chunks.size() - 1;
+            tasks.add(pool.submit(
+                () -> tokenizeChunk(inputDescription, input, chunk, last)
+            ));
+        }
+        ArrayList<TokenBuffer> parts = new ArrayList<>(tasks.size());
+        LinkedList<ErrorMessage> errors = new LinkedList<>();
+        for (ForkJoinTask<SqlTokenizer> task: tasks) {
+            SqlTokenizer dfa = task.join();
+            parts.add(dfa.buffer);
+            errors.addAll(dfa.errors);
+        }
+        return toEither(
+            errors,
+            TokenBuffer.concat(inputDescription, input, parts)
+        );
+    }
+
+    /**
+     * Runs a DFA on a single chunk of the input. The offsets of the tokens
+     * refer to the entire input, the line numbers continue where the
+     * previous chunk has stopped.
+     *
+     * @param inputDescription used only for error messages.
+     * @param input the entire input.
+     * @param chunk the range that is to be tokenized.
+     * @param last whether this is the last chunk of the input.
+     * @return the DFA with the collected tokens and errors.
+     */
+    private static SqlTokenizer tokenizeChunk(
+        String inputDescription,
+        CharSequence input,
+        ChunkSplitter.Chunk chunk,
+        boolean last
+    ) {
+        TokenBuffer tokens = TokenBuffer.backedByInput(
+            inputDescription,
+            input,
+            (chunk.getEnd() - chunk.getStart()) / TokenBuffer.CHARS_PER_TOKEN
+        );
+        SqlTokenizer dfa = new SqlTokenizer(
+            inputDescription,
+            input,
+            null,
+            tokens,
+            null,
+            null
+        );
+        dfa.tokenStart = chunk.getStart();
+        dfa.pos = chunk.getStart();
+        dfa.n = chunk.getEnd();
+        dfa.lineIdx = chunk.getLineIdx();
+        dfa.lastLineBreakPos = chunk.getLastLineBreakPos();
+        // All chunks except for the last one end with a semicolon, so that
+        // there are no pending tokens, and only the last chunk ends with
+        // the EOF token.
+        dfa.finished = !last;
+        dfa.run(Integer.MAX_VALUE);
+        return dfa;
+    }
+
+    /**
+     * Tokenizes a character stream, passing each token to the
+     * <code>sink</code> as soon as it is scanned.
+     *
+     * Only a bounded window of the input is kept in memory, its size
+     * depends on <code>bufferSize</code> and on the length of the longest
+     * token, but not on the length of the input. Emits a special
+     * <code>EOF</code> token in the end.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the stream to be tokenized, not closed by this method.
+     * @param bufferSize initial size of the character buffer.
+     * @param sink receives the scanned tokens.
+     * @return list of error messages, empty in case of success.
+     * @throws IOException if reading from the input fails.
+     */
+    public static List<ErrorMessage> tokenize(
+        String inputDescription,
+        Reader input,
+        int bufferSize,
+        Consumer<Token> sink
+    ) throws IOException {
+        SlidingCharBuffer window = new SlidingCharBuffer(input, bufferSize);
+        return tokenize(
+            new SqlTokenizer(
+                inputDescription,
+                window,
+                window,
+                null,
+                sink,
+                null
+            )
+        );
+    }
+
+    /**
+     * Same as <code>tokenize(String, Reader, int, Consumer)</code>, decodes
+     * the bytes from the channel as UTF-8, see
+     * <code>tokenize(String, ReadableByteChannel)</code>.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input UTF-8 encoded input, not closed by this method.
+     * @param bufferSize initial size of the character buffer.
+     * @param sink receives the scanned tokens.
+     * @return list of error messages, empty in case of success.
+     * @throws IOException if reading from the input fails.
+     */
+    public static List<ErrorMessage> tokenize(
+        String inputDescription,
+        ReadableByteChannel input,
+        int bufferSize,
+        Consumer<Token> sink
+    ) throws IOException {
+        return tokenize(inputDescription, utf8Reader(input), bufferSize, sink);
+    }
+
+    /**
+     * Creates a token source that scans the stream lazily, only as far as
+     * the consumer of the tokens has advanced. Neither the input nor the
+     * tokens are ever kept in memory entirely.
+     *
+     * I/O errors are reported as <code>UncheckedIOException</code>s by the
+     * methods of the returned source.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the stream to be tokenized, not closed by the source.
+     * @param bufferSize initial size of the character buffer.
+     * @return lazily populated token source.
+     */
+    public static TokenSource tokenSource(
+        String inputDescription,
+        Reader input,
+        int bufferSize
+    ) {
+        SlidingCharBuffer window = new SlidingCharBuffer(input, bufferSize);
+        return new PullSource(inputDescription, window, window);
+    }
+
+    /**
+     * Creates a token source that scans an input which is accessible
+     * as a whole, for example a memory-mapped file, as far as the consumer
+     * of the tokens has advanced. The tokens are materialized one at a
+     * time, no token buffer is built, so that the heap does not grow with
+     * the input.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the input to be tokenized.
+     * @return lazily populated token source.
+     */
+    public static TokenSource tokenSource(
+        String inputDescription,
+        CharSequence input
+    ) {
+        return new PullSource(inputDescription, input, null);
+    }
+
+    /**
+     * Same as <code>tokenSource(String, Reader, int)</code>, decodes the
+     * bytes from the channel as UTF-8, see
+     * <code>tokenize(String, ReadableByteChannel)</code>.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input UTF-8 encoded input, not closed by the source.
+     * @param bufferSize initial size of the character buffer.
+     * @return lazily populated token source.
+     */
+    public static TokenSource tokenSource(
+        String inputDescription,
+        ReadableByteChannel input,
+        int bufferSize
+    ) {
+        return tokenSource(inputDescription, utf8Reader(input), bufferSize);
+    }
+
+    /**
+     * Token source that runs a streaming DFA on demand. A token is scanned
+     * only when the consumer inspects it, so that at most one token (and
+     * the <code>EOF</code> token at the end of the input) is buffered.
+     */
+    private static final class PullSource implements TokenSource {
+
+        /** Scanned, but not yet consumed tokens. */
+        private final ArrayDeque<Token> lookahead = new ArrayDeque<>();
+
+        /** The DFA that fills the lookahead. */
+        private final SqlTokenizer dfa;
+
+        PullSource(
+            String inputDescription,
+            CharSequence input,
+            SlidingCharBuffer window
+        ) {
+            this.dfa = new SqlTokenizer(
+                inputDescription,
+                input,
+                window,
+                null,
+                lookahead::add,
+                null
+            );
+        }
+
+        /** Scans the current token, if necessary, and returns it. */
+        private Token current() {
+            if (lookahead.isEmpty()) {
+                dfa.run(dfa.numTokens + 1);
+            }
+            return lookahead.peekFirst();
+        }
+
+        @Override
+        public Type peek() {
+            return current().getTokenType();
+        }
+
+        @Override
+        public String lexeme() {
+            return current().getString();
+        }
+
+        @Override
+        public boolean lexemeEquals(String str) {
+            return current().getString().equals(str);
+        }
+
+        @Override
+        public String symbol(SymbolTable symbols) {
+            return symbols.intern(current().getString());
+        }
+
+        @Override
+        public Keyword keyword() {
+            return current().getKeyword();
+        }
+
+        @Override
+        public Operator operator() {
+            return current().getOperator();
+        }
+
+        @Override
+        public long value() {
+            return current().getValue();
+        }
+
+        @Override
+        public Position position() {
+            return current().getPosition();
+        }
+
+        @Override
+        public void next() {
+            if (current().getTokenType() != EOF) {
+                lookahead.removeFirst();
+            }
+        }
+
+        @Override
+        public List<ErrorMessage> errors() {
+            return Collections.unmodifiableList(dfa.errors);
+        }
+    }
+
+    /**
+     * Runs a DFA that reads from a stream, unwraps I/O exceptions.
+     */
+    private static List<ErrorMessage> tokenize(SqlTokenizer streamingDfa)
+    throws IOException {
+        try {
+            return streamingDfa.tokenize();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Same as <code>tokenize(String, CharSequence)</code>, but reads the
+     * input through a bounded buffer instead of requiring the entire input
+     * as single <code>String</code>. The lexemes of the tokens are copied
+     * into the returned buffer, the whitespace between them is not.
+     *
+     * The returned buffer holds all tokens, so that the memory still grows
+     * linearly with the input. Use <code>tokenSource</code> or the
+     * overload with a <code>Consumer</code> to tokenize inputs of
+     * arbitrary size.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input the stream to be tokenized, not closed by this method.
+     * @return <code>Right</code> with tokens in case of success, otherwise
+     *         <code>Left</code> with a list of error messages.
+     * @throws IOException if reading from the input fails.
+     */
+    public static Either<List<ErrorMessage>, TokenBuffer> tokenize(
+        String inputDescription,
+        Reader input
+    ) throws IOException {
+        SlidingCharBuffer window =
+            new SlidingCharBuffer(input, DEFAULT_BUFFER_SIZE);
+        TokenBuffer tokens = TokenBuffer.withArena(inputDescription);
+        List<ErrorMessage> errors = tokenize(
+            new SqlTokenizer(
+                inputDescription,
+                window,
+                window,
+                tokens,
+                null,
+                null
+            )
+        );
+        return toEither(errors, tokens);
+    }
+
+    /**
+     * Same as <code>tokenize(String, Reader)</code>, decodes the bytes
+     * from the channel as UTF-8. Malformed input is replaced, as in
+     * <code>new String(bytes, UTF_8)</code>.
+     *
+     * Like the <code>Reader</code> overload, this collects all tokens, the
+     * memory grows linearly with the input.
+     *
+     * @param inputDescription usually path to the file (used only for
+     *                         error messages).
+     * @param input UTF-8 encoded input, not closed by this method.
+     * @return <code>Right</code> with tokens in case of success, otherwise
+     *         <code>Left</code> with a list of error messages.
+     * @throws IOException if reading from the input fails.
+     */
+    public static Either<List<ErrorMessage>, TokenBuffer> tokenize(
+        String inputDescription,
+        ReadableByteChannel input
+    ) throws IOException {
+        return tokenize(inputDescription, utf8Reader(input));
+    }
+
+    /** Creates a lenient UTF-8 decoding reader on top of a channel. */
+    static Reader utf8Reader(ReadableByteChannel channel) {
+        CharsetDecoder decoder =
+            UTF_8
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return Channels.newReader(channel, decoder, -1);
     }
 }
@@ -0,0 +1,161 @@
+package sqlparser;
+
+/**
+ * Set of canonical identifier strings, shared by all statements that are
+ * parsed in the same session.
+ *
+ * Identifiers are looked up directly in a range of the input: a new
+ * <code>String</code> is created only when an identifier occurs for the
+ * first time, every later occurrence yields the very same instance. This
+ * saves memory for ASTs that repeat the same table and column names, and
+ * allows comparing interned names with <code>==</code>.
+ *
+ * The table is split into independently locked stripes, so that it can be
+ * shared by parsers that run in parallel.
+ */
+public final class SymbolTable {
+
+    /** Number of hash bits that select the stripe. */
+    private static final int STRIPE_BITS = 4;
+
+    /** Number of stripes. */
+    private static final int NUM_STRIPES = 1 << STRIPE_BITS;
+
+    /** Open-addressing hash table with linear probing. */
+    private static final class Stripe {
+
+        /** Interned strings, <code>null</code> for empty slots. */
+        private String[] slots = new String[16];
+
+        /** Hashes of the interned strings. */
+        private int[] hashes = new int[16];
+
+        /** Number of interned strings. */
+        private int size = 0;
+
+        /** Finds or inserts the string with the content of the range. */
+        String intern(CharSequence text, int start, int end, int hash) {
+            int mask = slots.length - 1;
+            int i = hash & mask;
+            for (String s = slots[i]; s != null; s = slots[i]) {
+                if (hashes[i] == hash && contentEquals(s, text, start, end)) {
+                    return s;
+                }
+                i = (i + 1) & mask;
+            }
+            String s = text.subSequence(start, end).toString();
+            slots[i] = s;
+            hashes[i] = hash;
+            size++;
+            if (2 * size > slots.length) {
+                rehash();
+            }
+            return s;
+        }
+
+        /** Doubles the number of slots. */
+        private void rehash() {
+            String[] oldSlots = slots;
+            int[] oldHashes = hashes;
+            slots = new String[2 * oldSlots.length];
+            hashes = new int[2 * oldSlots.length];
+            int mask = slots.length - 1;
+            for (int k = 0; k < oldSlots.length; k++) {
+                if (oldSlots[k] != null) {
+                    int i = oldHashes[k] & mask;
+                    while (slots[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    slots[i] = oldSlots[k];
+                    hashes[i] = oldHashes[k];
+                }
+            }
+        }
+    }
+
+    /** The stripes, selected by the highest bits of the hash. */
+    private final Stripe[] stripes = new Stripe[NUM_STRIPES];
+
+    /** Creates an empty table. */
+    public SymbolTable() {
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Returns the canonical instance of a string.
+     *
+     * @param str any string.
+     * @return string equal to <code>str</code>, the same instance for all
+     *         equal strings.
+     */
+    public String intern(String str) {
+        return intern(str, 0, str.length());
+    }
+
+    /**
+     * Returns the canonical instance of the string in a range of the input,
+     * creates the string only if it has not been interned before.
+     *
+     * @param text the input.
+     * @param start offset of the first character.
+     * @param end offset after the last character.
+     * @return canonical string with the content of the range.
+     */
+    String intern(CharSequence text, int start, int end) {
+        if (text instanceof Utf8Bytes && !isAscii(text, start, end)) {
+            // Offsets are byte offsets, compare the decoded characters
+            return intern(text.subSequence(start, end).toString());
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        // Spread the bits, the highest ones select the stripe
+        hash *= 0x9E3779B9;
+        Stripe stripe = stripes[hash >>> (32 - STRIPE_BITS)];
+        synchronized (stripe) {
+            return stripe.intern(text, start, end, hash);
+        }
+    }
+
+    /** @return number of interned strings. */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe: stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /** Checks whether a range of the input contains only ASCII. */
+    private static boolean isAscii(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Compares a string with a range of the input. */
+    private static boolean contentEquals(
+        String str,
+        CharSequence text,
+        int start,
+        int end
+    ) {
+        if (str.length() != end - start) {
+            return false;
+        }
+        for (int k = 0; k < str.length(); k++) {
+            if (str.charAt(k) != text.charAt(start + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
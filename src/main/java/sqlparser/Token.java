@@ -8,6 +8,7 @@ import lombok.Value;
         IDENTIFIER,
         NUMBER,
         STRING,
+        PARAMETER,
         COMMA,
         PERIOD,
         SEMICOLON,
@@ -20,8 +21,43 @@ import lombok.Value;
     Type tokenType;
     String string;
     Position position;
+    /**
+     * Numeric value of <code>NUMBER</code> tokens, ordinal of the
+     * <code>Keyword</code> or the <code>Operator</code> of
+     * <code>KEYWORD</code> and <code>OPERATOR</code> tokens, 0 for all
+     * others.
+     */
+    long value;
 
     public static Token of(Type t, String str, Position pos) {
-        return new Token(t, str, pos);
+        return new Token(t, str, pos, 0);
+    }
+
+    public static Token number(String str, Position pos, long value) {
+        return new Token(Type.NUMBER, str, pos, value);
+    }
+
+    public static Token keyword(Keyword keyword, Position pos) {
+        return new Token(Type.KEYWORD, keyword.name(), pos, keyword.ordinal());
+    }
+
+    public static Token operator(Operator op, Position pos) {
+        return new Token(Type.OPERATOR, op.getSymbol(), pos, op.ordinal());
+    }
+
+    /** @return keyword of a <code>KEYWORD</code> token, otherwise null. */
+    public Keyword getKeyword() {
+        return
+            tokenType == Type.KEYWORD ?
+            Keyword.byOrdinal((int) value) :
+            null;
+    }
+
+    /** @return operator of an <code>OPERATOR</code> token, otherwise null. */
+    public Operator getOperator() {
+        return
+            tokenType == Type.OPERATOR ?
+            Operator.byOrdinal((int) value) :
+            null;
     }
 }
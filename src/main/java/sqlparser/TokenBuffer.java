@@ -0,0 +1,551 @@
+package sqlparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static sqlparser.Token.Type;
+import static sqlparser.Token.Type.*;
+
+/**
+ * Compact list of tokens, stored as struct-of-arrays.
+ *
+ * Each token occupies a single <code>byte</code> for its type, another
+ * <code>byte</code> for the ordinal of its keyword or operator, and two
+ * <code>int</code>s for the offsets of its lexeme. Numeric literals are
+ * parsed by the tokenizer, their values are kept in an additional
+ * <code>long</code> column, which is only allocated once the first number
+ * is added.
+ * The lexemes are not copied out of the input: they are extracted only
+ * when someone asks for them. Line and column numbers are not stored
+ * per token either, they are computed from the offsets with a
+ * <code>LineIndex</code> when a position is requested.
+ *
+ * Buffers that are filled from a stream cannot refer back to the input,
+ * because the input is discarded while tokenizing. Such buffers copy the
+ * characters of the lexemes (but nothing in between) into an internal
+ * arena, and store line and column numbers explicitly.
+ */
+public final class TokenBuffer {
+
+    /**
+     * Upper bound of the number of tokens that is allocated up front for
+     * an input-backed buffer. Larger buffers grow while tokenizing, so that
+     * huge inputs do not allocate all arrays before the first token.
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1 << 20;
+
+    /**
+     * Estimated number of characters per token, SQL scripts and dumps
+     * have three to four. Underestimating is expensive: growing copies
+     * all columns.
+     */
+    static final int CHARS_PER_TOKEN = 3;
+
+    /** All token types, indexed by ordinal. */
+    private static final Type[] TYPES = Type.values();
+
+    /** Source file path (for emitting better error-messages). */
+    private final String source;
+
+    /** Text the offsets refer to: the input, or the arena. */
+    private final CharSequence text;
+
+    /** Arena with copied lexemes, <code>null</code> if backed by input. */
+    private final StringBuilder arena;
+
+    /** Number of tokens. */
+    private int size = 0;
+
+    /** Token types, as ordinals. */
+    private byte[] types;
+
+    /** Ordinals of the keywords and operators, 0 for all other tokens. */
+    private byte[] codes;
+
+    /** Offsets of the first characters of the lexemes. */
+    private int[] starts;
+
+    /** Offsets after the last characters of the lexemes. */
+    private int[] ends;
+
+    /** Values of the numbers, <code>null</code> until the first number. */
+    private long[] values;
+
+    /** Line starts of the input, <code>null</code> if arena-backed. */
+    private final LineIndex lineIndex;
+
+    /** One-based line numbers, only if arena-backed. */
+    private int[] lines;
+
+    /** One-based column numbers, only if arena-backed. */
+    private int[] columns;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param source description of the input, usually file path.
+     * @param text the text that the token offsets will refer to.
+     * @param arena the arena that is filled with the lexemes, or
+     *              <code>null</code>.
+     * @param capacity initial capacity.
+     */
+    private TokenBuffer(
+        String source,
+        CharSequence text,
+        StringBuilder arena,
+        int capacity
+    ) {
+        this.source = source;
+        this.text = text;
+        this.arena = arena;
+        this.types = new byte[capacity];
+        this.codes = new byte[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        if (arena == null) {
+            this.lineIndex = new LineIndex();
+        } else {
+            this.lineIndex = null;
+            this.lines = new int[capacity];
+            this.columns = new int[capacity];
+        }
+    }
+
+    /**
+     * Creates an empty buffer that refers to the lexemes in the input.
+     *
+     * @param source description of the input, usually file path.
+     * @param input the input that is going to be tokenized.
+     * @return empty buffer.
+     */
+    static TokenBuffer backedByInput(String source, CharSequence input) {
+        return backedByInput(
+            source,
+            input,
+            Math.min(input.length() / CHARS_PER_TOKEN, MAX_INITIAL_CAPACITY)
+        );
+    }
+
+    /**
+     * Same as <code>backedByInput(String, CharSequence)</code>, but with
+     * an explicit estimate of the number of tokens.
+     *
+     * @param source description of the input, usually file path.
+     * @param input the input that is going to be tokenized.
+     * @param capacity expected number of tokens.
+     * @return empty buffer.
+     */
+    static TokenBuffer backedByInput(
+        String source,
+        CharSequence input,
+        int capacity
+    ) {
+        return new TokenBuffer(source, input, null, Math.max(16, capacity));
+    }
+
+    /**
+     * Concatenates buffers that were filled from adjacent ranges of the
+     * same input.
+     *
+     * @param source description of the input, usually file path.
+     * @param input the input that all parts refer to.
+     * @param parts input-backed buffers, in the order of the ranges.
+     * @return buffer with the tokens and line starts of all parts.
+     */
+    static TokenBuffer concat(
+        String source,
+        CharSequence input,
+        List<TokenBuffer> parts
+    ) {
+        int total = 0;
+        for (TokenBuffer p: parts) {
+            total += p.size;
+        }
+        TokenBuffer result = backedByInput(source, input, total);
+        for (TokenBuffer p: parts) {
+            System.arraycopy(p.types, 0, result.types, result.size, p.size);
+            System.arraycopy(p.codes, 0, result.codes, result.size, p.size);
+            System.arraycopy(p.starts, 0, result.starts, result.size, p.size);
+            System.arraycopy(p.ends, 0, result.ends, result.size, p.size);
+            if (p.values != null) {
+                if (result.values == null) {
+                    result.values = new long[result.types.length];
+                }
+                System.arraycopy(
+                    p.values, 0, result.values, result.size, p.size
+                );
+            }
+            result.size += p.size;
+            result.lineIndex.addLineStarts(p.lineIndex);
+        }
+        return result;
+    }
+
+    /**
+     * Creates an empty buffer that copies the lexemes.
+     *
+     * @param source description of the input, usually file path.
+     * @return empty buffer.
+     */
+    static TokenBuffer withArena(String source) {
+        StringBuilder arena = new StringBuilder();
+        return new TokenBuffer(source, arena, arena, 16);
+    }
+
+    /** Grows all arrays. */
+    private void grow() {
+        int capacity = 2 * types.length;
+        types = Arrays.copyOf(types, capacity);
+        codes = Arrays.copyOf(codes, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        if (values != null) {
+            values = Arrays.copyOf(values, capacity);
+        }
+        if (arena != null) {
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+    }
+
+    /**
+     * Records the start of a new line.
+     *
+     * @param offset offset of the first character after the line break.
+     */
+    void addLineStart(int offset) {
+        if (lineIndex != null) {
+            lineIndex.addLineStart(offset);
+        }
+    }
+
+    /**
+     * Appends a token.
+     *
+     * @param type type of the token.
+     * @param input the input that is being tokenized.
+     * @param start offset of the first character of the lexeme in input.
+     * @param end offset after the last character of the lexeme in input.
+     * @param line one-based line number, ignored unless arena-backed.
+     * @param column one-based column number, ignored unless arena-backed.
+     * @param value numeric value of a <code>NUMBER</code>, or ordinal of
+     *              the keyword or the operator of a <code>KEYWORD</code>
+     *              or an <code>OPERATOR</code>, ignored otherwise.
+     */
+    void add(
+        Type type,
+        CharSequence input,
+        int start,
+        int end,
+        int line,
+        int column,
+        long value
+    ) {
+        if (arena == null && type != NUMBER && size < types.length) {
+            // Common case, kept small enough to be inlined: the value is
+            // either a code or 0
+            types[size] = (byte) type.ordinal();
+            codes[size] = (byte) value;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        } else {
+            addSlow(type, input, start, end, line, column, value);
+        }
+    }
+
+    /**
+     * Same as <code>add</code>, for the cases that need to grow the
+     * arrays, to store a number, or to copy the lexeme into the arena.
+     */
+    private void addSlow(
+        Type type,
+        CharSequence input,
+        int start,
+        int end,
+        int line,
+        int column,
+        long value
+    ) {
+        if (size == types.length) {
+            grow();
+        }
+        if (type == NUMBER) {
+            if (values == null) {
+                values = new long[types.length];
+            }
+            values[size] = value;
+        } else if (type == KEYWORD || type == OPERATOR) {
+            codes[size] = (byte) value;
+        }
+        if (arena != null) {
+            int arenaStart = arena.length();
+            arena.append(input, start, end);
+            start = arenaStart;
+            end = arena.length();
+            lines[size] = line;
+            columns[size] = column;
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /** @return number of tokens. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of a token.
+     * @return type of the <code>i</code>-th token.
+     */
+    public Type type(int i) {
+        return TYPES[types[i]];
+    }
+
+    /**
+     * @param i index of a <code>NUMBER</code> token.
+     * @return numeric value of the <code>i</code>-th token.
+     */
+    public long value(int i) {
+        return values[i];
+    }
+
+    /**
+     * @param i index of a token.
+     * @return keyword of the <code>i</code>-th token, or <code>null</code>
+     *         if it is not a keyword.
+     */
+    public Keyword keyword(int i) {
+        if (types[i] == KEYWORD.ordinal()) {
+            return Keyword.byOrdinal(codes[i]);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @param i index of a token.
+     * @return operator of the <code>i</code>-th token, or
+     *         <code>null</code> if it is not an operator.
+     */
+    public Operator operator(int i) {
+        if (types[i] == OPERATOR.ordinal()) {
+            return Operator.byOrdinal(codes[i]);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the lexeme of a token. Keywords are returned in their
+     * canonical upper case form, without creating new strings.
+     *
+     * @param i index of a token.
+     * @return lexeme of the <code>i</code>-th token.
+     */
+    public String lexeme(int i) {
+        if (types[i] == KEYWORD.ordinal()) {
+            return Keyword.byOrdinal(codes[i]).name();
+        } else {
+            return text.subSequence(starts[i], ends[i]).toString();
+        }
+    }
+
+    /**
+     * Same as <code>lexeme</code>, but looks up the lexeme in a symbol
+     * table, without extracting it first.
+     *
+     * @param i index of a token.
+     * @param symbols the symbol table.
+     * @return canonical instance of the lexeme of the <code>i</code>-th
+     *         token.
+     */
+    public String symbol(int i, SymbolTable symbols) {
+        if (types[i] == KEYWORD.ordinal()) {
+            return lexeme(i);
+        } else {
+            return symbols.intern(text, starts[i], ends[i]);
+        }
+    }
+
+    /**
+     * Appends the lexeme of a token to a builder, without extracting it.
+     *
+     * @param i index of a token that is not a keyword.
+     * @param dest the builder.
+     */
+    void appendLexeme(int i, StringBuilder dest) {
+        dest.append(text, starts[i], ends[i]);
+    }
+
+    /**
+     * Checks whether the lexeme of a token is equal to the specified string,
+     * without extracting the lexeme. Keywords are compared in their
+     * canonical upper case form.
+     *
+     * @param i index of a token.
+     * @param str expected lexeme.
+     * @return <code>true</code> if the lexeme is equal to <code>str</code>.
+     */
+    boolean lexemeEquals(int i, String str) {
+        int start = starts[i];
+        if (types[i] == KEYWORD.ordinal()) {
+            return str.equals(Keyword.byOrdinal(codes[i]).name());
+        }
+        int len = ends[i] - start;
+        if (len != str.length()) {
+            return false;
+        }
+        for (int k = 0; k < len; k++) {
+            if (text.charAt(start + k) != str.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param i index of a token.
+     * @return position of the first character of the <code>i</code>-th
+     *         token.
+     */
+    public Position position(int i) {
+        if (lineIndex != null) {
+            return lineIndex.position(source, text, starts[i]);
+        } else {
+            return Position.of(source, lines[i], columns[i]);
+        }
+    }
+
+    /**
+     * Creates a source that walks over the tokens of this buffer, starting
+     * with the first one. The buffer must end with an <code>EOF</code>
+     * token, as produced by the tokenizer.
+     *
+     * @return fresh cursor at the first token.
+     */
+    public TokenSource cursor() {
+        return new Cursor(0, size - 1);
+    }
+
+    /**
+     * Creates a source that walks over a range of the tokens of this
+     * buffer, and reports an <code>EOF</code> token at the end of the
+     * range. Only the type of this <code>EOF</code> is meaningful, all
+     * other properties are those of the token at the end of the range.
+     *
+     * @param from index of the first token of the range.
+     * @param to index after the last token of the range.
+     * @return fresh cursor at the first token of the range.
+     */
+    TokenSource cursor(int from, int to) {
+        return new Cursor(from, to);
+    }
+
+    /**
+     * Token source that simply moves an index over the buffer. A buffer
+     * is only handed out if there were no lexical errors, so the source
+     * never reports any.
+     */
+    private final class Cursor implements TokenSource {
+
+        /** Index of the current token. */
+        private int index;
+
+        /** Index of the token that is reported as <code>EOF</code>. */
+        private final int end;
+
+        Cursor(int from, int end) {
+            this.index = from;
+            this.end = end;
+        }
+
+        @Override
+        public Type peek() {
+            return index == end ? EOF : type(index);
+        }
+
+        @Override
+        public String lexeme() {
+            return TokenBuffer.this.lexeme(index);
+        }
+
+        @Override
+        public boolean lexemeEquals(String str) {
+            return TokenBuffer.this.lexemeEquals(index, str);
+        }
+
+        @Override
+        public String symbol(SymbolTable symbols) {
+            return TokenBuffer.this.symbol(index, symbols);
+        }
+
+        @Override
+        public Keyword keyword() {
+            return index == end ? null : TokenBuffer.this.keyword(index);
+        }
+
+        @Override
+        public Operator operator() {
+            return index == end ? null : TokenBuffer.this.operator(index);
+        }
+
+        @Override
+        public long value() {
+            return TokenBuffer.this.value(index);
+        }
+
+        @Override
+        public Position position() {
+            return TokenBuffer.this.position(index);
+        }
+
+        @Override
+        public void next() {
+            if (index < end) {
+                index++;
+            }
+        }
+
+        @Override
+        public List<ErrorMessage> errors() {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Materializes a single token.
+     *
+     * @param i index of a token.
+     * @return the <code>i</code>-th token.
+     */
+    public Token get(int i) {
+        if (types[i] == NUMBER.ordinal()) {
+            return Token.number(lexeme(i), position(i), values[i]);
+        } else if (types[i] == KEYWORD.ordinal()) {
+            return Token.keyword(keyword(i), position(i));
+        } else if (types[i] == OPERATOR.ordinal()) {
+            return Token.operator(operator(i), position(i));
+        } else {
+            return Token.of(type(i), lexeme(i), position(i));
+        }
+    }
+
+    /**
+     * Materializes all tokens.
+     *
+     * @return list with all tokens.
+     */
+    public ArrayList<Token> toTokenList() {
+        ArrayList<Token> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+}
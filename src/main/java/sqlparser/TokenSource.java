@@ -0,0 +1,78 @@
+package sqlparser;
+
+import java.util.List;
+
+import static sqlparser.Token.Type;
+
+/**
+ * Sequence of tokens that is consumed one token at a time.
+ *
+ * Gives access to the current token only: the parser inspects it with
+ * <code>peek</code> and friends, and moves on to the next one with
+ * <code>next</code>. Implementations are free to scan the tokens lazily,
+ * so that a consumer never needs more than a small window of the tokens
+ * in memory.
+ *
+ * Every source ends with a single <code>EOF</code> token, which is never
+ * consumed: once it is reached, <code>next</code> does nothing.
+ */
+public interface TokenSource {
+
+    /** @return type of the current token. */
+    Type peek();
+
+    /**
+     * @return lexeme of the current token, keywords in canonical upper
+     *         case form.
+     */
+    String lexeme();
+
+    /**
+     * Checks whether the lexeme of the current token is equal to the
+     * specified string. Keywords are compared in upper case.
+     *
+     * @param str expected lexeme.
+     * @return <code>true</code> if the lexeme is equal to <code>str</code>.
+     */
+    boolean lexemeEquals(String str);
+
+    /**
+     * Same as <code>lexeme</code>, but returns the canonical instance from
+     * the symbol table.
+     *
+     * @param symbols symbol table of the current session.
+     * @return interned lexeme of the current token.
+     */
+    String symbol(SymbolTable symbols);
+
+    /**
+     * @return keyword of the current <code>KEYWORD</code> token, or
+     *         <code>null</code> if the current token is not a keyword.
+     */
+    Keyword keyword();
+
+    /**
+     * @return operator of the current <code>OPERATOR</code> token, or
+     *         <code>null</code> if the current token is not an operator.
+     */
+    Operator operator();
+
+    /** @return numeric value of the current <code>NUMBER</code> token. */
+    long value();
+
+    /** @return position of the first character of the current token. */
+    Position position();
+
+    /** Consumes the current token, unless it is the <code>EOF</code>. */
+    void next();
+
+    /**
+     * Lexical errors that occurred while scanning the tokens up to and
+     * including the current one. The scanner skips invalid input, so the
+     * tokens of a source with errors are not a faithful representation
+     * of the input.
+     *
+     * @return lexical errors found so far.
+     */
+    List<ErrorMessage> errors();
+}
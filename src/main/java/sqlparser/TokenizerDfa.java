@@ -0,0 +1,315 @@
+package sqlparser;
+
+import java.util.Arrays;
+
+import static sqlparser.Constants.OP_CHARS;
+
+/**
+ * Transition table of the DFA that is run by the <code>SqlTokenizer</code>.
+ *
+ * The characters are first mapped to a small number of character classes.
+ * For ASCII characters, the class is looked up in a precomputed array,
+ * only non-ASCII characters are classified by the (comparatively slow)
+ * methods of <code>Character</code>. The pair of current state and
+ * character class is then mapped to an action and the next state.
+ *
+ * Both the class array and the transition table are generated on class
+ * initialization from the specification in the static initializer below.
+ * The same holds for the table of valid operators, which are recognized
+ * without extracting their lexemes.
+ */
+final class TokenizerDfa {
+
+    // States
+    static final int DEFAULT = 0;
+    static final int SCAN_ID = 1;
+    static final int SCAN_NUM = 2;
+    static final int SCAN_STR = 3;
+    static final int SCAN_STR_ESCAPE = 4;
+    static final int SCAN_OP = 5;
+    private static final int NUM_STATES = 6;
+
+    // Character classes
+    static final int NEWLINE = 0;
+    static final int CARRIAGE_RETURN = 1;
+    static final int WHITESPACE = 2;
+    /** Letters that can occur in escape sequences: n, r, b, f. */
+    static final int ESCAPE_LETTER = 3;
+    static final int IDENTIFIER_START = 4;
+    static final int DIGIT = 5;
+    /** Characters that can be part of identifiers, but not start them. */
+    static final int IDENTIFIER_PART = 6;
+    static final int QUOTE = 7;
+    static final int BACKSLASH = 8;
+    static final int OPERATOR_CHAR = 9;
+    static final int LPAREN = 10;
+    static final int RPAREN = 11;
+    static final int COMMA = 12;
+    static final int PERIOD = 13;
+    static final int SEMICOLON = 14;
+    static final int QUESTION_MARK = 15;
+    static final int OTHER = 16;
+    static final int NUM_CLASSES = 17;
+
+    // Actions
+    /** Consume the character. */
+    static final int ADVANCE = 0;
+    /** Consume the line break, record the start of a new line. */
+    static final int LINE_BREAK = 1;
+    /** Consume the character, emit single-character token. */
+    static final int PUNCTUATION = 2;
+    /** Consume the character, report it as invalid token. */
+    static final int INVALID_CHAR = 3;
+    /** Emit identifier or keyword, don't consume the character. */
+    static final int END_IDENTIFIER = 4;
+    /** Emit number, don't consume the character. */
+    static final int END_NUMBER = 5;
+    /** Report number followed by identifier characters. */
+    static final int NUMBER_LUMPED = 6;
+    /** Consume the closing quote, emit string. */
+    static final int END_STRING = 7;
+    /** Report line break in a string, don't consume it. */
+    static final int MULTILINE_STRING = 8;
+    /** Consume the character, report invalid escape sequence. */
+    static final int INVALID_ESCAPE = 9;
+    /** Emit operator, don't consume the character. */
+    static final int END_OPERATOR = 10;
+
+    /** Character classes of all ASCII characters. */
+    private static final byte[] ASCII_CLASSES = new byte[128];
+
+    /**
+     * Flattened transition table, indexed by
+     * <code>state * NUM_CLASSES + characterClass</code>, each entry
+     * contains the action in the upper bits and the next state in the
+     * lowest byte.
+     */
+    private static final int[] TRANSITIONS = new int[NUM_STATES * NUM_CLASSES];
+
+    /**
+     * Whether an ASCII character is consumed without any action and
+     * without leaving the state, indexed by <code>state * 128 +
+     * character</code>. Derived from the transition table, lets the
+     * tokenizer skip runs of such characters without going through the
+     * character classes and the transitions.
+     */
+    private static final boolean[] SELF_LOOPS = new boolean[NUM_STATES * 128];
+
+    /**
+     * Operators with one or two characters, indexed by
+     * <code>first * 128 + second</code>, with <code>second = 0</code> for
+     * single-character operators, <code>null</code> for invalid ones.
+     */
+    private static final Operator[] OPERATORS = new Operator[128 * 128];
+
+    /** Sets all transitions of a state to the same action and state. */
+    private static void onAnyOther(int state, int action, int next) {
+        Arrays.fill(
+            TRANSITIONS,
+            state * NUM_CLASSES,
+            (state + 1) * NUM_CLASSES,
+            action << 8 | next
+        );
+    }
+
+    /** Sets the transitions of a state for some character classes. */
+    private static void on(int state, int action, int next, int... classes) {
+        for (int c: classes) {
+            TRANSITIONS[state * NUM_CLASSES + c] = action << 8 | next;
+        }
+    }
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            ASCII_CLASSES[c] = (byte) classify(c);
+        }
+        for (Operator op: Operator.values()) {
+            String symbol = op.getSymbol();
+            if (!op.isSymbolic()) {
+                continue;
+            } else if (symbol.length() > 2) {
+                ///CLOVER:OFF
+                throw new AssertionError("Operator too long: " + symbol);
+                ///CLOVER:ON
+            }
+            OPERATORS[operatorKey(symbol, 0, symbol.length())] = op;
+        }
+
+        onAnyOther(DEFAULT, INVALID_CHAR, DEFAULT);
+        on(DEFAULT, ADVANCE, DEFAULT, WHITESPACE, CARRIAGE_RETURN);
+        on(DEFAULT, LINE_BREAK, DEFAULT, NEWLINE);
+        on(DEFAULT, ADVANCE, SCAN_ID, IDENTIFIER_START, ESCAPE_LETTER);
+        on(DEFAULT, ADVANCE, SCAN_NUM, DIGIT);
+        on(DEFAULT, ADVANCE, SCAN_STR, QUOTE);
+        on(DEFAULT, ADVANCE, SCAN_OP, OPERATOR_CHAR);
+        on(
+            DEFAULT, PUNCTUATION, DEFAULT,
+            LPAREN, RPAREN, COMMA, PERIOD, SEMICOLON, QUESTION_MARK
+        );
+
+        onAnyOther(SCAN_ID, END_IDENTIFIER, DEFAULT);
+        on(
+            SCAN_ID, ADVANCE, SCAN_ID,
+            IDENTIFIER_START, ESCAPE_LETTER, DIGIT, IDENTIFIER_PART
+        );
+
+        onAnyOther(SCAN_NUM, END_NUMBER, DEFAULT);
+        on(SCAN_NUM, ADVANCE, SCAN_NUM, DIGIT);
+        on(
+            SCAN_NUM, NUMBER_LUMPED, DEFAULT,
+            IDENTIFIER_START, ESCAPE_LETTER, IDENTIFIER_PART
+        );
+
+        onAnyOther(SCAN_STR, ADVANCE, SCAN_STR);
+        on(SCAN_STR, END_STRING, DEFAULT, QUOTE);
+        on(SCAN_STR, ADVANCE, SCAN_STR_ESCAPE, BACKSLASH);
+        on(SCAN_STR, MULTILINE_STRING, DEFAULT, CARRIAGE_RETURN, NEWLINE);
+
+        onAnyOther(SCAN_STR_ESCAPE, INVALID_ESCAPE, SCAN_STR);
+        on(SCAN_STR_ESCAPE, ADVANCE, SCAN_STR, QUOTE, BACKSLASH, ESCAPE_LETTER);
+
+        onAnyOther(SCAN_OP, END_OPERATOR, DEFAULT);
+        on(SCAN_OP, ADVANCE, SCAN_OP, OPERATOR_CHAR);
+
+        for (int state = 0; state < NUM_STATES; state++) {
+            int selfLoop = ADVANCE << 8 | state;
+            for (char c = 0; c < 128; c++) {
+                SELF_LOOPS[state * 128 + c] =
+                    transition(state, ASCII_CLASSES[c]) == selfLoop;
+            }
+        }
+    }
+
+    /** Hidden constructor. */
+    private TokenizerDfa() { /* nothing to do. */ }
+
+    /**
+     * Determines the character class with the methods of
+     * <code>Character</code>. Used to fill the ASCII table, and directly
+     * for all non-ASCII characters.
+     */
+    private static int classify(char c) {
+        if (c == '\n') {
+            return NEWLINE;
+        } else if (c == '\r') {
+            return CARRIAGE_RETURN;
+        } else if (Character.isWhitespace(c)) {
+            return WHITESPACE;
+        } else if (c == 'n' || c == 'r' || c == 'b' || c == 'f') {
+            return ESCAPE_LETTER;
+        } else if (Character.isJavaIdentifierStart(c)) {
+            return IDENTIFIER_START;
+        } else if (Character.isDigit(c)) {
+            return DIGIT;
+        } else if (Character.isJavaIdentifierPart(c)) {
+            return IDENTIFIER_PART;
+        } else if (c == '"') {
+            return QUOTE;
+        } else if (c == '\\') {
+            return BACKSLASH;
+        } else if (OP_CHARS.contains(c)) {
+            return OPERATOR_CHAR;
+        } else if (c == '(') {
+            return LPAREN;
+        } else if (c == ')') {
+            return RPAREN;
+        } else if (c == ',') {
+            return COMMA;
+        } else if (c == '.') {
+            return PERIOD;
+        } else if (c == ';') {
+            return SEMICOLON;
+        } else if (c == '?') {
+            return QUESTION_MARK;
+        } else {
+            return OTHER;
+        }
+    }
+
+    /**
+     * @param c a character.
+     * @return character class of <code>c</code>.
+     */
+    static int characterClass(char c) {
+        return c < 128 ? ASCII_CLASSES[c] : classify(c);
+    }
+
+    /**
+     * Character class of a byte of UTF-8 encoded input. Multi-byte
+     * sequences are treated as identifier characters: their lead bytes
+     * can start identifiers, the continuation bytes can only follow.
+     * Inside of string literals, all of them are simply consumed.
+     *
+     * @param b unsigned value of a byte.
+     * @return character class of <code>b</code>.
+     */
+    static int byteClass(char b) {
+        if (b < 128) {
+            return ASCII_CLASSES[b];
+        } else if (b >= 0xC0) {
+            return IDENTIFIER_START;
+        } else {
+            return IDENTIFIER_PART;
+        }
+    }
+
+    /**
+     * Maps an ASCII range of length one or two to an index into the
+     * operator table.
+     */
+    private static int operatorKey(CharSequence text, int start, int end) {
+        int second = end - start == 2 ? text.charAt(start + 1) : 0;
+        return text.charAt(start) * 128 + second;
+    }
+
+    /**
+     * Recognizes the operator in a range of the input. The range is
+     * expected to consist of operator characters only.
+     *
+     * @param text the input.
+     * @param start offset of the first character of the candidate.
+     * @param end offset after the last character of the candidate.
+     * @return the operator, or <code>null</code> if the range is not a
+     *         valid operator.
+     */
+    static Operator operator(CharSequence text, int start, int end) {
+        if (end - start > 2) {
+            return null;
+        }
+        return OPERATORS[operatorKey(text, start, end)];
+    }
+
+    /**
+     * @param state current state.
+     * @param characterClass class of the current character.
+     * @return packed transition, see <code>action</code> and
+     *         <code>nextState</code>.
+     */
+    static int transition(int state, int characterClass) {
+        return TRANSITIONS[state * NUM_CLASSES + characterClass];
+    }
+
+    /**
+     * Checks whether a character keeps the DFA in its state, without any
+     * action. Holds for the bytes of UTF-8 encoded input as well, their
+     * ASCII classes are the same.
+     *
+     * @param state current state.
+     * @param c current character.
+     * @return <code>true</code> if <code>c</code> is an ASCII character
+     *         that is simply consumed in <code>state</code>.
+     */
+    static boolean loops(int state, char c) {
+        return c < 128 && SELF_LOOPS[state * 128 + c];
+    }
+
+    /** Extracts the action from a packed transition. */
+    static int action(int transition) {
+        return transition >>> 8;
+    }
+
+    /** Extracts the next state from a packed transition. */
+    static int nextState(int transition) {
+        return transition & 0xFF;
+    }
+}
@@ -0,0 +1,127 @@
+package sqlparser;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * UTF-8 encoded bytes, indexed by byte offsets, that can be scanned by
+ * the tokenizer without decoding them.
+ *
+ * Unlike <code>MappedCharSequence</code>, this is not a view of the
+ * decoded characters: <code>length</code> is the number of bytes, and
+ * <code>charAt</code> returns the byte with the specified offset,
+ * unsigned. All syntactically relevant characters of SQL are ASCII,
+ * for which bytes and characters coincide. The bytes of multi-byte
+ * sequences are only ever part of identifiers and string literals.
+ *
+ * Only <code>subSequence</code> decodes the bytes, so that lexemes are
+ * extracted as proper strings. Malformed byte sequences are replaced, as
+ * in <code>new String(bytes, UTF_8)</code>.
+ *
+ * The view uses only absolute <code>get</code>s, concurrent reads are
+ * safe.
+ */
+final class Utf8Bytes implements CharSequence {
+
+    /** The encoded bytes. */
+    private final ByteBuffer bytes;
+
+    /**
+     * Creates a view of the bytes between position and limit of the
+     * buffer.
+     *
+     * @param buffer UTF-8 encoded characters.
+     */
+    Utf8Bytes(ByteBuffer buffer) {
+        this.bytes = buffer.slice();
+    }
+
+    /**
+     * Counts the UTF-16 characters in a range of a text. For
+     * <code>Utf8Bytes</code>, the range is given in bytes, for all other
+     * texts, the range is already measured in characters.
+     *
+     * @param text the input of the tokenizer.
+     * @param start offset of the first character of the range.
+     * @param end offset after the last character of the range.
+     * @return number of UTF-16 characters in the range.
+     */
+    static int charCount(CharSequence text, int start, int end) {
+        if (text instanceof Utf8Bytes) {
+            return ((Utf8Bytes) text).utf16Length(start, end);
+        } else {
+            return end - start;
+        }
+    }
+
+    /**
+     * Counts the UTF-16 characters encoded by a range of bytes, assuming
+     * that the encoding is valid. Every byte that is not a continuation
+     * byte starts a character, four-byte sequences encode surrogate pairs.
+     */
+    private int utf16Length(int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            int b = bytes.get(i) & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                count += b >= 0xF0 ? 2 : 1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xFF);
+    }
+
+    /**
+     * Decodes the specified range of bytes. ASCII ranges (such as
+     * most lexemes) are copied directly, without a charset decoder.
+     *
+     * @param start offset of the first byte.
+     * @param end offset after the last byte.
+     * @return the decoded characters.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] ascii = new char[end - start];
+        for (int i = start; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b < 0) {
+                return decode(start, end);
+            }
+            ascii[i - start] = (char) b;
+        }
+        return new String(ascii);
+    }
+
+    /** Decodes a range of bytes that contains non-ASCII characters. */
+    private String decode(int start, int end) {
+        if (bytes.hasArray()) {
+            return new String(
+                bytes.array(),
+                bytes.arrayOffset() + start,
+                end - start,
+                UTF_8
+            );
+        } else {
+            byte[] range = new byte[end - start];
+            ByteBuffer view = bytes.duplicate();
+            view.position(start);
+            view.get(range);
+            return new String(range, UTF_8);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
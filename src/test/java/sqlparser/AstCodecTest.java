@@ -0,0 +1,133 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import static sqlparser.Ast.*;
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * Checks that statements survive the round trip through the binary
+ * encoding, and that invalid encodings are rejected.
+ */
+public class AstCodecTest {
+
+    /** Helper method that parses a text that is known to be valid. */
+    private static List<Statement> parse(String text) {
+        return SqlTokenizer
+            .tokenize("", text)
+            .flatMap(SqlParser::parse)
+            .get();
+    }
+
+    @Test
+    public void shouldDecodeEncodedStatements() throws IOException {
+        List<Statement> statements = parse(
+            String.join("\n", VALID_STATEMENTS) +
+            "INSERT INTO d.t (x, y) VALUES (1, \"s\"), (-2, ?), (f(3), -4);" +
+            "SELECT -9223372036854775807 - 1, \"ä✓\" FROM t;"
+        );
+        ByteBuffer encoded = AstCodec.encode(statements);
+        List<Statement> decoded = AstCodec.decode(encoded);
+        assertEquals(statements, decoded);
+        assertEquals(statements, decoded);
+        assertFalse(encoded.hasRemaining());
+
+        encoded.rewind();
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.limit() + 1);
+        direct.put(encoded).put((byte) 42).flip();
+        assertEquals(statements, AstCodec.decode(direct));
+        assertEquals(42, direct.get());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstCodec.write(statements, out);
+        assertEquals(
+            statements,
+            AstCodec.read(new ByteArrayInputStream(out.toByteArray()))
+        );
+    }
+
+    @Test
+    public void shouldStoreEachStringOnce() {
+        List<Statement> statements = parse(
+            "SELECT abc FROM abc WHERE abc > abc(abc);" +
+            "DELETE FROM abc.abc WHERE abc = abc;"
+        );
+        ByteBuffer encoded = AstCodec.encode(statements);
+        int occurrences = 0;
+        for (int i = 0; i + 2 < encoded.limit(); i++) {
+            if (
+                encoded.get(i) == 'a' &&
+                encoded.get(i + 1) == 'b' &&
+                encoded.get(i + 2) == 'c'
+            ) {
+                occurrences++;
+            }
+        }
+        assertEquals(1, occurrences);
+        Delete delete = (Delete) AstCodec.decode(encoded).get(1);
+        assertSame(
+            delete.getFromTable().getTableName(),
+            delete.getFromTable().getDatabaseName().get()
+        );
+    }
+
+    @Test
+    public void shouldDecodeDeeplyNestedExpressions() {
+        List<Statement> statements = parse(DEEPLY_NESTED_STATEMENT);
+        List<Statement> decoded =
+            AstCodec.decode(AstCodec.encode(statements));
+        assertEquals(statements, decoded);
+    }
+
+    @Test
+    public void shouldRejectInvalidEncodings() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstCodec.write(parse("SELECT a + 1 FROM t WHERE f(b);"), out);
+        byte[] valid = out.toByteArray();
+        List<byte[]> invalid = new ArrayList<>();
+        invalid.add(new byte[0]);
+        invalid.add("SQLB".getBytes());
+        byte[] otherVersion = valid.clone();
+        otherVersion[4] = (byte) (AstCodec.VERSION + 1);
+        invalid.add(otherVersion);
+        // Two billion strings
+        invalid.add(new byte[] {
+            'S', 'Q', 'L', 'A', AstCodec.VERSION,
+            (byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7
+        });
+        // INSERT (tag 3) INTO a (a) VALUES with a billion rows
+        invalid.add(new byte[] {
+            'S', 'Q', 'L', 'A', AstCodec.VERSION, 1, 1, 'a', 1,
+            3, 0, 0, 1, 0,
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 4, 1
+        });
+        // The same with a billion rows without values
+        invalid.add(new byte[] {
+            'S', 'Q', 'L', 'A', AstCodec.VERSION, 1, 1, 'a', 1,
+            3, 0, 0, 1, 0,
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 4, 0
+        });
+        // A row without values that is not marked by a zero byte
+        invalid.add(new byte[] {
+            'S', 'Q', 'L', 'A', AstCodec.VERSION, 1, 1, 'a', 1,
+            3, 0, 0, 1, 0, 1, 0, 7
+        });
+        for (int length = 0; length < valid.length; length++) {
+            invalid.add(Arrays.copyOf(valid, length));
+        }
+        for (byte[] bytes: invalid) {
+            try {
+                AstCodec.decode(ByteBuffer.wrap(bytes));
+                fail("Should reject: " + Arrays.toString(bytes));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
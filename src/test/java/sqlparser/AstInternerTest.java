@@ -0,0 +1,129 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import static sqlparser.Ast.*;
+
+/**
+ * Checks that the interner returns the same instance for equal nodes,
+ * and that it forgets nodes that are no longer used.
+ */
+public class AstInternerTest {
+
+    /** Helper method that parses a text that is known to be valid. */
+    private static List<Statement> parse(String text) {
+        return SqlTokenizer
+            .tokenize("", text)
+            .flatMap(SqlParser::parse)
+            .get();
+    }
+
+    @Test
+    public void shouldShareEqualSubtrees() {
+        List<Statement> statements = parse(
+            "SELECT a + 1 FROM db.t WHERE f(a + 1, b) > 0;" +
+            "DELETE FROM db.t WHERE f(a + 1, b) > 0;"
+        );
+        AstInterner interner = new AstInterner();
+        Select select = (Select) interner.intern(statements.get(0));
+        Delete delete = (Delete) interner.intern(statements.get(1));
+        assertEquals(statements.get(0), select);
+        assertEquals(statements.get(1), delete);
+        assertSame(select.getFromTableId().get(), delete.getFromTable());
+        BinOp where = (BinOp) delete.getWhereCondition();
+        assertSame(select.getWhereCondition().get(), where);
+        FunctionApplication f = (FunctionApplication) where.getLeftOperand();
+        assertSame(select.getSelectList().get(0), f.getArguments().get(0));
+        assertSame(
+            interner.binOp(
+                Operator.PLUS,
+                interner.identifier("a"),
+                interner.number(1)
+            ),
+            f.getArguments().get(0)
+        );
+    }
+
+    @Test
+    public void shouldHashStructurally() {
+        String code = "SELECT -f(a, \"s\") * 2 IS NOT NULL;";
+        Expression e = ((Select) parse(code).get(0)).getSelectList().get(0);
+        Expression same =
+            ((Select) parse(code).get(0)).getSelectList().get(0);
+        assertNotSame(e, same);
+        assertEquals(e, same);
+        assertEquals(e.hashCode(), same.hashCode());
+        assertNotEquals(new Identifier("x"), new StringConstant("x"));
+        assertNotEquals(
+            new UnOp(Operator.PLUS, new NumConstant(1)),
+            new UnOp(Operator.MINUS, new NumConstant(1))
+        );
+        assertEquals(
+            new TableId(Optional.of("d"), "t").hashCode(),
+            new TableId(Optional.of("d"), "t").hashCode()
+        );
+    }
+
+    @Test
+    public void shouldInternDeeplyNestedExpressions() {
+        Expression e = new Identifier("x");
+        Expression same = new Identifier("x");
+        for (int i = 0; i < 100000; i++) {
+            e = new UnOp(Operator.MINUS, e);
+            same = new UnOp(Operator.MINUS, same);
+        }
+        AstInterner interner = new AstInterner();
+        assertSame(interner.intern(e), interner.intern(same));
+        assertEquals(100001, interner.size());
+    }
+
+    @Test
+    public void shouldForgetUnusedNodes() throws InterruptedException {
+        AstInterner interner = new AstInterner();
+        Identifier kept = interner.identifier("kept");
+        for (int i = 0; i < 1000; i++) {
+            interner.number(i);
+        }
+        for (int attempt = 0; attempt < 50 && interner.size() > 1; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, interner.size());
+        assertSame(kept, interner.identifier("kept"));
+    }
+
+    @Test
+    public void shouldReturnSameInstanceToConcurrentThreads() {
+        AstInterner interner = new AstInterner();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<ForkJoinTask<List<Statement>>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            tasks.add(pool.submit(() -> {
+                List<Statement> result = new ArrayList<>();
+                for (Statement s: parse(
+                    String.join("\n", ExampleStatements.VALID_STATEMENTS)
+                )) {
+                    result.add(interner.intern(s));
+                }
+                return result;
+            }));
+        }
+        List<Statement> first = tasks.get(0).join();
+        for (ForkJoinTask<List<Statement>> task: tasks) {
+            List<Statement> other = task.join();
+            for (int i = 0; i < first.size(); i++) {
+                if (first.get(i) instanceof Delete) {
+                    assertSame(
+                        ((Delete) first.get(i)).getWhereCondition(),
+                        ((Delete) other.get(i)).getWhereCondition()
+                    );
+                }
+            }
+        }
+        pool.shutdown();
+    }
+}
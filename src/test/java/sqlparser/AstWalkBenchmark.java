@@ -0,0 +1,202 @@
+package sqlparser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static sqlparser.Ast.*;
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * JMH benchmark that compares walks over a large forest of expressions
+ * that dispatch with <code>matchExpression</code> and with visitors, and
+ * measures the renderers, which are built on visitors.
+ *
+ * Not run by surefire. Run it with
+ *
+ *     mvn test-compile exec:java -Dexec.classpathScope=test \
+ *         -Dexec.mainClass=sqlparser.AstWalkBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AstWalkBenchmark {
+
+    /** Statements of roughly a quarter megabyte of script. */
+    private List<Statement> statements;
+
+    /** All top-level expressions of the statements. */
+    private List<Expression> expressions;
+
+    @Setup
+    public void setUp() {
+        StringBuilder bldr = new StringBuilder();
+        while (bldr.length() < 1 << 18) {
+            for (String q: VALID_STATEMENTS) {
+                bldr.append(q).append('\n');
+            }
+        }
+        statements = SqlTokenizer
+            .tokenize("", bldr.toString())
+            .flatMap(SqlParser::parse)
+            .get();
+        expressions = new ArrayList<>();
+        for (Statement s: statements) {
+            matchStatement(
+                s,
+                (Use use) -> null,
+                (Select select) -> {
+                    expressions.addAll(select.getSelectList());
+                    select.getWhereCondition().ifPresent(expressions::add);
+                    select.getOrderBy().ifPresent(expressions::add);
+                    return null;
+                },
+                (Insert insert) -> {
+                    RowBlock rows = insert.getRows();
+                    for (int r = 0; r < rows.numRows(); r++) {
+                        expressions.addAll(rows.row(r));
+                    }
+                    return null;
+                },
+                (Delete delete) -> expressions.add(delete.getWhereCondition())
+            );
+        }
+    }
+
+    @Benchmark
+    public int walkByMatching() {
+        ArrayDeque<Expression> todo = new ArrayDeque<>(expressions);
+        int numLeaves = 0;
+        while (!todo.isEmpty()) {
+            numLeaves += matchExpression(
+                todo.pop(),
+                (Identifier id) -> 1,
+                (NumConstant num) -> 1,
+                (StringConstant str) -> 1,
+                (Parameter param) -> 1,
+                (FunctionApplication funApp) -> {
+                    for (Expression arg: funApp.getArguments()) {
+                        todo.push(arg);
+                    }
+                    return 0;
+                },
+                (BinOp binOp) -> {
+                    todo.push(binOp.getRightOperand());
+                    todo.push(binOp.getLeftOperand());
+                    return 0;
+                },
+                (UnOp unOp) -> {
+                    todo.push(unOp.getOperand());
+                    return 0;
+                },
+                (IsNullCheck inc) -> {
+                    todo.push(inc.getOperand());
+                    return 0;
+                }
+            );
+        }
+        return numLeaves;
+    }
+
+    /** Counts leaves, schedules the operands of composite expressions. */
+    private static final class LeafCounter
+    implements ExpressionVisitor<Integer> {
+
+        private static final Integer LEAF = 1;
+        private static final Integer COMPOSITE = 0;
+
+        private final ArrayDeque<Expression> todo;
+
+        LeafCounter(ArrayDeque<Expression> todo) {
+            this.todo = todo;
+        }
+
+        @Override
+        public Integer visitIdentifier(Identifier id) {
+            return LEAF;
+        }
+
+        @Override
+        public Integer visitNum(NumConstant num) {
+            return LEAF;
+        }
+
+        @Override
+        public Integer visitString(StringConstant str) {
+            return LEAF;
+        }
+
+        @Override
+        public Integer visitParameter(Parameter param) {
+            return LEAF;
+        }
+
+        @Override
+        public Integer visitFunApp(FunctionApplication funApp) {
+            for (Expression arg: funApp.getArguments()) {
+                todo.push(arg);
+            }
+            return COMPOSITE;
+        }
+
+        @Override
+        public Integer visitBinOp(BinOp binOp) {
+            todo.push(binOp.getRightOperand());
+            todo.push(binOp.getLeftOperand());
+            return COMPOSITE;
+        }
+
+        @Override
+        public Integer visitUnOp(UnOp unOp) {
+            todo.push(unOp.getOperand());
+            return COMPOSITE;
+        }
+
+        @Override
+        public Integer visitIsNullCheck(IsNullCheck inc) {
+            todo.push(inc.getOperand());
+            return COMPOSITE;
+        }
+    }
+
+    @Benchmark
+    public int walkByVisiting() {
+        ArrayDeque<Expression> todo = new ArrayDeque<>(expressions);
+        LeafCounter counter = new LeafCounter(todo);
+        int numLeaves = 0;
+        while (!todo.isEmpty()) {
+            numLeaves += todo.pop().accept(counter);
+        }
+        return numLeaves;
+    }
+
+    @Benchmark
+    public int renderText() {
+        int length = 0;
+        for (Statement s: statements) {
+            length += s.toString().length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public String renderDot() {
+        return DotRenderer.render(statements);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+            .include(AstWalkBenchmark.class.getSimpleName())
+            .build()
+        ).run();
+    }
+}
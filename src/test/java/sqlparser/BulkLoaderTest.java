@@ -0,0 +1,135 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import io.vavr.control.Either;
+import java.util.*;
+import static sqlparser.Ast.*;
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * Checks that the bulk loader extracts the values of literal-only inserts
+ * as columns, passes everything else through the parser, and keeps the
+ * order of the input.
+ */
+public class BulkLoaderTest {
+
+    /** Loads a text, describes batches and statements as strings. */
+    private static List<String> load(String text, int batchSize) {
+        List<String> events = new ArrayList<>();
+        List<ErrorMessage> errors = BulkLoader.load(
+            "",
+            text,
+            batchSize,
+            batch -> {
+                StringBuilder bldr = new StringBuilder();
+                bldr.append(batch.getTable().getTableName());
+                bldr.append(batch.getColumns());
+                for (int r = 0; r < batch.numRows(); r++) {
+                    bldr.append(r == 0 ? " " : ", ").append('(');
+                    for (int c = 0; c < batch.getColumns().size(); c++) {
+                        bldr.append(c == 0 ? "" : " ");
+                        bldr.append(batch.get(c, r));
+                    }
+                    bldr.append(')');
+                }
+                events.add(bldr.toString());
+            },
+            statement -> events.add(statement.getClass().getSimpleName())
+        );
+        assertEquals(Collections.emptyList(), errors);
+        return events;
+    }
+
+    @Test
+    public void shouldBatchLiteralRowsByTableAndColumns() {
+        assertEquals(
+            Arrays.asList(
+                "t[a, b] (Num(1) Str(\"x\")), (Num(-2) Str(\"y\"))," +
+                " (Num(3) Num(4))",
+                "Select",
+                "t[b, a] (Str(\"z\") Num(5))",
+                "u[a, b] (Num(6) Num(7))",
+                "Insert",
+                "u[a, b] (Num(8) Num(9))"
+            ),
+            load(
+                "INSERT INTO t (a, b) VALUES (1, \"x\"), (-2, \"y\");\n" +
+                "INSERT INTO t (a, b) VALUES (3, 4);\n" +
+                "SELECT a FROM t;\n" +
+                "INSERT INTO t (b, a) VALUES (\"z\", 5);\n" +
+                "INSERT INTO db.u (a, b) VALUES (6, 7);\n" +
+                "INSERT INTO db.u (a, b) VALUES (6, 7 + 1);\n" +
+                "INSERT INTO db.u (a, b) VALUES (8, 9);\n",
+                100
+            )
+        );
+    }
+
+    @Test
+    public void shouldParseInsertsThatAreNotLiteralOnly() {
+        for (String text: new String[] {
+            "INSERT INTO t (a) VALUES (f(1));",
+            "INSERT INTO t (a) VALUES (- - 1);",
+            "INSERT INTO t (a) VALUES (?);",
+            "INSERT INTO t (a) VALUES (1, 2);",
+            "INSERT INTO t (a, b) VALUES (1, 2), (3);"
+        }) {
+            List<String> events = new ArrayList<>();
+            List<ErrorMessage> errors = BulkLoader.load(
+                "",
+                text,
+                10,
+                batch -> events.add("batch"),
+                statement -> events.add(statement.toString())
+            );
+            List<String> expected = new ArrayList<>();
+            Either<List<ErrorMessage>, List<Statement>> parsed =
+                SqlTokenizer.tokenize("", text).flatMap(SqlParser::parse);
+            if (parsed.isRight()) {
+                expected.add(parsed.get().get(0).toString());
+                assertTrue(text, errors.isEmpty());
+            } else {
+                assertEquals(text, parsed.getLeft(), errors);
+            }
+            assertEquals(text, expected, events);
+        }
+    }
+
+    @Test
+    public void shouldSplitRowsIntoBatches() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append("INSERT INTO t (a) VALUES (" + i + ");");
+        }
+        assertEquals(
+            Arrays.asList(
+                "t[a] (Num(0)), (Num(1)), (Num(2)), (Num(3))",
+                "t[a] (Num(4)), (Num(5)), (Num(6)), (Num(7))",
+                "t[a] (Num(8)), (Num(9))"
+            ),
+            load(text.toString(), 4)
+        );
+    }
+
+    @Test
+    public void shouldReportSameErrorsAsParser() {
+        for (String[] examples: new String[][] {
+            STATEMENTS_WITH_SYNTAX_ERRORS,
+            STATEMENTS_WITH_LEXICAL_ERRORS
+        }) {
+            for (String e: examples) {
+                String code = e.replace("!!!>>>", "");
+                assertEquals(
+                    code,
+                    SqlTokenizer
+                        .tokenize("", code)
+                        .flatMap(SqlParser::parse)
+                        .getLeft(),
+                    BulkLoader.load("", code, 10, b -> { }, s -> { })
+                );
+            }
+        }
+    }
+}
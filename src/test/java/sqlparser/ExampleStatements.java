@@ -28,7 +28,11 @@ class ExampleStatements {
         "INSERT INTO x.y (a, b) VALUES ((1), (2 + (2 + + 2)));",
         "DELETE FROM t WHERE x IS NULL;",
         "DELETE FROM t WHERE x IS NOT NULL;",
-        "DELETE FROM t WHERE NOT x IS NULL;"
+        "DELETE FROM t WHERE NOT x IS NULL;",
+        "SELECT a FROM t WHERE id = ? AND f(?, 1) > -?;",
+        "INSERT INTO t (a, b) VALUES (?, ?);",
+        "INSERT INTO t (a, b) VALUES (1, \"x\"), (2 * 3, f(4)),\n(-5, ?);",
+        "INSERT INTO t (a) VALUES (), ();"
     };
 
     @Value public static final class ErrorExample {
@@ -52,11 +56,17 @@ class ExampleStatements {
         "SELECT a,\"yes\" , col FROM tbl\nWHERE a > 10 * 10 !!!>>>BY -a;",
         "SELECT x FROM\ny WHERE\nz IS !!!>>>MAYBE NULL;",
         "SELECT x FROM y \n WHERE z IS NOT NULL\n AND !!!>>>OR NOT z < 10;",
+        "SELECT x FROM y WHERE z IS NULL !!!>>>= 1;",
+        "DELETE FROM t WHERE a AND NOT b IS NULL !!!>>>IS NULL;",
+        "DELETE FROM t WHERE a = !!!>>>NOT b;",
         "INSERT INTO\n a.b\n(x, y, z!!!>>>() VALUES" +
         "(1, -2, \"print\\\"hello\\\"\");",
         "DELETE FROM z\nWHERE a + b * c - d < a(!!!>>>* a + b * b OR a > b;",
         "!!!>>>lets SELECT stuff;",
-        "!!!>>>NULL SELECT nothing;"
+        "!!!>>>NULL SELECT nothing;",
+        "INSERT INTO t (a, b) VALUES (1, 2), (3!!!>>>);",
+        "INSERT INTO t (a, b) VALUES (1, 2), (3, 4!!!>>>, 5);",
+        "INSERT INTO t (a) VALUES (1) !!!>>>(2);"
     };
 
     public static final String[] STATEMENTS_WITH_LEXICAL_ERRORS = new String[] {
@@ -64,7 +74,7 @@ class ExampleStatements {
         "SELECT id, 1234!!!>>>name,\n(address FROM users \n" +
         "    WHERE is_customer IS NOT NULL ORDER BY created;",
         "INSERT INTO\nuser_notes (id,\nuser_id, note, created)" +
-        "    VALUES (1, 1, \"Note 1\", NOW();!!!>>>?",
+        "    VALUES (1, 1, \"Note 1\", NOW();!!!>>>#",
         "DELETE FROM database2.logs WHERE id + !!!>>><=> 1000;",
         "USE myDatabase!!!>>>|somethingElse;",
         "USE\n!!!>>>34567885729759495724959279582479 database\n;",
@@ -78,6 +88,25 @@ class ExampleStatements {
         "too large !!!>>>8573979793679347693874953753957394"
     };
 
+    /**
+     * Valid statement with an expression that is nested far deeper than
+     * the call stack could take, 100000 function applications with a
+     * negation each.
+     */
+    public static final String DEEPLY_NESTED_STATEMENT = deeplyNested(100000);
+
+    private static String deeplyNested(int depth) {
+        StringBuilder bldr = new StringBuilder("SELECT ");
+        for (int i = 0; i < depth; i++) {
+            bldr.append("f(-");
+        }
+        bldr.append("x");
+        for (int i = 0; i < depth; i++) {
+            bldr.append(", 1)");
+        }
+        return bldr.append(" IS NULL;").toString();
+    }
+
     public static ErrorExample extractExample(String brokenCode) {
         String[] lines = brokenCode.split("\r?\n");
         List<Position> errorPositions = new LinkedList<>();
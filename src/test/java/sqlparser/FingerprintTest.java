@@ -0,0 +1,96 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import io.vavr.control.Either;
+import java.util.List;
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * Checks that the fingerprints computed by the tokenizer normalize literals,
+ * keywords and whitespace, and nothing else.
+ */
+public class FingerprintTest {
+
+    /** Fingerprints a text that is expected to be lexically valid. */
+    private static List<Fingerprint> fingerprints(String text) {
+        return SqlTokenizer.fingerprint("", text).get();
+    }
+
+    @Test
+    public void shouldReplaceLiteralsAndNormalizeKeywords() {
+        List<Fingerprint> fs = fingerprints(
+            "select a from t where id > 42;\n" +
+            "SELECT  a\n  FROM t\tWHERE id > 7;\n" +
+            "SELECT a FROM t WHERE id > \"x; y\";"
+        );
+        assertEquals(3, fs.size());
+        assertEquals("SELECT a FROM t WHERE id > ?", fs.get(0).getText());
+        assertEquals(fs.get(0), fs.get(1));
+        assertEquals(fs.get(0), fs.get(2));
+    }
+
+    @Test
+    public void shouldKeepIdentifiersAndOperators() {
+        Fingerprint f = fingerprints(
+            "SELECT f( x ,y ) , db . c FROM db.t WHERE NOT (a<= -1);"
+        ).get(0);
+        assertEquals(
+            "SELECT f(x, y), db.c FROM db.t WHERE NOT (a <= ?)",
+            f.getText()
+        );
+        assertNotEquals(
+            f.getHash(),
+            fingerprints("SELECT f(x, y), db.c FROM db.t WHERE NOT (b <= -1);")
+                .get(0)
+                .getHash()
+        );
+    }
+
+    @Test
+    public void shouldFoldSignsIntoNumbersWhereOperandsAreExpected() {
+        List<Fingerprint> fs = fingerprints(
+            "SELECT a FROM t WHERE id > -1;\n" +
+            "SELECT a FROM t WHERE id > 42;\n" +
+            "SELECT f(+1, -2), a - 1, -(3), -b FROM t WHERE NOT -4 ORDER BY -;"
+        );
+        assertEquals(fs.get(0), fs.get(1));
+        assertEquals(
+            "SELECT f(?, ?), a - ?, - (?), - b FROM t WHERE NOT ? ORDER BY -",
+            fs.get(2).getText()
+        );
+    }
+
+    @Test
+    public void shouldHashTextWithFnv1a() {
+        Fingerprint f = fingerprints("USE db").get(0);
+        long hash = 0xcbf29ce484222325L;
+        for (char c: "USE db".toCharArray()) {
+            hash = (hash ^ c) * 0x100000001b3L;
+        }
+        assertEquals(hash, f.getHash());
+    }
+
+    @Test
+    public void shouldFingerprintAllValidStatements() {
+        for (String q: VALID_STATEMENTS) {
+            Either<List<ErrorMessage>, List<Fingerprint>> res =
+                SqlTokenizer.fingerprint("", q);
+            assertTrue("Should accept: `" + q + "`", res.isRight());
+            assertFalse("Should fingerprint: `" + q + "`", res.get().isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldReportLexicalErrors() {
+        for (String q: STATEMENTS_WITH_LEXICAL_ERRORS) {
+            String code = q.replace("!!!>>>", "");
+            assertEquals(
+                code,
+                SqlTokenizer.tokenize("", code).getLeft(),
+                SqlTokenizer.fingerprint("", code).getLeft()
+            );
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+import static sqlparser.Ast.*;
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * Checks that statements survive the round trip through the flat
+ * encoding, and that the cursor reads the records as documented.
+ */
+public class FlatAstTest {
+
+    /** Helper method that parses a text that is known to be valid. */
+    private static List<Statement> parse(String text) {
+        return SqlTokenizer
+            .tokenize("", text)
+            .flatMap(SqlParser::parse)
+            .get();
+    }
+
+    @Test
+    public void shouldDecodeEncodedStatements() {
+        List<Statement> statements = parse(String.join("\n", VALID_STATEMENTS));
+        FlatAst flat = FlatAst.of(statements);
+        assertEquals(statements.size(), flat.numStatements());
+        assertEquals(statements, flat.toStatements());
+        assertEquals(
+            statements.toString(),
+            flat.toStatements().toString()
+        );
+    }
+
+    @Test
+    public void shouldDecodeDeeplyNestedExpressions() {
+        List<Statement> statements = parse(DEEPLY_NESTED_STATEMENT);
+        FlatAst flat = FlatAst.of(statements);
+        Statement decoded = flat.toStatement(0);
+        assertEquals(statements.get(0), decoded);
+    }
+
+    @Test
+    public void shouldNavigateWithCursor() {
+        FlatAst flat = FlatAst.of(parse(
+            "SELECT a, b * 2 FROM t WHERE c IS NOT NULL;" +
+            "INSERT INTO d.t (x, y) VALUES (1, \"s\"), (-2, ?);"
+        ));
+        FlatAst.Node n = flat.node();
+        assertEquals(FlatAst.Kind.SELECT, n.kind());
+        assertEquals(2, n.payload());
+        assertEquals(5, n.numChildren());
+        assertEquals(FlatAst.NONE, n.child(4));
+        int select = n.offset();
+
+        n.moveToChild(1);
+        assertEquals(FlatAst.Kind.BINARY, n.kind());
+        assertEquals(Operator.TIMES, n.operator());
+        assertEquals(2, n.moveToChild(1).number());
+
+        n.moveTo(select).moveToChild(2);
+        assertEquals(FlatAst.Kind.TABLE, n.kind());
+        assertEquals("t", n.symbol());
+        assertEquals(FlatAst.NONE, n.child(0));
+
+        n.moveTo(select).moveToChild(3);
+        assertEquals(FlatAst.Kind.IS_NULL, n.kind());
+        assertEquals(1, n.payload());
+        assertEquals("c", n.moveToChild(0).symbol());
+
+        n.moveTo(flat.statement(1));
+        assertEquals(FlatAst.Kind.INSERT, n.kind());
+        assertEquals(2, n.payload());
+        assertEquals(6, n.numChildren());
+        int insert = n.offset();
+        assertEquals("d", n.moveToChild(0).moveToChild(0).symbol());
+        n.moveTo(insert).moveToChild(1);
+        assertEquals(FlatAst.Kind.COLUMNS, n.kind());
+        assertEquals("y", n.moveToChild(1).symbol());
+        assertEquals("\"s\"", n.moveTo(insert).moveToChild(3).symbol());
+        n.moveTo(insert).moveToChild(4);
+        assertEquals(Operator.MINUS, n.operator());
+        n.moveTo(insert).moveToChild(5);
+        assertEquals(FlatAst.Kind.PARAMETER, n.kind());
+    }
+
+    @Test
+    public void shouldCollectStatementsOfStreamingParser() throws IOException {
+        String text = String.join("\n", VALID_STATEMENTS);
+        FlatAst.Builder builder = new FlatAst.Builder();
+        SqlParser.parse("", new StringReader(text), builder::add);
+        assertEquals(parse(text), builder.build().toStatements());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectAccessToMissingPayload() {
+        FlatAst.of(parse("USE db;")).node().number();
+    }
+}
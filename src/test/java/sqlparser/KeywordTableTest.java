@@ -0,0 +1,53 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.util.Locale;
+
+/**
+ * Checks that the perfect hash table recognizes exactly the reserved
+ * keywords, regardless of case.
+ */
+public class KeywordTableTest {
+
+    /** Helper method that looks up an entire string. */
+    private static Keyword lookup(String str) {
+        return KeywordTable.lookup(str, 0, str.length());
+    }
+
+    @Test
+    public void shouldRecognizeKeywordsInAnyCase() {
+        for (Keyword k: Keyword.values()) {
+            String name = k.name();
+            assertSame(k, lookup(name));
+            assertSame(k, lookup(name.toLowerCase(Locale.ROOT)));
+            String wrapped = "(" + name + ")";
+            assertSame(k, KeywordTable.lookup(wrapped, 1, name.length() + 1));
+            assertSame(k, KeywordTable.lookupAscii(name, 0, name.length()));
+        }
+        assertSame(Keyword.SELECT, lookup("sElEcT"));
+    }
+
+    @Test
+    public void shouldRejectIdentifiers() {
+        String[] identifiers = {
+            "", "a", "x", "ORR", "SELECTS", "BYE", "USER", "NOTNULL",
+            "INTOX", "WHER", "HAVINGS", "S", "INSERTED", "ÜSE"
+        };
+        for (String id: identifiers) {
+            assertNull(id, lookup(id));
+            assertNull(id, KeywordTable.lookupAscii(id, 0, id.length()));
+        }
+    }
+
+    @Test
+    public void shouldFoldNonAsciiCharactersLikeUpperCase() {
+        // dotless i is converted to an ordinary upper case I
+        assertSame(Keyword.INSERT, lookup("ınsert"));
+        // also after ASCII identifiers, which take the ASCII-only path
+        TokenBuffer tokens = SqlTokenizer.tokenize("", "a ınsert b").get();
+        assertSame(Keyword.INSERT, tokens.keyword(1));
+        assertNull(tokens.keyword(2));
+    }
+}
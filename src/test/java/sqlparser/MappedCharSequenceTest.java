@@ -0,0 +1,88 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static sqlparser.Ast.*;
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * Checks that the lazily decoding view of UTF-8 bytes behaves exactly like
+ * the eagerly decoded <code>String</code>.
+ */
+public class MappedCharSequenceTest {
+
+    /** Helper method that compares the view with the decoded string. */
+    private void shouldDecodeLikeString(String text) {
+        MappedCharSequence view =
+            new MappedCharSequence(ByteBuffer.wrap(text.getBytes(UTF_8)));
+        assertEquals(text.length(), view.length());
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(text.charAt(i), view.charAt(i));
+        }
+        // backwards, to exercise the checkpoints
+        for (int i = text.length() - 1; i >= 0; i -= 7) {
+            assertEquals(text.charAt(i), view.charAt(i));
+        }
+        assertEquals(text, view.toString());
+        if (text.length() > 3) {
+            assertEquals(
+                text.substring(1, text.length() - 2),
+                view.subSequence(1, text.length() - 2).toString()
+            );
+        }
+    }
+
+    @Test
+    public void shouldDecodeAsciiAndMultiByteCharacters() {
+        shouldDecodeLikeString("");
+        shouldDecodeLikeString("SELECT a FROM b;");
+        shouldDecodeLikeString("SELECT äöü, \"€\" FROM t;");
+        shouldDecodeLikeString("SELECT \"😀😁\" FROM t;");
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            large.append("SELECT ä").append(i).append(", \"😀\";\n");
+        }
+        shouldDecodeLikeString(large.toString());
+    }
+
+    @Test
+    public void shouldReplaceMalformedBytes() {
+        byte[] bytes = new byte[] { 'a', (byte) 0xC3, 'b', (byte) 0xFF };
+        MappedCharSequence view =
+            new MappedCharSequence(ByteBuffer.wrap(bytes));
+        assertEquals("a\uFFFDb\uFFFD", view.toString());
+    }
+
+    @Test
+    public void shouldTokenizeMappedFilesLikeStrings() throws IOException {
+        File tmp = File.createTempFile("mapped", ".sql");
+        tmp.deleteOnExit();
+        String code = String.join("\n", VALID_STATEMENTS) + "\nUSE dätä;";
+        Files.write(tmp.toPath(), code.getBytes(UTF_8));
+        MappedCharSequence mapped = MappedCharSequence.map(tmp.toPath());
+        assertEquals(
+            SqlTokenizer.tokenize("", code).get().toTokenList(),
+            SqlTokenizer.tokenize("", mapped).get().toTokenList()
+        );
+        List<Statement> pulled = new ArrayList<>();
+        assertTrue(
+            SqlParser.parse(
+                SqlTokenizer.tokenSource("", mapped),
+                pulled::add
+            ).isEmpty()
+        );
+        assertEquals(
+            SqlTokenizer.tokenize("", code).flatMap(SqlParser::parse).get(),
+            pulled
+        );
+    }
+}
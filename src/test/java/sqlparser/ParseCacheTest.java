@@ -0,0 +1,126 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import io.vavr.control.Either;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static sqlparser.Ast.*;
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * Checks that the parse cache returns the same results as the parser,
+ * shares them between lookups, and evicts the least recently used ones.
+ */
+public class ParseCacheTest {
+
+    @Test
+    public void shouldReturnSameResultsAsParser() {
+        ParseCache cache = new ParseCache("", 100);
+        for (String[] examples: new String[][] {
+            VALID_STATEMENTS,
+            STATEMENTS_WITH_SYNTAX_ERRORS,
+            STATEMENTS_WITH_LEXICAL_ERRORS
+        }) {
+            for (String e: examples) {
+                String code = e.replace("!!!>>>", "");
+                assertEquals(
+                    code,
+                    SqlTokenizer.tokenize("", code).flatMap(SqlParser::parse),
+                    cache.parse(code)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void shouldShareCachedResults() {
+        ParseCache cache = new ParseCache("", 10);
+        Either<List<ErrorMessage>, List<Statement>> first =
+            cache.parse("SELECT a FROM b;");
+        assertSame(first, cache.parse("SELECT a FROM b;"));
+        assertSame(first, cache.parse(new String("SELECT a FROM b;")));
+        assertEquals(1, cache.misses());
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedResults() {
+        ParseCache cache = new ParseCache("", 2);
+        Either<List<ErrorMessage>, List<Statement>> a = cache.parse("USE a;");
+        cache.parse("USE b;");
+        assertSame(a, cache.parse("USE a;"));
+        cache.parse("USE c;");
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+        // `b` was the least recently used one
+        assertSame(a, cache.parse("USE a;"));
+        cache.parse("USE b;");
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+        assertEquals(2, cache.evictions());
+    }
+
+    @Test
+    public void shouldStayBoundedWhenSegmented() throws Exception {
+        int maxEntries = 16 * ParseCache.MIN_SEGMENT_SIZE + 5;
+        ParseCache cache = new ParseCache("", maxEntries);
+        assertEquals(16, cache.numSegments());
+        AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    String code = "SELECT a" + (i % 3000) + " FROM t;";
+                    Select select = (Select) cache.parse(code).get().get(0);
+                    if (!select.toString().contains("a" + (i % 3000) + ")")) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertEquals(0, mismatches.get());
+        assertTrue(cache.size() <= maxEntries);
+        assertEquals(4 * 5000, cache.hits() + cache.misses());
+        // Concurrent misses of the same text are counted, but cached once
+        assertTrue(cache.misses() >= cache.size() + cache.evictions());
+        assertTrue(cache.evictions() > 0);
+        assertEquals(1, new ParseCache("", 127).numSegments());
+    }
+
+    @Test
+    public void shouldShareOnlyUnmodifiableLists() {
+        ParseCache cache = new ParseCache("", 10);
+        List<Statement> statements =
+            cache.parse("SELECT a, b FROM t; INSERT INTO t (a) VALUES (1);")
+                .get();
+        Select select = (Select) statements.get(0);
+        Insert insert = (Insert) statements.get(1);
+        for (List<?> list: Arrays.asList(
+            statements,
+            select.getSelectList(),
+            insert.getColumnList()
+        )) {
+            try {
+                list.clear();
+                fail("Should be unmodifiable: " + list);
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+        assertEquals(2, select.getSelectList().size());
+        assertEquals(1, insert.getColumnList().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyCache() {
+        new ParseCache("", 0);
+    }
+}
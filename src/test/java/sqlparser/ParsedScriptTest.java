@@ -0,0 +1,142 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.util.*;
+import static sqlparser.Ast.*;
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * Checks that incremental updates of a script yield the same results as
+ * parsing the entire edited text from scratch, and that the statements
+ * that are not affected by an edit are reused.
+ */
+public class ParsedScriptTest {
+
+    /** Pieces of text that are inserted by the random edits. */
+    private static final String[] INSERTIONS = {
+        "", ";", "\"", "\\", "\n", " ", "x", "SELECT", " OR ", "(", "?",
+        "DELETE FROM t WHERE a;\n", "\"; USE db; \"", "1234"
+    };
+
+    /** Parses the text from scratch, as a reference. */
+    private static void assertSameAsFullParse(ParsedScript script) {
+        String text = script.text();
+        assertEquals(
+            "Result for: `" + text + "`",
+            SqlTokenizer
+                .tokenize("script", text)
+                .flatMap(SqlParser::parse),
+            script.result()
+        );
+    }
+
+    @Test
+    public void shouldAgreeWithFullParseAfterRandomEdits() {
+        StringBuilder initial = new StringBuilder();
+        for (String[] examples: Arrays.asList(
+            VALID_STATEMENTS,
+            STATEMENTS_WITH_SYNTAX_ERRORS,
+            STATEMENTS_WITH_LEXICAL_ERRORS
+        )) {
+            for (String e: examples) {
+                initial.append(e.replace("!!!>>>", "")).append('\n');
+            }
+        }
+        Random random = new Random(42);
+        for (int run = 0; run < 20; run++) {
+            StringBuilder expected = new StringBuilder(initial);
+            ParsedScript script =
+                ParsedScript.parse("script", expected.toString());
+            assertSameAsFullParse(script);
+            for (int i = 0; i < 100; i++) {
+                int offset = random.nextInt(expected.length() + 1);
+                int removed = Math.min(
+                    random.nextInt(random.nextBoolean() ? 3 : 60),
+                    expected.length() - offset
+                );
+                String inserted =
+                    INSERTIONS[random.nextInt(INSERTIONS.length)];
+                expected.replace(offset, offset + removed, inserted);
+                script = script.edit(offset, removed, inserted);
+                assertEquals(expected.toString(), script.text());
+                assertSameAsFullParse(script);
+            }
+        }
+    }
+
+    @Test
+    public void shouldStayConsistentInLongScripts() {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            expected.append("SELECT a").append(i).append(" FROM t;\n");
+        }
+        ParsedScript script =
+            ParsedScript.parse("script", expected.toString());
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            int offset = random.nextInt(expected.length() + 1);
+            int removed = Math.min(
+                random.nextInt(random.nextBoolean() ? 3 : 300),
+                expected.length() - offset
+            );
+            String inserted = random.nextBoolean()
+                ? "SELECT b FROM t;\nUSE db;\n"
+                : INSERTIONS[random.nextInt(INSERTIONS.length)];
+            expected.replace(offset, offset + removed, inserted);
+            script = script.edit(offset, removed, inserted);
+        }
+        assertEquals(expected.toString(), script.text());
+        assertSameAsFullParse(script);
+        ParsedScript valid = script.edit(0, script.length(), "USE a; USE b;");
+        List<Statement> iterated = new ArrayList<>();
+        for (Statement s: valid.result().get()) {
+            iterated.add(s);
+        }
+        assertEquals(valid.result().get(), iterated);
+        assertEquals(2, iterated.size());
+    }
+
+    @Test
+    public void shouldReuseStatementsThatAreNotAffected() {
+        String text =
+            "USE db;\nSELECT a FROM t WHERE b;\nDELETE FROM t WHERE c;";
+        ParsedScript before = ParsedScript.parse("", text);
+        int offset = text.indexOf("WHERE b") + 6;
+        ParsedScript after = before.edit(offset, 1, "b > 10");
+        List<Statement> old = before.result().get();
+        List<Statement> edited = after.result().get();
+        assertSame(old.get(0), edited.get(0));
+        assertNotSame(old.get(1), edited.get(1));
+        assertSame(old.get(2), edited.get(2));
+        assertEquals(
+            "SELECT a FROM t WHERE b > 10;",
+            after.text().split("\n")[1]
+        );
+    }
+
+    @Test
+    public void shouldShiftPositionsOfErrorsInReusedStatements() {
+        ParsedScript script = ParsedScript.parse("script", "USE a; USE b c;");
+        script = script.edit(0, 0, "\n\nUSE x;");
+        ErrorMessage e = script.result().getLeft().get(0);
+        assertEquals(Position.of("script", 3, 20), e.getPosition());
+    }
+
+    @Test
+    public void shouldReparseUntilStringLiteralsAreClosedAgain() {
+        ParsedScript script =
+            ParsedScript.parse("script", "USE a;\nUSE b;\nUSE c;\nUSE d;");
+        script = script.edit(6, 0, "SELECT \"");
+        assertSameAsFullParse(script);
+        script = script.edit(6, 8, "");
+        assertSameAsFullParse(script);
+        assertEquals(4, script.result().get().size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldRejectEditsOutsideOfTheScript() {
+        ParsedScript.parse("", "USE a;").edit(4, 3, "");
+    }
+}
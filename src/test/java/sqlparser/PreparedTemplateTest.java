@@ -0,0 +1,147 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.util.*;
+import static sqlparser.Ast.*;
+
+/**
+ * Checks that values bound into a prepared template yield the same
+ * statements as parsing the text with the values, and that everything
+ * without parameters is shared with the template.
+ */
+public class PreparedTemplateTest {
+
+    /** Parses a single statement. */
+    private static Statement parse(String text) {
+        return SqlTokenizer
+            .tokenize("", text)
+            .flatMap(SqlParser::parse)
+            .get()
+            .get(0);
+    }
+
+    /** Prepares a single statement. */
+    private static PreparedTemplate prepare(String text) {
+        return PreparedTemplate.prepare("", text).get().get(0);
+    }
+
+    @Test
+    public void shouldNumberParametersInOrderOfAppearance() {
+        Select select = (Select) parse("SELECT ?, a FROM t WHERE b > ?;");
+        assertEquals(new Parameter(0), select.getSelectList().get(0));
+        assertEquals(
+            "BinOp(Id(b),>,Param(1))",
+            select.getWhereCondition().get().toString()
+        );
+        // Numbering starts anew in every statement
+        String text = "DELETE FROM t WHERE ?; INSERT INTO t (a) VALUES (?);";
+        List<Statement> two = SqlTokenizer
+            .tokenize("", text)
+            .flatMap(SqlParser::parse)
+            .get();
+        assertEquals(
+            Arrays.asList(new Parameter(0)),
+            ((Insert) two.get(1)).getValues()
+        );
+    }
+
+    @Test
+    public void shouldBindSameAsParsingValues() {
+        String[][] examples = {
+            {
+                "SELECT ?, f(a, ?) FROM t WHERE NOT ? IS NULL ORDER BY ?;",
+                "SELECT 1, f(a, \"x\") FROM t WHERE NOT c IS NULL ORDER BY 4;"
+            },
+            {
+                "INSERT INTO db.t (a, b, c) VALUES (?, 2, -?);",
+                "INSERT INTO db.t (a, b, c) VALUES (1, 2, -\"x\");"
+            },
+            {
+                "DELETE FROM t WHERE a < ? OR b = ? * (? + d);",
+                "DELETE FROM t WHERE a < 1 OR b = \"x\" * (c + d);"
+            }
+        };
+        Expression[] values = {
+            new NumConstant(1),
+            new StringConstant("\"x\""),
+            new Identifier("c"),
+            new NumConstant(4)
+        };
+        for (String[] e: examples) {
+            PreparedTemplate template = prepare(e[0]);
+            int n = template.getNumParameters();
+            assertEquals(
+                e[0],
+                parse(e[1]),
+                template.bind(Arrays.copyOf(values, n))
+            );
+        }
+    }
+
+    @Test
+    public void shouldShareSubtreesWithoutParameters() {
+        PreparedTemplate template = prepare(
+            "SELECT a + b, c FROM t WHERE (x > 1 AND y = ?) OR z ORDER BY a;"
+        );
+        Select original = (Select) template.getStatement();
+        Select bound = (Select) template.bind(new NumConstant(7));
+        // The lists are copied by the constructor, but not their elements
+        for (int i = 0; i < original.getSelectList().size(); i++) {
+            assertSame(
+                original.getSelectList().get(i),
+                bound.getSelectList().get(i)
+            );
+        }
+        assertSame(original.getFromTableId(), bound.getFromTableId());
+        assertSame(original.getOrderBy(), bound.getOrderBy());
+        BinOp or = (BinOp) original.getWhereCondition().get();
+        BinOp boundOr = (BinOp) bound.getWhereCondition().get();
+        assertSame(or.getRightOperand(), boundOr.getRightOperand());
+        BinOp and = (BinOp) or.getLeftOperand();
+        BinOp boundAnd = (BinOp) boundOr.getLeftOperand();
+        assertSame(and.getLeftOperand(), boundAnd.getLeftOperand());
+        assertEquals(
+            "BinOp(Id(y),=,Num(7))",
+            boundAnd.getRightOperand().toString()
+        );
+    }
+
+    @Test
+    public void shouldReturnStatementsWithoutParametersAsTheyAre() {
+        PreparedTemplate template = prepare("SELECT a FROM t WHERE b;");
+        assertEquals(0, template.getNumParameters());
+        assertSame(template.getStatement(), template.bind());
+    }
+
+    @Test
+    public void shouldBindDeeplyNestedParameters() {
+        int depth = 20000;
+        StringBuilder text = new StringBuilder("SELECT ");
+        for (int i = 0; i < depth; i++) {
+            text.append("(? + ");
+        }
+        text.append('1');
+        for (int i = 0; i < depth; i++) {
+            text.append(')');
+        }
+        text.append(';');
+        PreparedTemplate template = prepare(text.toString());
+        Expression[] values = new Expression[depth];
+        Arrays.fill(values, new Identifier("v"));
+        Expression e =
+            ((Select) template.bind(values)).getSelectList().get(0);
+        for (int i = 0; i < depth; i++) {
+            BinOp binOp = (BinOp) e;
+            assertEquals(new Identifier("v"), binOp.getLeftOperand());
+            e = binOp.getRightOperand();
+        }
+        assertEquals(new NumConstant(1), e);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWrongNumberOfValues() {
+        prepare("DELETE FROM t WHERE a = ?;").bind();
+    }
+}
@@ -0,0 +1,66 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.util.*;
+import static sqlparser.Ast.*;
+
+/**
+ * Checks that row blocks store literals and other expressions column by
+ * column, and hand them out as if they were lists of rows.
+ */
+public class RowBlockTest {
+
+    @Test
+    public void shouldReturnValuesByRowAndColumn() {
+        List<List<Expression>> rows = new ArrayList<>();
+        for (int r = 0; r < 100; r++) {
+            // The columns grow at the start of a row
+            rows.add(Arrays.asList(
+                r % 2 == 0 ? new Identifier("y" + r) : new NumConstant(r),
+                new StringConstant("\"" + r + "\""),
+                new UnOp(Operator.MINUS, new Identifier("x" + r))
+            ));
+        }
+        RowBlock block = RowBlock.of(rows);
+        assertEquals(100, block.numRows());
+        assertEquals(3, block.width());
+        assertEquals(rows, block.rows());
+        assertEquals(new NumConstant(43), block.get(43, 0));
+        assertSame(rows.get(64).get(0), block.get(64, 0));
+        assertSame(rows.get(7).get(2), block.get(7, 2));
+        assertEquals(rows.toString(), block.toString());
+    }
+
+    @Test
+    public void shouldCompareByValues() {
+        List<Expression> row = Arrays.asList(
+            new NumConstant(1),
+            new StringConstant("\"a\"")
+        );
+        RowBlock block = RowBlock.of(Arrays.asList(row, row));
+        RowBlock same = RowBlock.of(Arrays.asList(row, row));
+        RowBlock other = RowBlock.of(Arrays.asList(
+            row,
+            Arrays.asList(new NumConstant(1), new NumConstant(2))
+        ));
+        assertEquals(block, same);
+        assertEquals(block.hashCode(), same.hashCode());
+        assertNotEquals(block, other);
+        assertNotEquals(block, RowBlock.of(Arrays.asList(row)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectRowsOfDifferentWidths() {
+        RowBlock.of(Arrays.asList(
+            Arrays.asList(new NumConstant(1)),
+            Arrays.asList(new NumConstant(1), new NumConstant(2))
+        ));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldRejectRowsOutOfRange() {
+        RowBlock.of(Arrays.asList(Arrays.asList(new NumConstant(1)))).row(1);
+    }
+}
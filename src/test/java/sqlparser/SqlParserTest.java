@@ -4,7 +4,10 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 import io.vavr.control.Either;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import static sqlparser.Ast.*;
 import static sqlparser.ExampleStatements.*;
 import java.util.stream.Collectors;
@@ -21,6 +24,8 @@ import java.util.stream.Collectors;
  */
 public class SqlParserTest {
 
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
     @Test
     public void shouldAcceptValidStatements() {
         for (String q: VALID_STATEMENTS) {
@@ -76,4 +81,390 @@ public class SqlParserTest {
     public void shouldExitProperlyIfThereIsNoSemicolonAfterSyntaxError() {
         shouldDetectSyntaxErrors("SELECT yes!!!>>>)");
     }
+
+    /**
+     * Helper method that checks that parsing a stream in a single pass
+     * yields the same statements and errors as tokenizing and parsing
+     * separately.
+     */
+    private void shouldParseStreamLikeInMemory(String code) {
+        Either<List<ErrorMessage>, List<Statement>> expected =
+            SqlTokenizer.tokenize("", code).flatMap(SqlParser::parse);
+        for (int bufferSize = 1; bufferSize <= 4; bufferSize++) {
+            ArrayList<Statement> statements = new ArrayList<>();
+            List<ErrorMessage> errors = SqlParser.parse(
+                SqlTokenizer.tokenSource(
+                    "",
+                    new StringReader(code),
+                    bufferSize
+                ),
+                statements::add
+            );
+            if (expected.isRight()) {
+                assertEquals(code, expected.get(), statements);
+                assertTrue(code, errors.isEmpty());
+            } else {
+                assertEquals(code, expected.getLeft(), errors);
+            }
+        }
+    }
+
+    @Test
+    public void shouldParseStreamsInSinglePass() {
+        for (String q: VALID_STATEMENTS) {
+            shouldParseStreamLikeInMemory(q);
+        }
+        for (String e: STATEMENTS_WITH_SYNTAX_ERRORS) {
+            shouldParseStreamLikeInMemory(extractExample(e).getCode());
+        }
+        for (String e: STATEMENTS_WITH_LEXICAL_ERRORS) {
+            shouldParseStreamLikeInMemory(extractExample(e).getCode());
+        }
+        shouldParseStreamLikeInMemory(String.join("\n", VALID_STATEMENTS));
+    }
+
+    @Test
+    public void shouldEmitStatementsBeforeReadingTheRestOfTheInput()
+    throws IOException {
+        String first = "USE first;";
+        String rest = "\nSELECT x FROM y;";
+        int[] numRead = {0};
+        StringReader reader = new StringReader(first + rest) {
+            @Override
+            public int read(char[] cbuf, int off, int len)
+            throws IOException {
+                int n = super.read(cbuf, off, Math.min(len, 1));
+                numRead[0] += Math.max(n, 0);
+                return n;
+            }
+        };
+        ArrayList<Integer> readWhenEmitted = new ArrayList<>();
+        List<ErrorMessage> errors = SqlParser.parse(
+            "",
+            reader,
+            s -> readWhenEmitted.add(numRead[0])
+        );
+        assertTrue(errors.isEmpty());
+        assertEquals(
+            Arrays.asList(first.length(), first.length() + rest.length()),
+            readWhenEmitted
+        );
+    }
+
+    /** Parses a condition and renders its AST. */
+    private static String condition(String cond) {
+        Select select = (Select) SqlTokenizer
+            .tokenize("", "SELECT x FROM t WHERE " + cond + ";")
+            .flatMap(SqlParser::parse)
+            .get()
+            .get(0);
+        return select.getWhereCondition().get().toString();
+    }
+
+    @Test
+    public void shouldGroupOperatorsByPrecedenceAndAssociativity() {
+        assertEquals(
+            "BinOp(BinOp(Id(a),-,Id(b)),-,Id(c))",
+            condition("a - b - c")
+        );
+        assertEquals(
+            "BinOp(Id(a),/,BinOp(Id(b),*,Id(c)))",
+            condition("a / b * c")
+        );
+        assertEquals(
+            "BinOp(BinOp(Id(a),<,Id(b)),=,Id(c))",
+            condition("a < b = c")
+        );
+        assertEquals(
+            "BinOp(BinOp(Ast.UnOp(operator=-, operand=Id(a)),*,Id(b))," +
+            "+,BinOp(Id(c),%,Id(d)))",
+            condition("-a * b + c % d")
+        );
+        assertEquals(
+            "BinOp(BinOp(Ast.UnOp(operator=NOT, operand=Ast.IsNullCheck(" +
+            "operand=BinOp(Id(a),=,Id(b)), not=false)),AND,Id(c)),OR,Id(d))",
+            condition("NOT a = b IS NULL AND c OR d")
+        );
+        assertEquals(
+            "BinOp(BinOp(Id(a),OR,BinOp(Id(b),AND,Ast.UnOp(operator=NOT, " +
+            "operand=Id(c)))),OR,Id(d))",
+            condition("a OR b AND NOT c OR d")
+        );
+    }
+
+    /**
+     * Generates random expressions from the reference grammar of the
+     * recursive descent parser that precedence climbing has replaced,
+     * together with the ASTs that the grammar prescribes for them:
+     *
+     * <pre>
+     *   expression := disjunct (OR disjunct)*
+     *   disjunct   := conjunct (AND conjunct)*
+     *   conjunct   := NOT conjunct | comparison [IS [NOT] NULL]
+     *   comparison := comparable (COMPARISON_OP comparable)*
+     *   comparable := term (('+' | '-') term)*
+     *   term       := factor [('*' | '/' | '%') term]
+     *   factor     := ('+' | '-') factor | '(' expression ')'
+     *               | identifier ['(' [expression (',' expression)*] ')']
+     *               | number | string
+     * </pre>
+     *
+     * All loops are left-folded, <code>term</code> nests to the right.
+     */
+    private static final class ExpressionGenerator {
+
+        private static final String[] IDENTIFIERS = { "a", "b", "c" };
+
+        private static final Operator[] COMPARISONS = {
+            Operator.EQ, Operator.NE, Operator.LT, Operator.GT,
+            Operator.LE, Operator.GE, Operator.NLT, Operator.NGT
+        };
+
+        private static final Operator[] ARITH_LOW = {
+            Operator.PLUS, Operator.MINUS
+        };
+
+        private static final Operator[] ARITH_HIGH = {
+            Operator.TIMES, Operator.DIVIDE, Operator.MODULO
+        };
+
+        private final Random random;
+
+        /** Text of the generated expression, tokens separated by spaces. */
+        final StringBuilder text = new StringBuilder();
+
+        ExpressionGenerator(Random random) {
+            this.random = random;
+        }
+
+        /** Decides whether a loop or an option is taken once more. */
+        private boolean more(int depth) {
+            return depth > 0 && random.nextInt(3) == 0;
+        }
+
+        private Operator pick(Operator[] ops) {
+            return ops[random.nextInt(ops.length)];
+        }
+
+        private void token(Object token) {
+            text.append(token).append(' ');
+        }
+
+        Expression expression(int depth) {
+            Expression e = disjunct(depth);
+            while (more(depth)) {
+                token(Operator.OR);
+                e = new BinOp(Operator.OR, e, disjunct(depth - 1));
+            }
+            return e;
+        }
+
+        private Expression disjunct(int depth) {
+            Expression e = conjunct(depth);
+            while (more(depth)) {
+                token(Operator.AND);
+                e = new BinOp(Operator.AND, e, conjunct(depth - 1));
+            }
+            return e;
+        }
+
+        private Expression conjunct(int depth) {
+            if (more(depth)) {
+                token(Operator.NOT);
+                return new UnOp(Operator.NOT, conjunct(depth - 1));
+            }
+            Expression e = comparison(depth);
+            if (more(depth)) {
+                boolean not = random.nextBoolean();
+                token(not ? "IS NOT NULL" : "IS NULL");
+                e = new IsNullCheck(e, not);
+            }
+            return e;
+        }
+
+        private Expression comparison(int depth) {
+            Expression e = comparable(depth);
+            while (more(depth)) {
+                Operator op = pick(COMPARISONS);
+                token(op);
+                e = new BinOp(op, e, comparable(depth - 1));
+            }
+            return e;
+        }
+
+        private Expression comparable(int depth) {
+            Expression e = term(depth);
+            while (more(depth)) {
+                Operator op = pick(ARITH_LOW);
+                token(op);
+                e = new BinOp(op, e, term(depth - 1));
+            }
+            return e;
+        }
+
+        private Expression term(int depth) {
+            Expression e = factor(depth);
+            if (more(depth)) {
+                Operator op = pick(ARITH_HIGH);
+                token(op);
+                e = new BinOp(op, e, term(depth - 1));
+            }
+            return e;
+        }
+
+        private Expression factor(int depth) {
+            switch (depth > 0 ? random.nextInt(7) : random.nextInt(3)) {
+                case 0:
+                    String id = IDENTIFIERS[random.nextInt(3)];
+                    token(id);
+                    return new Identifier(id);
+                case 1:
+                    long value = random.nextInt(1000);
+                    token(value);
+                    return new NumConstant(value);
+                case 2:
+                    token("\"s\"");
+                    return new StringConstant("\"s\"");
+                case 3:
+                    token("(");
+                    Expression e = expression(depth - 1);
+                    token(")");
+                    return e;
+                case 4:
+                case 5:
+                    Operator op = pick(ARITH_LOW);
+                    token(op);
+                    return new UnOp(op, factor(depth - 1));
+                default:
+                    token("f (");
+                    List<Expression> args = new ArrayList<>();
+                    int numArgs = random.nextInt(3);
+                    for (int i = 0; i < numArgs; i++) {
+                        if (i > 0) {
+                            token(",");
+                        }
+                        args.add(expression(depth - 1));
+                    }
+                    token(")");
+                    return new FunctionApplication("f", args);
+            }
+        }
+    }
+
+    @Test
+    public void shouldBuildSameAstsAsReferenceGrammar() {
+        Random random = new Random(12);
+        for (int i = 0; i < 3000; i++) {
+            ExpressionGenerator gen = new ExpressionGenerator(random);
+            Expression expected = gen.expression(6);
+            String code = gen.text.toString();
+            assertEquals(code, expected.toString(), condition(code));
+        }
+    }
+
+    @Test
+    public void shouldParseAndRenderDeeplyNestedExpressions() {
+        int depth = 20000;
+        StringBuilder sql = new StringBuilder("SELECT x FROM t WHERE ");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sql.append("NOT (- f(1, ");
+            expected.append(
+                "Ast.UnOp(operator=NOT, operand=BinOp(Ast.UnOp(operator=-, " +
+                "operand=FunctionApplication(fun=f, args=[Num(1), "
+            );
+        }
+        sql.append("a");
+        expected.append("Id(a)");
+        for (int i = 0; i < depth; i++) {
+            sql.append(")) * b");
+            expected.append("])),*,Id(b)))");
+        }
+        sql.append(";");
+        List<Statement> statements = SqlTokenizer
+            .tokenize("", sql.toString())
+            .flatMap(SqlParser::parse)
+            .get();
+        Select select = (Select) statements.get(0);
+        assertEquals(
+            expected.toString(),
+            select.getWhereCondition().get().toString()
+        );
+        String dot = DotRenderer.render(statements);
+        assertTrue(dot.contains("label=\"NOT\""));
+    }
+
+    /**
+     * Helper method that checks that the parallel parser produces exactly
+     * the same statements and errors as the sequential parser, for ranges
+     * of all sizes.
+     */
+    private void shouldParseInParallelLikeSequentially(String code) {
+        TokenBuffer tokens = SqlTokenizer.tokenize("", code).get();
+        Either<List<ErrorMessage>, List<Statement>> expected =
+            SqlParser.parse(tokens);
+        for (int rangeLength = 1; rangeLength <= 64; rangeLength *= 4) {
+            assertEquals(
+                code,
+                expected,
+                SqlParser.parse(tokens, new SymbolTable(), POOL, rangeLength)
+            );
+        }
+    }
+
+    /** Parses the first statement of a valid text. */
+    private static Statement first(String text) {
+        return SqlTokenizer
+            .tokenize("", text)
+            .flatMap(SqlParser::parse)
+            .get()
+            .get(0);
+    }
+
+    @Test
+    public void shouldParseRowsOfInsertLikeSeparateInserts() {
+        String prefix = "INSERT INTO t (a, b, c) VALUES ";
+        String[] rows = {
+            "(1, \"a\", x)",
+            "(-2, \"b\" + 1, f(x, 3))",
+            "(3 * 4, (5), \"c\" IS NULL)"
+        };
+        Insert insert = (Insert) first(prefix + String.join(", ", rows) + ";");
+        RowBlock block = insert.getRows();
+        assertEquals(rows.length, block.numRows());
+        assertEquals(3, block.width());
+        for (int i = 0; i < rows.length; i++) {
+            Insert single = (Insert) first(prefix + rows[i] + ";");
+            assertEquals(1, single.getRows().numRows());
+            assertEquals(single.getValues(), block.row(i));
+        }
+        try {
+            insert.getValues();
+            fail("Should not return the first of several rows");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(
+            "Insert(\n" +
+            "  into=Ast.TableId(databaseName=Optional.empty, tableName=t)\n" +
+            "  columns=[a, b]\n" +
+            "  rows=[[Num(1), Num(2)], [Num(3), Str(\"x\")]]\n" +
+            ")",
+            first("INSERT INTO t (a, b) VALUES (1, 2), (3, \"x\");").toString()
+        );
+    }
+
+    @Test
+    public void shouldParseRangesOfStatementsInParallel() {
+        shouldParseInParallelLikeSequentially(
+            String.join("\n", VALID_STATEMENTS)
+        );
+        StringBuilder mixed = new StringBuilder();
+        for (String e: STATEMENTS_WITH_SYNTAX_ERRORS) {
+            mixed.append(extractExample(e).getCode()).append('\n');
+            mixed.append(VALID_STATEMENTS[0]).append('\n');
+        }
+        shouldParseInParallelLikeSequentially(mixed.toString());
+        shouldParseInParallelLikeSequentially("");
+    }
 }
@@ -4,10 +4,17 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 import io.vavr.control.Either;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import static sqlparser.Ast.*;
 import static sqlparser.ExampleStatements.*;
 import java.util.stream.Collectors;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Unit test for the tokenizer. Cares only about lexical errors, ignores
@@ -15,10 +22,13 @@ import java.util.stream.Collectors;
  */
 public class SqlTokenizerTest {
 
+    /** Pool for the parallel tokenizer. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
     @Test
     public void shouldAcceptValidStatements() {
         for (String q: VALID_STATEMENTS) {
-            Either<List<ErrorMessage>, ArrayList<Token>> res =
+            Either<List<ErrorMessage>, TokenBuffer> res =
                 SqlTokenizer.tokenize("", q);
             assertTrue("Should accept: `" + q + "`", res.isRight());
         }
@@ -32,7 +42,7 @@ public class SqlTokenizerTest {
      */
     private void shouldDetectLexicalErrors(String badCode) {
         ErrorExample ex = extractExample(badCode);
-        Either<List<ErrorMessage>, ArrayList<Token>> res =
+        Either<List<ErrorMessage>, TokenBuffer> res =
             SqlTokenizer
             .tokenize("", ex.getCode());
         assertTrue("Should reject: `" + ex.getCode() + "`", res.isLeft());
@@ -66,4 +76,225 @@ public class SqlTokenizerTest {
             }
         }
     }
+
+    /**
+     * Helper method that checks that the streaming tokenizer produces
+     * exactly the same tokens and errors as the in-memory tokenizer.
+     */
+    private void shouldStreamLikeInMemory(String code) throws IOException {
+        Either<List<ErrorMessage>, TokenBuffer> expected =
+            SqlTokenizer.tokenize("", code);
+        for (int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+            ArrayList<Token> tokens = new ArrayList<>();
+            List<ErrorMessage> errors = SqlTokenizer.tokenize(
+                "",
+                new StringReader(code),
+                bufferSize,
+                tokens::add
+            );
+            if (expected.isRight()) {
+                assertEquals(code, expected.get().toTokenList(), tokens);
+                assertTrue(code, errors.isEmpty());
+            } else {
+                assertEquals(code, expected.getLeft(), errors);
+            }
+        }
+    }
+
+    @Test
+    public void shouldTokenizeStreamsWithTinyBuffers() throws IOException {
+        for (String q: VALID_STATEMENTS) {
+            shouldStreamLikeInMemory(q);
+        }
+        for (String e: STATEMENTS_WITH_LEXICAL_ERRORS) {
+            shouldStreamLikeInMemory(extractExample(e).getCode());
+        }
+        shouldStreamLikeInMemory(String.join("\n", VALID_STATEMENTS));
+    }
+
+    @Test
+    public void shouldTokenizeChannelsLikeStrings() throws IOException {
+        String code =
+            String.join("\n", VALID_STATEMENTS) + "SELECT \"\u00e4\u2713\";";
+        List<Token> expected =
+            SqlTokenizer.tokenize("", code).get().toTokenList();
+        byte[] bytes = code.getBytes(UTF_8);
+        ArrayList<Token> pushed = new ArrayList<>();
+        List<ErrorMessage> errors = SqlTokenizer.tokenize(
+            "",
+            Channels.newChannel(new ByteArrayInputStream(bytes)),
+            4,
+            pushed::add
+        );
+        assertTrue(errors.isEmpty());
+        assertEquals(expected, pushed);
+        TokenSource pulled = SqlTokenizer.tokenSource(
+            "",
+            Channels.newChannel(new ByteArrayInputStream(bytes)),
+            4
+        );
+        for (Token t: expected) {
+            assertEquals(t.getTokenType(), pulled.peek());
+            assertEquals(t.getPosition(), pulled.position());
+            pulled.next();
+        }
+    }
+
+    @Test
+    public void shouldReportEscapeAtEndOfInputAsUnterminatedString() {
+        shouldDetectLexicalErrors("SELECT \"unfinished \\!!!>>>");
+    }
+
+    /**
+     * Helper method that checks that the parallel tokenizer produces
+     * exactly the same tokens and errors as the sequential tokenizer,
+     * for chunks of all sizes.
+     */
+    private void shouldTokenizeInParallelLikeSequentially(String code) {
+        Either<List<ErrorMessage>, TokenBuffer> expected =
+            SqlTokenizer.tokenize("", code);
+        for (int chunkLength = 1; chunkLength <= 64; chunkLength *= 4) {
+            Either<List<ErrorMessage>, TokenBuffer> res =
+                SqlTokenizer.tokenize("", code, POOL, chunkLength);
+            if (expected.isRight()) {
+                assertEquals(
+                    code,
+                    expected.get().toTokenList(),
+                    res.get().toTokenList()
+                );
+            } else {
+                assertEquals(code, expected.getLeft(), res.getLeft());
+            }
+        }
+    }
+
+    @Test
+    public void shouldTokenizeChunksInParallel() {
+        for (String q: VALID_STATEMENTS) {
+            shouldTokenizeInParallelLikeSequentially(q);
+        }
+        for (String e: STATEMENTS_WITH_LEXICAL_ERRORS) {
+            String code = extractExample(e).getCode();
+            shouldTokenizeInParallelLikeSequentially(code);
+            shouldTokenizeInParallelLikeSequentially(
+                code + "\n" + String.join("\n", VALID_STATEMENTS) + code
+            );
+        }
+        shouldTokenizeInParallelLikeSequentially(
+            String.join("\n", VALID_STATEMENTS)
+        );
+        shouldTokenizeInParallelLikeSequentially(
+            "USE a;\"semi;colon\\\n;\";\nUSE b; \"x\r;\nUSE c;  "
+        );
+    }
+
+    /**
+     * Helper method that checks that tokenizing the UTF-8 bytes produces
+     * exactly the same tokens and errors as tokenizing the string, both
+     * for heap and for direct buffers.
+     */
+    private void shouldTokenizeBytesLikeString(String code) {
+        Either<List<ErrorMessage>, TokenBuffer> expected =
+            SqlTokenizer.tokenize("", code);
+        byte[] bytes = code.getBytes(UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        for (ByteBuffer input: Arrays.asList(ByteBuffer.wrap(bytes), direct)) {
+            Either<List<ErrorMessage>, TokenBuffer> res =
+                SqlTokenizer.tokenize("", input);
+            if (expected.isRight()) {
+                assertEquals(
+                    code,
+                    expected.get().toTokenList(),
+                    res.get().toTokenList()
+                );
+            } else {
+                assertEquals(code, expected.getLeft(), res.getLeft());
+            }
+        }
+    }
+
+    @Test
+    public void shouldTokenizeUtf8BytesWithoutDecoding() {
+        for (String q: VALID_STATEMENTS) {
+            shouldTokenizeBytesLikeString(q);
+        }
+        for (String e: STATEMENTS_WITH_LEXICAL_ERRORS) {
+            shouldTokenizeBytesLikeString(extractExample(e).getCode());
+        }
+        shouldTokenizeBytesLikeString(
+            "SELECT gr\u00f6\u00dfe, \"\u2713 \ud83d\ude00\"\n" +
+            "FROM t\u00e4ble\n" +
+            "WHERE \u00fcber = \"\u00e9t\u00e9\" \u0131nsert;"
+        );
+        shouldTokenizeBytesLikeString(
+            "SELECT \"\ud83d\ude00\" @x, \"\\\u00fc\";\n" +
+            "USE \u00e4\u00e4 !! 12\u00fc \"\u00e4\u00e4"
+        );
+    }
+
+    @Test
+    public void shouldComputeValuesOfNumbers() throws IOException {
+        String code = "SELECT 0, 0042, 9223372036854775807;";
+        long[] expected = {0L, 42L, Long.MAX_VALUE};
+        TokenBuffer inMemory = SqlTokenizer.tokenize("", code).get();
+        TokenBuffer streamed =
+            SqlTokenizer.tokenize("", new StringReader(code)).get();
+        int k = 0;
+        for (int i = 0; i < inMemory.size(); i++) {
+            if (inMemory.type(i) == Token.Type.NUMBER) {
+                assertEquals(expected[k], inMemory.value(i));
+                assertEquals(expected[k], streamed.value(i));
+                assertEquals(expected[k], inMemory.get(i).getValue());
+                k++;
+            }
+        }
+        assertEquals(expected.length, k);
+        List<ErrorMessage> errors =
+            SqlTokenizer.tokenize("", "SELECT 9223372036854775808;").getLeft();
+        assertEquals(Position.of("", 1, 8), errors.get(0).getPosition());
+    }
+
+    @Test
+    public void shouldRecognizeKeywordsAndOperators() {
+        String code = "select a fRoM t where -a !< 2 or not b;";
+        TokenBuffer tokens = SqlTokenizer.tokenize("", code).get();
+        TokenSource cursor = tokens.cursor();
+        List<Object> codes = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            Object c =
+                tokens.keyword(i) != null ? tokens.keyword(i) :
+                tokens.operator(i);
+            if (c != null) {
+                codes.add(c);
+            }
+            assertSame(tokens.keyword(i), cursor.keyword());
+            assertSame(tokens.operator(i), cursor.operator());
+            assertSame(tokens.keyword(i), tokens.get(i).getKeyword());
+            assertSame(tokens.operator(i), tokens.get(i).getOperator());
+            cursor.next();
+        }
+        assertEquals(
+            Arrays.asList(
+                Keyword.SELECT, Keyword.FROM, Keyword.WHERE, Operator.MINUS,
+                Operator.NLT, Keyword.OR, Keyword.NOT
+            ),
+            codes
+        );
+        assertEquals("FROM", tokens.lexeme(2));
+        assertEquals("!<", tokens.lexeme(7));
+    }
+
+    @Test
+    public void shouldCopyLexemesOfStreamedTokensIntoBuffer()
+    throws IOException {
+        String code = String.join("\n", VALID_STATEMENTS);
+        assertEquals(
+            SqlTokenizer.tokenize("", code).get().toTokenList(),
+            SqlTokenizer
+            .tokenize("", new StringReader(code))
+            .get()
+            .toTokenList()
+        );
+    }
 }
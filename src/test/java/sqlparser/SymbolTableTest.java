@@ -0,0 +1,78 @@
+package sqlparser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.nio.ByteBuffer;
+import java.util.List;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static sqlparser.Ast.*;
+
+/**
+ * Checks that the symbol table hands out exactly one instance per
+ * identifier, regardless of where the identifier comes from.
+ */
+public class SymbolTableTest {
+
+    @Test
+    public void shouldReturnSameInstanceForEqualRanges() {
+        SymbolTable symbols = new SymbolTable();
+        String users = symbols.intern("(users)", 1, 6);
+        assertEquals("users", users);
+        assertSame(users, symbols.intern("users"));
+        assertSame(users, symbols.intern("all users", 4, 9));
+        assertNotSame(users, symbols.intern("user"));
+        assertEquals(2, symbols.size());
+    }
+
+    @Test
+    public void shouldKeepInstancesWhileGrowing() {
+        SymbolTable symbols = new SymbolTable();
+        String[] first = new String[10000];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = symbols.intern("column" + i);
+        }
+        for (int i = 0; i < first.length; i++) {
+            assertSame(first[i], symbols.intern("column" + i));
+        }
+        assertEquals(first.length, symbols.size());
+    }
+
+    @Test
+    public void shouldDecodeUtf8Ranges() {
+        SymbolTable symbols = new SymbolTable();
+        String text = "gr\u00f6\u00dfe users";
+        Utf8Bytes bytes = new Utf8Bytes(ByteBuffer.wrap(text.getBytes(UTF_8)));
+        String groesse = symbols.intern(bytes, 0, 7);
+        assertEquals("gr\u00f6\u00dfe", groesse);
+        assertSame(groesse, symbols.intern("gr\u00f6\u00dfe"));
+        assertSame(symbols.intern("users"), symbols.intern(bytes, 8, 13));
+    }
+
+    @Test
+    public void shouldShareIdentifiersAcrossStatementsOfSession() {
+        SymbolTable symbols = new SymbolTable();
+        List<Statement> first = SqlTokenizer
+            .tokenize("", "SELECT name FROM db.users;")
+            .flatMap(t -> SqlParser.parse(t, symbols))
+            .get();
+        List<Statement> second = SqlTokenizer
+            .tokenize("", "INSERT INTO users (name) VALUES (\"db\");")
+            .flatMap(t -> SqlParser.parse(t, symbols))
+            .get();
+        Select select = (Select) first.get(0);
+        Insert insert = (Insert) second.get(0);
+        assertSame(
+            select.getFromTableId().get().getTableName(),
+            insert.getIntoTable().getTableName()
+        );
+        assertSame(
+            ((Identifier) select.getSelectList().get(0)).getValue(),
+            insert.getColumnList().get(0)
+        );
+        assertSame(
+            symbols.intern("db"),
+            select.getFromTableId().get().getDatabaseName().get()
+        );
+    }
+}
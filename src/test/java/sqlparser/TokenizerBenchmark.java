@@ -0,0 +1,54 @@
+package sqlparser;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static sqlparser.ExampleStatements.*;
+
+/**
+ * JMH benchmark that measures the throughput of the tokenizer on a large
+ * pure-ASCII script.
+ *
+ * Not run by surefire. Run it with
+ *
+ *     mvn test-compile exec:java -Dexec.classpathScope=test \
+ *         -Dexec.mainClass=sqlparser.TokenizerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TokenizerBenchmark {
+
+    /** Roughly one megabyte of valid statements. */
+    private String script;
+
+    @Setup
+    public void setUp() {
+        StringBuilder bldr = new StringBuilder();
+        while (bldr.length() < 1 << 20) {
+            for (String q: VALID_STATEMENTS) {
+                bldr.append(q).append('\n');
+            }
+        }
+        script = bldr.toString();
+    }
+
+    @Benchmark
+    public TokenBuffer tokenize() {
+        return SqlTokenizer.tokenize("", script).get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+            .include(TokenizerBenchmark.class.getSimpleName())
+            .build()
+        ).run();
+    }
+}